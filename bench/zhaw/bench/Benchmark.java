@@ -0,0 +1,44 @@
+package zhaw.bench;
+
+import java.io.File;
+
+import zhaw.UserErrorException;
+
+/**
+ * One measured operation of the benchmark suite. Setup prepares everything the operation needs
+ * for the given input file (e.g. the encoded file for the decoding), it is not measured.
+ * Run is called repeatedly and has to do the same work every time.
+ */
+public abstract class Benchmark {
+
+	protected BenchmarkOptions options;
+	protected String inputPath;
+
+	public abstract String name();
+
+	public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+	{
+		this.inputPath = inputPath;
+		this.options = options;
+	}
+
+	/** one operation, the result is consumed so the work can not be optimized away */
+	public abstract long Run() throws UserErrorException;
+
+	/** the work of one operation in the unit of the throughput, the MB of the input file by default */
+	public double Work()
+	{
+		return new File( inputPath).length() / (1024.0 * 1024);
+	}
+
+	public String throughputUnit()
+	{
+		return "MB/s";
+	}
+
+	/** the size of the written files relative to the input file after Run, NaN if the benchmark does not encode */
+	public double Ratio()
+	{
+		return Double.NaN;
+	}
+}
@@ -0,0 +1,221 @@
+package zhaw.bench;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.charset.StandardCharsets;
+import java.util.Formatter;
+import java.util.HashMap;
+import java.util.List;
+
+import zhaw.ComputeMain;
+import zhaw.HoffmanBlockEncoder;
+import zhaw.UserErrorException;
+
+public class BenchmarkMain {
+
+	/**
+	 * Program arguments:
+	 * 	BenchmarkMain [-corpus <dir>] [-work <dir>] [-size <chars> [-alphabet <n>]] [-only <b1,b2,..>] ...
+	 * 		-corpus the directory with the bundled corpora (data_0..6.txt, muster.txt, deutsch.txt.hencoded), the current one by default
+	 * 		-work the working directory for the copies and the written files, bench_work by default
+	 * 		-nobundled do not run on the bundled corpora
+	 * 		-size add a synthetic file with so many characters
+	 * 		-alphabet the number of the different characters of the synthetic file, 64 by default
+	 * 		-only run only the benchmarks with the given comma separated names
+	 * 		-warmup the number of the not measured iterations
+	 * 		-iterations the number of the measured iterations
+	 * 		-time the least time of an iteration in ms
+	 * 		-bytes -mmap -blocks [<symbols>] -canonical -counts the same options as in ComputeMain
+	 * 		-csv append the results to the file, e.g. to compare the commits
+	 * 		-label the label of the results in the csv file, e.g. the commit id
+	 * */
+	private static HashMap<String, String> programParams = new HashMap<>();
+
+	private static long ParseNumber( String argument, long defaultValue) throws UserErrorException {
+		if ( ! programParams.containsKey( argument) )
+			return defaultValue;
+		try {
+			long res = Long.parseLong( programParams.get( argument));
+			if ( res >= 0 )
+				return res;
+		} catch ( NumberFormatException ex) {
+		}
+		throw new UserErrorException("Invalid number for the argument " + argument + ": " + programParams.get( argument));
+	}
+
+	/** the measured values of one benchmark on one input */
+	static class Result {
+		long operations;
+		long nanos;
+		long allocatedBytes;
+		long gcCount;
+		long gcMillis;
+	}
+
+	private static final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+
+	/** the bytes allocated by all the live threads, including the ones of the thread pools, or -1 if it is not supported */
+	private static long AllocatedBytes()
+	{
+		if ( ! (threads instanceof com.sun.management.ThreadMXBean) )
+			return -1;
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean)threads;
+		if ( ! bean.isThreadAllocatedMemorySupported() || ! bean.isThreadAllocatedMemoryEnabled() )
+			return -1;
+		long sum = 0;
+		for ( long bytes : bean.getThreadAllocatedBytes( bean.getAllThreadIds()))
+			if ( bytes > 0 )
+				sum += bytes;
+		return sum;
+	}
+
+	private static long GcCount()
+	{
+		long sum = 0;
+		for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			sum += Math.max( 0, gc.getCollectionCount());
+		return sum;
+	}
+
+	private static long GcMillis()
+	{
+		long sum = 0;
+		for ( GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans())
+			sum += Math.max( 0, gc.getCollectionTime());
+		return sum;
+	}
+
+	/** the stream dropping the output of the measured code */
+	private static PrintStream Quiet()
+	{
+		return new PrintStream( new OutputStream() {
+			@Override
+			public void write( int b)
+			{
+			}
+		});
+	}
+
+	/** repeat the operation for the least iteration time, the output of the program is dropped meanwhile */
+	private static Result Iteration( Benchmark benchmark, BenchmarkOptions options, PrintStream console) throws UserErrorException
+	{
+		Result res = new Result();
+		long sink = 0;
+		long gcCount = GcCount();
+		long gcMillis = GcMillis();
+		long allocated = AllocatedBytes();
+		long start = System.nanoTime();
+		long end = start + options.iterationMillis * 1000000L;
+		do {
+			sink += benchmark.Run();
+			++res.operations;
+		} while ( System.nanoTime() < end );
+		res.nanos = System.nanoTime() - start;
+		res.allocatedBytes = allocated < 0 ? -1 : AllocatedBytes() - allocated;
+		res.gcCount = GcCount() - gcCount;
+		res.gcMillis = GcMillis() - gcMillis;
+		if ( sink == Long.MIN_VALUE )
+			console.println( "");
+		return res;
+	}
+
+	private static Result Measure( Benchmark benchmark, String input, BenchmarkOptions options, PrintStream console) throws UserErrorException
+	{
+		System.setOut( Quiet());
+		try {
+			benchmark.Setup( input, options);
+			for ( int i=0; i<options.warmupIterations; ++i)
+				Iteration( benchmark, options, console);
+			Result sum = new Result();
+			for ( int i=0; i<options.iterations; ++i)
+			{
+				Result r = Iteration( benchmark, options, console);
+				sum.operations += r.operations;
+				sum.nanos += r.nanos;
+				sum.allocatedBytes = r.allocatedBytes < 0 || sum.allocatedBytes < 0 ? -1 : sum.allocatedBytes + r.allocatedBytes;
+				sum.gcCount += r.gcCount;
+				sum.gcMillis += r.gcMillis;
+			}
+			return sum;
+		} finally
+		{
+			System.setOut( console);
+		}
+	}
+
+	public static void main(String[] args) {
+		PrintStream console = System.out;
+		try {
+			ComputeMain.parsProgramArguments( args, programParams);
+
+			BenchmarkOptions options = new BenchmarkOptions();
+			if ( programParams.containsKey("bytes") )
+				options.charset = StandardCharsets.ISO_8859_1;
+			options.mapped = programParams.containsKey("mmap");
+			options.canonical = programParams.containsKey("canonical");
+			options.counts = programParams.containsKey("counts");
+			if ( programParams.containsKey("blocks") )
+				options.blockSymbols = programParams.get("blocks") == null ? HoffmanBlockEncoder.DEFAULT_BLOCK_SYMBOLS : (int)ParseNumber( "blocks", 0);
+			options.warmupIterations = (int)ParseNumber( "warmup", options.warmupIterations);
+			options.iterations = Math.max( 1, (int)ParseNumber( "iterations", options.iterations));
+			options.iterationMillis = ParseNumber( "time", options.iterationMillis);
+
+			File corpusDir = new File( programParams.containsKey("corpus") ? programParams.get("corpus") : ".");
+			File workDir = new File( programParams.containsKey("work") ? programParams.get("work") : "bench_work");
+			Corpus corpus = new Corpus( corpusDir, workDir);
+			console.println( "Preparing the input files in " + workDir + "...");
+			System.setOut( Quiet());
+			try {
+				if ( ! programParams.containsKey("nobundled") )
+				{
+					corpus.AddBundled();
+					corpus.AddDeutsch();
+				}
+				if ( programParams.containsKey("size") )
+					corpus.AddSynthetic( ParseNumber( "size", 0), (int)ParseNumber( "alphabet", 64), options.charset);
+			} finally
+			{
+				System.setOut( console);
+			}
+
+			List<Benchmark> benchmarks = HoffmanBenchmarks.Select( programParams.get("only"));
+			String label = programParams.containsKey("label") ? programParams.get("label") : "";
+			try ( PrintStream csv = programParams.containsKey("csv") ? new PrintStream( new FileOutputStream( programParams.get("csv"), true), true, "UTF-8") : null )
+			{
+				console.println( String.format( "%-28s %-24s %12s %12s %18s %8s %14s %8s %8s",
+						"Benchmark", "Input", "ops/s", "ms/op", "throughput", "ratio", "alloc B/op", "gc", "gc ms"));
+				for ( Benchmark benchmark : benchmarks)
+					for ( String input : corpus.files())
+					{
+						Result r = Measure( benchmark, input, options, console);
+						long inputBytes = new File( input).length();
+						double seconds = r.nanos / 1e9;
+						double ratio = benchmark.Ratio();
+						try (Formatter ft = new Formatter())
+						{
+							console.println( ft.format( "%-28s %-24s %12.2f %12.4f %18s %8s %14d %8d %8d",
+									benchmark.name(), new File( input).getName(), r.operations / seconds, seconds * 1000 / r.operations,
+									String.format( "%.2f %s", benchmark.Work() * r.operations / seconds, benchmark.throughputUnit()), Double.isNaN( ratio) ? "-" : String.format( "%.4f", ratio),
+									r.allocatedBytes < 0 ? -1 : r.allocatedBytes / r.operations, r.gcCount, r.gcMillis));
+						}
+						if ( csv != null )
+							csv.println( label + "," + benchmark.name() + "," + new File( input).getName() + "," + inputBytes + "," + r.operations + ","
+									+ r.nanos + "," + r.allocatedBytes + "," + r.gcCount + "," + r.gcMillis + "," + (Double.isNaN( ratio) ? "" : String.valueOf( ratio)));
+					}
+			}
+		} catch ( UserErrorException uex) {
+			System.setOut( console);
+			System.err.println("Error: " + uex.getMessage());
+		} catch ( IOException ex) {
+			System.err.println("Error: the csv file can not be written: " + ex.getMessage());
+		}
+		console.println("Benchmark execution completed");
+	}
+
+}
@@ -0,0 +1,23 @@
+package zhaw.bench;
+
+import java.nio.charset.Charset;
+
+/** the parameters of a benchmark run shared by all the benchmarks */
+public class BenchmarkOptions {
+
+	/** the charset of the input files, ISO-8859-1 uses the raw bytes as the alphabet */
+	public Charset charset = Charset.defaultCharset();
+	/** read the input files through memory mapped buffers */
+	public boolean mapped = false;
+	/** the block size of the block container, 0 for the single bit stream */
+	public int blockSymbols = 0;
+	/** use the canonical Hoffman codes and the binary .htable */
+	public boolean canonical = false;
+	/** build the tree from the integer counts instead of the probabilities */
+	public boolean counts = false;
+
+	public int warmupIterations = 3;
+	public int iterations = 5;
+	/** an iteration repeats the operation at least for so long */
+	public long iterationMillis = 200;
+}
@@ -0,0 +1,144 @@
+package zhaw.bench;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import zhaw.HoffmanTree;
+import zhaw.UserErrorException;
+
+/**
+ * Prepares the input files of the benchmarks in a working directory, so the encoded, decoded and
+ * table files written next to them do not touch the bundled corpora.
+ */
+public class Corpus {
+
+	/** the bundled text files */
+	public static final String[] BUNDLED = { "muster.txt", "data_0.txt", "data_1.txt", "data_2.txt", "data_3.txt", "data_4.txt", "data_5.txt", "data_6.txt" };
+	/** the German corpus is bundled only encoded, its table stores the raw bytes */
+	public static final String DEUTSCH = "deutsch.txt";
+
+	private static final long SEED = 42;
+
+	private final File sourceDir;
+	private final File workDir;
+	private final List<String> files = new ArrayList<>();
+
+	public Corpus( File sourceDir, File workDir) throws UserErrorException
+	{
+		this.sourceDir = sourceDir;
+		this.workDir = workDir;
+		if ( ! workDir.isDirectory() && ! workDir.mkdirs() )
+			throw new UserErrorException( "working directory " + workDir + " can not be created.");
+	}
+
+	/** the paths of the prepared files */
+	public List<String> files()
+	{
+		return files;
+	}
+
+	/** copy the bundled text files which exist in the source directory */
+	public void AddBundled() throws UserErrorException
+	{
+		for ( String name : BUNDLED)
+		{
+			File source = new File( sourceDir, name);
+			if ( ! source.isFile() )
+				continue;
+			File target = new File( workDir, name);
+			try {
+				Files.copy( source.toPath(), target.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch ( IOException ex)
+			{
+				throw new UserErrorException( "file " + source + " can not be copied to " + target + ".");
+			}
+			files.add( target.getPath());
+		}
+	}
+
+	/** decode the bundled German corpus, it is kept decoded in the working directory for the next runs */
+	public void AddDeutsch() throws UserErrorException
+	{
+		File text = new File( workDir, DEUTSCH);
+		if ( ! text.isFile() )
+		{
+			File encoded = new File( sourceDir, DEUTSCH + ".hencoded");
+			File table = new File( sourceDir, DEUTSCH + ".htable");
+			if ( ! encoded.isFile() || ! table.isFile() )
+				return;
+			try {
+				Files.copy( encoded.toPath(), new File( workDir, encoded.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+				Files.copy( table.toPath(), new File( workDir, table.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+			} catch ( IOException ex)
+			{
+				throw new UserErrorException( "German corpus can not be copied to " + workDir + ".");
+			}
+			HoffmanTree tree = new HoffmanTree();
+			String encodedPath = new File( workDir, encoded.getName()).getPath();
+			tree.Deserialize( encodedPath, StandardCharsets.ISO_8859_1);
+			tree.Decode( encodedPath, StandardCharsets.ISO_8859_1);
+			File decoded = new File( workDir, DEUTSCH + ".hdecoded");
+			if ( ! decoded.renameTo( text) )
+				throw new UserErrorException( "decoded German corpus " + decoded + " can not be renamed.");
+		}
+		files.add( text.getPath());
+	}
+
+	/**
+	 * Generate a random text with the given number of characters. The frequencies of the characters
+	 * follow the Zipf distribution, like the ones of the natural languages. The characters start at
+	 * the space, so the end of content character of the stream format never occurs.
+	 *
+	 * @param alphabet - the number of the different characters
+	 */
+	public void AddSynthetic( long size, int alphabet, Charset charset) throws UserErrorException
+	{
+		char[] symbols = Alphabet( alphabet, charset);
+		double[] cumulative = new double[alphabet];
+		double sum = 0;
+		for ( int i=0; i<alphabet; ++i)
+			cumulative[i] = sum += 1.0 / (i + 1);
+		File target = new File( workDir, "synthetic_" + size + "_" + alphabet + ".txt");
+		Random random = new Random( SEED);
+		try ( BufferedWriter out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( target), charset)) )
+		{
+			for ( long i=0; i<size; ++i)
+			{
+				int index = Arrays.binarySearch( cumulative, random.nextDouble() * sum);
+				out.write( symbols[Math.min( index < 0 ? -index - 1 : index, alphabet - 1)]);
+			}
+		} catch ( IOException ex)
+		{
+			throw new UserErrorException( "synthetic file " + target + " writting failed.");
+		}
+		files.add( target.getPath());
+	}
+
+	/** the first characters from the space on which the charset can encode, without the surrogates */
+	private static char[] Alphabet( int alphabet, Charset charset) throws UserErrorException
+	{
+		if ( alphabet <= 0 )
+			throw new UserErrorException( "The alphabet needs at least one character.");
+		CharsetEncoder encoder = charset.newEncoder();
+		char[] res = new char[alphabet];
+		int n = 0;
+		for ( int c=' '; c<=Character.MAX_VALUE && n<alphabet; ++c)
+			if ( ! Character.isSurrogate( (char)c) && encoder.canEncode( (char)c) )
+				res[n++] = (char)c;
+		if ( n < alphabet )
+			throw new UserErrorException( "The charset " + charset + " has only " + n + " characters for the alphabet of " + alphabet + ".");
+		return res;
+	}
+}
@@ -0,0 +1,449 @@
+package zhaw.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import zhaw.Compute;
+import zhaw.EncodedFileWriter;
+import zhaw.HoffmanBlockDecoder;
+import zhaw.HoffmanBlockEncoder;
+import zhaw.HoffmanCodeBook;
+import zhaw.HoffmanTree;
+import zhaw.RansModel;
+import zhaw.UserErrorException;
+
+/**
+ * The benchmarks of the counting, the entropy, the tree building, the encoding, the decoding
+ * (also of the single and the interleaved blocks on one thread) and the (de)serialization of the Hoffman table, of the rANS coding of the same counts and of the
+ * Hoffman coding of the words.
+ */
+public class HoffmanBenchmarks {
+
+	/** all the benchmarks in the order they are run */
+	public static List<Benchmark> All()
+	{
+		List<Benchmark> res = new ArrayList<>();
+		res.add( new ReadInputTextFileCharacters());
+		res.add( new ComputeEntropy());
+		res.add( new CreateHoffmanTree());
+		res.add( new Encode());
+		res.add( new Decode());
+		res.add( new BlockDecode());
+		res.add( new InterleavedDecode());
+		res.add( new Serialize());
+		res.add( new Deserialize());
+		res.add( new RansEncode());
+		res.add( new RansDecode());
+		res.add( new WordEncode());
+		res.add( new WordDecode());
+		return res;
+	}
+
+	/** the benchmarks with the given comma separated names */
+	public static List<Benchmark> Select( String names) throws UserErrorException
+	{
+		List<Benchmark> all = All();
+		if ( names == null )
+			return all;
+		List<Benchmark> res = new ArrayList<>();
+		for ( String name : names.split( ","))
+		{
+			Benchmark found = null;
+			for ( Benchmark b : all)
+				if ( b.name().equalsIgnoreCase( name.trim()) )
+					found = b;
+			if ( found == null )
+				throw new UserErrorException( "Unknown benchmark: " + name);
+			res.add( found);
+		}
+		return res;
+	}
+
+	static Compute NewCompute( BenchmarkOptions options)
+	{
+		return new Compute( options.charset, options.mapped);
+	}
+
+	/** count the input and build the tree in the way the options request it */
+	static HoffmanTree BuildTree( String inputPath, BenchmarkOptions options) throws UserErrorException
+	{
+		Compute compute = NewCompute( options);
+		HoffmanTree res;
+		if ( options.counts )
+		{
+			compute.ReadInputTextFileCharacters( inputPath);
+			res = compute.CreateHoffmanTreeFromCounts();
+		}
+		else
+		{
+			compute.ComputeProbabilities( inputPath);
+			res = compute.CreateHoffmanTree();
+		}
+		if ( options.canonical )
+			res.MakeCanonical();
+		return res;
+	}
+
+	public static class ReadInputTextFileCharacters extends Benchmark {
+		@Override
+		public String name()
+		{
+			return "ReadInputTextFileCharacters";
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			Compute compute = NewCompute( options);
+			compute.ReadInputTextFileCharacters( inputPath);
+			return compute.hashCode();
+		}
+	}
+
+	public static class ComputeEntropy extends Benchmark {
+		@Override
+		public String name()
+		{
+			return "ComputeEntropy";
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			return NewCompute( options).ComputeEntropy( inputPath).scale();
+		}
+	}
+
+	public static class CreateHoffmanTree extends Benchmark {
+		private Compute compute;
+
+		@Override
+		public String name()
+		{
+			return "CreateHoffmanTree";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			compute = NewCompute( options);
+			if ( options.counts )
+				compute.ReadInputTextFileCharacters( inputPath);
+			else
+				compute.ComputeProbabilities( inputPath);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			HoffmanTree tree = options.counts ? compute.CreateHoffmanTreeFromCounts() : compute.CreateHoffmanTree();
+			return tree.flatTree().size();
+		}
+
+		/** the tree is built from the counts, the input file is not read */
+		@Override
+		public double Work()
+		{
+			return 1;
+		}
+
+		@Override
+		public String throughputUnit()
+		{
+			return "trees/s";
+		}
+	}
+
+	public static class Encode extends Benchmark {
+		private HoffmanTree tree;
+
+		@Override
+		public String name()
+		{
+			return "Encode";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			tree = BuildTree( inputPath, options);
+			tree.Serialize( inputPath, options.charset);   // the .htable is a part of the ratio
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			tree.Encode( inputPath, options.charset, options.mapped, options.blockSymbols);
+			return 1;
+		}
+
+		/** the encoded file together with its Hoffman table */
+		@Override
+		public double Ratio()
+		{
+			return (double)(new File( inputPath + ".hencoded").length() + new File( inputPath + ".htable").length()) / new File( inputPath).length();
+		}
+	}
+
+	public static class Decode extends Benchmark {
+		private HoffmanTree tree;
+
+		@Override
+		public String name()
+		{
+			return "Decode";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			HoffmanTree encoder = BuildTree( inputPath, options);
+			encoder.Serialize( inputPath, options.charset);
+			encoder.Encode( inputPath, options.charset, options.mapped, options.blockSymbols);
+			tree = new HoffmanTree();
+			tree.Deserialize( inputPath + ".hencoded", options.charset);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			tree.Decode( inputPath, options.charset);
+			return 1;
+		}
+	}
+
+	/**
+	 * Decodes all the blocks of the block container one after the other on the calling thread,
+	 * without writing them, so the decoding loops of the single and the interleaved streams can be compared.
+	 */
+	public static class BlockDecode extends Benchmark {
+		private HoffmanCodeBook codeBook;
+		private long symbols;
+
+		@Override
+		public String name()
+		{
+			return "BlockDecode";
+		}
+
+		protected boolean interleaved()
+		{
+			return false;
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			HoffmanTree tree = BuildTree( inputPath, options);
+			tree.Encode( inputPath, options.charset, options.mapped,
+					options.blockSymbols > 0 ? options.blockSymbols : HoffmanBlockEncoder.DEFAULT_BLOCK_SYMBOLS, interleaved());
+			codeBook = tree.CodeBook();
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			try ( HoffmanBlockDecoder in = new HoffmanBlockDecoder( inputPath + ".hencoded", codeBook) )
+			{
+				long res = 0;
+				for ( int b=0; b<in.blockCount(); ++b)
+					res += in.DecodeBlock( b).length;
+				symbols = res;
+				return res;
+			} catch ( IOException ex)
+			{
+				throw new UserErrorException( "decoding of the blocks of " + inputPath + " failed: " + ex.getMessage());
+			}
+		}
+
+		/** the decoded symbols, in millions */
+		@Override
+		public double Work()
+		{
+			return symbols / 1e6;
+		}
+
+		@Override
+		public String throughputUnit()
+		{
+			return "M symbols/s";
+		}
+	}
+
+	public static class InterleavedDecode extends BlockDecode {
+		@Override
+		public String name()
+		{
+			return "InterleavedDecode";
+		}
+
+		@Override
+		protected boolean interleaved()
+		{
+			return true;
+		}
+	}
+
+	public static class Serialize extends Benchmark {
+		private HoffmanTree tree;
+
+		@Override
+		public String name()
+		{
+			return "Serialize";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			tree = BuildTree( inputPath, options);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			tree.Serialize( inputPath, options.charset);
+			return 1;
+		}
+	}
+
+	public static class Deserialize extends Benchmark {
+		@Override
+		public String name()
+		{
+			return "Deserialize";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			BuildTree( inputPath, options).Serialize( inputPath, options.charset);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			HoffmanTree tree = new HoffmanTree();
+			tree.Deserialize( inputPath + ".hencoded", options.charset);
+			return tree.flatTree() == null ? 0 : tree.flatTree().size();
+		}
+	}
+
+	static RansModel BuildRansModel( String inputPath, BenchmarkOptions options) throws UserErrorException
+	{
+		Compute compute = NewCompute( options);
+		compute.ReadInputTextFileCharacters( inputPath);
+		return compute.CreateRansModel();
+	}
+
+	public static class RansEncode extends Benchmark {
+		private RansModel model;
+
+		@Override
+		public String name()
+		{
+			return "RansEncode";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			model = BuildRansModel( inputPath, options);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			new EncodedFileWriter( System.out).EncodeRans( inputPath, options.charset, options.mapped, model);
+			return 1;
+		}
+
+		/** the model is a part of the encoded file */
+		@Override
+		public double Ratio()
+		{
+			return (double)new File( inputPath + ".hencoded").length() / new File( inputPath).length();
+		}
+	}
+
+	public static class RansDecode extends Benchmark {
+		private final HoffmanTree tree = new HoffmanTree();
+
+		@Override
+		public String name()
+		{
+			return "RansDecode";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			new EncodedFileWriter( System.out).EncodeRans( inputPath, options.charset, options.mapped, BuildRansModel( inputPath, options));
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			tree.Decode( inputPath, options.charset);
+			return 1;
+		}
+	}
+
+	/** counts the words too, their dictionary is built from the text on every encoding */
+	public static class WordEncode extends Benchmark {
+		@Override
+		public String name()
+		{
+			return "WordEncode";
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			new EncodedFileWriter( System.out).EncodeWords( inputPath, options.charset, options.mapped);
+			return 1;
+		}
+
+		/** the encoded file together with its word dictionary */
+		@Override
+		public double Ratio()
+		{
+			return (double)(new File( inputPath + ".hencoded").length() + new File( inputPath + ".htable").length()) / new File( inputPath).length();
+		}
+	}
+
+	/** reads the word dictionary too */
+	public static class WordDecode extends Benchmark {
+		private final HoffmanTree tree = new HoffmanTree();
+
+		@Override
+		public String name()
+		{
+			return "WordDecode";
+		}
+
+		@Override
+		public void Setup( String inputPath, BenchmarkOptions options) throws UserErrorException
+		{
+			super.Setup( inputPath, options);
+			new EncodedFileWriter( System.out).EncodeWords( inputPath, options.charset, options.mapped);
+		}
+
+		@Override
+		public long Run() throws UserErrorException
+		{
+			tree.Decode( inputPath, options.charset);
+			return 1;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package zhaw.bench;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Random;
+
+import zhaw.Compute;
+import zhaw.ComputeBatch;
+import zhaw.ComputeMain;
+import zhaw.EncodedFileWriter;
+import zhaw.HoffmanBlockEncoder;
+import zhaw.HoffmanNGramModel;
+import zhaw.HoffmanTree;
+import zhaw.UserErrorException;
+
+/**
+ * Encodes and decodes inputs holding the 0x03 byte, the end of content character of the single stream
+ * format, with every mode which stores the number of the symbols instead, and compares the decoded bytes.
+ *
+ * 	RoundTripCheck [-work <dir>]
+ * 		-work the working directory for the written files, bench_work by default
+ */
+public class RoundTripCheck {
+
+	private static final Charset CHARSET = StandardCharsets.ISO_8859_1;
+	private static final long SEED = 42;
+	private static final String[] MODES = { "rans", "ngram", "words", "order1", "adaptive", "blocks" };
+
+	/** the input, 0x03 between the other characters */
+	private static byte[] Sample( int size)
+	{
+		if ( size <= 6 )
+			return new byte[] { 'a', 'b', 3, 'c', 'd', '\n' };
+		byte[] alphabet = { 'a', 'b', 'c', ' ', 3, '\n', (byte)0xE4 };
+		byte[] res = new byte[size];
+		Random random = new Random( SEED);
+		for ( int i=0; i<size; ++i)
+			res[i] = alphabet[random.nextInt( alphabet.length)];
+		return res;
+	}
+
+	private static void Encode( String mode, String path) throws UserErrorException
+	{
+		Compute compute = new Compute( CHARSET, false);
+		switch ( mode)
+		{
+		case "rans":
+			compute.ReadInputTextFileCharacters( path);
+			new EncodedFileWriter( System.out).EncodeRans( path, CHARSET, false, compute.CreateRansModel());
+			break;
+		case "ngram":
+			new EncodedFileWriter( System.out).EncodeNGram( path, CHARSET, false, compute.CreateNGramModel( path, HoffmanNGramModel.DEFAULT_TABLE_BUDGET));
+			break;
+		case "words":
+			new EncodedFileWriter( System.out).EncodeWords( path, CHARSET, false);
+			break;
+		case "order1":
+			new EncodedFileWriter( System.out).EncodeOrder1( path, CHARSET, false);
+			break;
+		case "adaptive":
+			new EncodedFileWriter( System.out).EncodeAdaptive( path, CHARSET, false);
+			break;
+		default:
+			compute.ReadInputTextFileCharacters( path);
+			HoffmanTree tree = compute.CreateHoffmanTreeFromCounts();
+			tree.Serialize( path, CHARSET);
+			tree.Encode( path, CHARSET, false, HoffmanBlockEncoder.DEFAULT_BLOCK_SYMBOLS);
+		}
+	}
+
+	/** @return null if the decoded file equals the input, else the reason */
+	private static String RoundTrip( String mode, File input, byte[] text) throws IOException
+	{
+		Files.write( input.toPath(), text);
+		String encoded = input.getPath() + ComputeBatch.ENCODED_EXTENTION;
+		File decoded = new File( input.getPath() + ComputeBatch.DECODED_EXTENTION);
+		decoded.delete();
+		try {
+			Encode( mode, input.getPath());
+			HoffmanTree tree = new HoffmanTree();
+			if ( HoffmanTree.NeedsTree( encoded) )
+				tree.Deserialize( encoded, CHARSET);
+			tree.Decode( encoded, CHARSET);
+		} catch ( UserErrorException ex)
+		{
+			return ex.getMessage();
+		}
+		if ( ! decoded.isFile() )
+			return "nothing was decoded";
+		return Arrays.equals( text, Files.readAllBytes( decoded.toPath())) ? null : "the decoded bytes differ";
+	}
+
+	public static void main(String[] args) {
+		PrintStream console = System.out;
+		int failed = 0;
+		try {
+			HashMap<String, String> programParams = new HashMap<>();
+			ComputeMain.parsProgramArguments( args, programParams);
+			File workDir = new File( programParams.containsKey("work") ? programParams.get("work") : "bench_work");
+			if ( ! workDir.isDirectory() && ! workDir.mkdirs() )
+				throw new UserErrorException( "working directory " + workDir + " can not be created.");
+			for ( int size : new int[] { 6, 100000 })
+				for ( String mode : MODES)
+				{
+					File input = new File( workDir, "etx_" + size + "_" + mode + ".txt");
+					System.setOut( new PrintStream( new OutputStream() {
+						@Override
+						public void write( int b)
+						{
+						}
+					}));
+					String error;
+					try {
+						error = RoundTrip( mode, input, Sample( size));
+					} finally
+					{
+						System.setOut( console);
+					}
+					console.println( String.format( "%-8s %-10s %8d bytes %s", error == null ? "OK" : "FAIL", mode, size, error == null ? "" : error));
+					if ( error != null )
+						++failed;
+				}
+		} catch ( UserErrorException uex) {
+			System.err.println("Error: " + uex.getMessage());
+			++failed;
+		} catch ( IOException ex) {
+			System.err.println("Error: the input files can not be written: " + ex.getMessage());
+			++failed;
+		}
+		console.println( failed == 0 ? "All the round trips passed" : failed + " round trips failed");
+		if ( failed != 0 )
+			System.exit( 1);
+	}
+}
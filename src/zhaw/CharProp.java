@@ -4,7 +4,7 @@ import java.math.BigDecimal;
 import java.util.Formatter;
 
 public class CharProp {
-	public int occurence = 1;
+	public long occurence = 1;
 	public BigDecimal probability = new BigDecimal(0.0);
 	public BigDecimal information = new BigDecimal(0.0);
 	@Override
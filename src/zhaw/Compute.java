@@ -1,28 +1,63 @@
 package zhaw;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileNotFoundException;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
 import java.math.BigDecimal;
 import java.math.RoundingMode;
+import java.nio.charset.Charset;
 import java.util.Collections;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map.Entry;
 import java.util.NavigableMap;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
-import zhaw.HoffmanTree.ArcType;
-import zhaw.HoffmanTree.Node;
 
 public class Compute {
 	public static final boolean LDEBUG = false;
 
-	private HashMap<Integer /* character */, CharProp> chars = null;
+	private SymbolTable<CharProp> chars = null;
+	/** the counts of the characters of the text, the EOF character in chars is not in it */
+	private long[] histogram = null;
 	private double fileCharactersCount = 0;
+	private final Charset charset;
+	private final boolean mappedInput;
+	private final boolean snapshots;
+	/** receives the messages, System.out by default */
+	private PrintStream console = System.out;
+
+	public Compute() {
+		this(Charset.defaultCharset(), false);
+	}
+
+	public Compute(Charset charset, boolean mappedInput) {
+		this(charset, mappedInput, false);
+	}
+
+	/**
+	 * @param charset
+	 *            the charset of the input text files, ISO-8859-1 counts the
+	 *            raw bytes without decoding
+	 * @param mappedInput
+	 *            read the input text files through memory mapped buffers
+	 * @param snapshots
+	 *            count only the bytes appended to the input text files since
+	 *            their FrequencySnapshot and update it
+	 */
+	public Compute(Charset charset, boolean mappedInput, boolean snapshots) {
+		this.charset = charset;
+		this.mappedInput = mappedInput;
+		this.snapshots = snapshots;
+	}
+
+	/** print the messages of this Compute and of its trees into the stream */
+	public void setConsole(PrintStream console) {
+		this.console = console;
+	}
 
 	// log2: Logarithm base 2
 	public static double log2(double d) {
@@ -38,43 +73,39 @@ public class Compute {
 
 	// character exists
 	public boolean characterExists(int c) {
-		for (Entry<Integer, CharProp> row : chars.entrySet()) {
-			if (row.getKey() == c) {
-				return true;
-			}
-		}
-		return false;
+		return chars.containsKey(c);
 	}
 
 	public void ReadInputTextFileCharacters(String relativeFilePath)
 			throws UserErrorException {
 		if (LDEBUG) {
-			System.out.println("Current directory is: "
+			console.println("Current directory is: "
 					+ System.getProperty("user.dir"));
 		}
 
-		chars = new HashMap<>();
-		fileCharactersCount = 0;
-		try (BufferedReader in = new BufferedReader(new FileReader(
-				relativeFilePath))) {
-			System.out.println("Reading the input text file "
+		try {
+			console.println("Reading the input text file "
 					+ relativeFilePath + " ...");
-			int c;
-			while ((c = in.read()) != -1) {
-				if (characterExists(c)) {
-					CharProp charPropObject = chars.get(c);
-					charPropObject.occurence = charPropObject.occurence + 1;
-				} else {
-					chars.put(c, new CharProp());
-				}
-
-				fileCharactersCount++;
+			long startTime = System.nanoTime();
+			Metrics.Timer timer = Metrics.Start(Metrics.COUNT);
+			long[] histogram;
+			long countedBytes;
+			if (snapshots) {
+				FrequencySnapshot snapshot = FrequencySnapshot.Update(
+						relativeFilePath, charset, mappedInput, console);
+				histogram = snapshot.histogram();
+				countedBytes = snapshot.countedBytes();
+			} else {
+				histogram = new FrequencyCounter(charset, mappedInput)
+						.Count(relativeFilePath);
+				countedBytes = new File(relativeFilePath).length();
 			}
-			// add EOF too
-			chars.put(HoffmanTree.hoffmanContentEOFchar, new CharProp());
-			++(chars.get(HoffmanTree.hoffmanContentEOFchar).occurence);
-			++fileCharactersCount;
-
+			SetHistogram(histogram);
+			console.println("Counted " + (long) fileCharactersCount
+					+ " characters in "
+					+ (System.nanoTime() - startTime) / 1000000 + " ms on "
+					+ ForkJoinPool.commonPool().getParallelism() + " threads");
+			timer.Stop(countedBytes, 0, (long) fileCharactersCount);
 		} catch (FileNotFoundException ex) {
 			throw new UserErrorException("input file " + relativeFilePath
 					+ " does not exists.");
@@ -88,24 +119,58 @@ public class Compute {
 					+ " has nothing inside.");
 	}
 
+	/**
+	 * Take the counts of the snapshot instead of reading a file, e.g. of the snapshots of several
+	 * shards merged into one. The probabilities and the information are computed from them.
+	 */
+	public void ReadSnapshot(FrequencySnapshot snapshot)
+			throws UserErrorException {
+		SetHistogram(snapshot.histogram());
+		if (fileCharactersCount <= 1)
+			throw new UserErrorException("The frequency snapshot has no characters.");
+		ComputeProbabilities(null);
+		ComputeInformation(null);
+	}
+
+	/** the characters of the histogram together with the EOF character */
+	private void SetHistogram(long[] histogram) {
+		this.histogram = histogram;
+		chars = new SymbolTable<>();
+		fileCharactersCount = 0;
+		for (int c = 0; c < histogram.length; ++c) {
+			if (histogram[c] == 0)
+				continue;
+			CharProp charPropObject = new CharProp();
+			charPropObject.occurence = histogram[c];
+			chars.put(c, charPropObject);
+			fileCharactersCount += histogram[c];
+		}
+		// add EOF too
+		chars.put(HoffmanTree.hoffmanContentEOFchar, new CharProp());
+		++(chars.get(HoffmanTree.hoffmanContentEOFchar).occurence);
+		++fileCharactersCount;
+	}
+
 	public void ComputeProbabilities(String relativeFilePath)
 			throws UserErrorException {
 		// you have to read the file before computing the probabilities
 		if (chars == null)
 			ReadInputTextFileCharacters(relativeFilePath);
-		System.out.println("Computing probabilities...");
+		console.println("Computing probabilities...");
+		Metrics.Timer timer = Metrics.Start(Metrics.PROBABILITIES);
 		/*
 		 * ToDo: [2] implement computing of the probabilities of the existing
 		 * characters. Use the precision 10 after the comma and the constant
 		 * RoundingMode.HALF_UP
 		 */
 
-		for (Entry<Integer, CharProp> reihe : chars.entrySet()) {
-
+		for (int c : chars.symbols()) {
+			CharProp cp = chars.get(c);
 			BigDecimal wahrscheinlichkeit = new BigDecimal(
-					reihe.getValue().occurence / fileCharactersCount);
-			reihe.getValue().probability = wahrscheinlichkeit;
+					cp.occurence / fileCharactersCount);
+			cp.probability = wahrscheinlichkeit;
 		}
+		timer.Stop(0, 0, chars.size());
 	}
 
 	public void ComputeInformation(String relativeFilePath)
@@ -113,19 +178,20 @@ public class Compute {
 		// you have to read the file before computing the information
 		if (chars == null)
 			ComputeProbabilities(relativeFilePath);
-		System.out.println("Computing information...");
+		console.println("Computing information...");
 		/*
 		 * ToDo: [3] implement computing of the information of the existing
 		 * characters. Use the precision 10 after the comma and the constant
 		 * RoundingMode.HALF_UP
 		 */
-		for (Entry<Integer, CharProp> reihe : chars.entrySet()) {
-			BigDecimal probability = reihe.getValue().probability;
+		for (int c : chars.symbols()) {
+			CharProp cp = chars.get(c);
+			BigDecimal probability = cp.probability;
 			BigDecimal einBD = new BigDecimal(1.0);
 			BigDecimal divisionResultat = einBD.divide(probability,
 					RoundingMode.HALF_UP);
 			BigDecimal informationsGehalt = log2(divisionResultat);
-			reihe.getValue().information = informationsGehalt;
+			cp.information = informationsGehalt;
 		}
 	}
 
@@ -134,118 +200,302 @@ public class Compute {
 		// you have to read the file before computing the entropy
 		if (chars == null)
 			ComputeInformation(relativeFilePath);
-		System.out.println("Computing entropy...");
+		console.println("Computing entropy...");
 		/*
 		 * ToDo: [5] implement computing of the entropy of the existing
 		 * characters. Send the entropy value back as a result.
 		 */
 
 		BigDecimal sum = new BigDecimal(0.0);
-		for (Entry<Integer, CharProp> reihe : chars.entrySet()) {
-			BigDecimal probability = reihe.getValue().probability;
-			BigDecimal informationsGehalt = reihe.getValue().information;
+		for (int c : chars.symbols()) {
+			CharProp cp = chars.get(c);
+			BigDecimal probability = cp.probability;
+			BigDecimal informationsGehalt = cp.information;
 			sum = sum.add(probability.multiply(informationsGehalt));
 		}
 
 		return sum;
 	}
 
+	/**
+	 * Compute the entropy with primitive doubles from the integer occurrence counts, without the
+	 * BigDecimal probabilities. The probability and the information of every character are filled
+	 * in as well, so they can be printed out.
+	 */
+	public double ComputeEntropyFromCounts(String relativeFilePath)
+			throws UserErrorException {
+		if (chars == null)
+			ReadInputTextFileCharacters(relativeFilePath);
+		console.println("Computing entropy from the counts...");
+		Metrics.Timer timer = Metrics.Start(Metrics.PROBABILITIES);
+		long[] counts = new long[chars.size()];
+		int i = 0;
+		long total = 0;
+		for (int c : chars.symbols()) {
+			counts[i] = chars.get(c).occurence;
+			total += counts[i++];
+		}
+		double entropy = EntropyEngine.Entropy(counts, total);
+		for (int c : chars.symbols()) {
+			CharProp cp = chars.get(c);
+			cp.probability = new BigDecimal((double) cp.occurence / total);
+			cp.information = new BigDecimal(EntropyEngine.Information(
+					cp.occurence, total));
+		}
+		timer.Stop(0, 0, chars.size());
+		return entropy;
+	}
+
 	public void PrintOutCharProps() {
-		System.out.println("Character types in file: " + chars.size());
-		System.out.println("Number of character in file: "
+		console.println("Character types in file: " + chars.size());
+		console.println("Number of character in file: "
 				+ fileCharactersCount);
-		for (int c : chars.keySet()) {
+		for (int c : chars.symbols()) {
 			String chr = "" + (char) c;
 			if (Character.isWhitespace(c))
 				chr = "(" + c + ")";
 			try (Formatter ft = new Formatter()) {
-				System.out.println(ft.format("%1$5s : %2$s", chr, chars.get(c))
+				console.println(ft.format("%1$5s : %2$s", chr, chars.get(c))
 						.toString());
 			}
 		}
 	}
 
 	public HoffmanTree CreateHoffmanTree() throws UserErrorException {
-		System.out.println("");
-		System.out.println("");
-		System.out.println("");
-		System.out.println("Creating HoffmanTree...");
+		console.println("");
+		console.println("");
+		console.println("");
+		console.println("Creating HoffmanTree...");
 		if (chars == null)
 			throw new UserErrorException(
 					"You have to request computation of probabilities before you request creating of Hffman Tree.");
-		HoffmanTree res = new HoffmanTree();
-		// create the ordered by probabilities hash map for temporary container
-		// in order to build the tree,
-		// e.g. it always keeps the node probability sorted in ascendent order.
-		// the first in the sorted map "sm" is with the lowest probability
-		CacheTreeMap wertListe = new CacheTreeMap();
-		for (int currChr : chars.keySet()) {
-			CharProp cp = chars.get(currChr);
-			try (Formatter ft = new Formatter()) {
-				wertListe.put(cp.probability,
-						res.new Node("" + (char) currChr /*
-														 * ft.format("%s",
-														 * currChr).toString()
-														 */));
-
-				// sm.put( cp.probability, res.new Node(
-				// Character.toString((char)currChr) /* ft.format("%s",
-				// currChr).toString()*/));
+		Metrics.Timer timer = Metrics.Start(Metrics.TREE);
+		// the flat tree keeps the leaves first and then the parents in the
+		// order they are created. The parents are created in ascendent order
+		// of their probability, so the two nodes with the lowest probability
+		// are always at the head of the probability sorted leaves or of the
+		// parents. Equal probabilities are taken in the order they were
+		// added, the leaves before the parents, like the CacheTreeMap does.
+		int[] symbols = chars.symbols();
+		int leaves = symbols.length;
+		HoffmanFlatTree tree = new HoffmanFlatTree(leaves);
+		BigDecimal[] probabilities = new BigDecimal[2 * leaves - 1];
+		for (int i = 0; i < leaves; ++i) {
+			tree.AddLeaf(symbols[i]);
+			probabilities[i] = chars.get(symbols[i]).probability;
+		}
+		int[] leafQueue = SortedByProbability(probabilities, leaves);
+		int leafHead = 0;
+		int parentHead = leaves;
+		int[] lowest = new int[2];
+		while (tree.size() < probabilities.length) {
+			for (int k = 0; k < 2; ++k) {
+				if (leafHead < leaves
+						&& (parentHead == tree.size() || probabilities[leafQueue[leafHead]]
+								.compareTo(probabilities[parentHead]) <= 0))
+					lowest[k] = leafQueue[leafHead++];
+				else
+					lowest[k] = parentHead++;
 			}
+			// the lowest node becomes the right child, the second lowest the
+			// left one
+			int parent = tree.AddParent(lowest[1], lowest[0]);
+			probabilities[parent] = probabilities[lowest[0]]
+					.add(probabilities[lowest[1]]);
 		}
-//		Entry<BigDecimal, List<Node>> firstEntry = wertListe.firstEntry();
-//		wertListe.remove(firstEntry.getKey());
-		// do build the HoffmanTree till there is at least two elements in the
-		// sorted cache map
-		Node root = null;
-		Entry<BigDecimal, List<Node>> aEntry = null;
-		Entry<BigDecimal, List<Node>> bEntry = null;
-		Node a = null;
-		Node b = null;
-		while (wertListe.elements() > 1) {
-
-			/*
-			 * ToDo: [6] Having the sorted cache map "sm" so that: Create a
-			 * parent node which has the the lowest value element as a right
-			 * child node and the second lowest as a left child node. Also do
-			 * not forget to add back into the sorted map the parent node.
-			 */
-			a = wertListe.popNodeWithLowesProbability(ArcType.RIGHT);
-//			if(wertListe.elements() > 1){
-				b = wertListe.popNodeWithLowesProbability(ArcType.RIGHT);
-//			}
-//			else {
-//				break;
-//			}
-
-			/*
-			 * Wenn compareResult == -1, dann ist a kleiner als b Wenn
-			 * compareResult == 0, dann ist a gleich b Wenn compareResult == 1,
-			 * dann ist a groesser als b
-			 */
-			int compareResult = a.probability.compareTo(b.probability);
-			if (compareResult == -1 || compareResult == 0) {
-				// a kleiner als b oder a gleich b
-				a.code = ArcType.RIGHT;
-				b.code = ArcType.LEFT;
-			} else {
-				// a groesser als b
-				a.code = ArcType.LEFT;
-				b.code = ArcType.RIGHT;
+		HoffmanTree res = HoffmanTree.FromFlatTree(tree);
+		res.setConsole(console);
+		timer.Stop(0, 0, chars.size());
+		console.println("res.root probability: "
+				+ probabilities[tree.root()]);
+		return res;
+	}
+
+	/** the indexes of the first n probabilities in ascendent order, equal ones keep their order */
+	private static int[] SortedByProbability(BigDecimal[] probabilities, int n) {
+		int[] res = new int[n];
+		for (int i = 0; i < n; ++i)
+			res[i] = i;
+		int[] merged = new int[n];
+		// bottom up merge sort, it is stable
+		for (int width = 1; width < n; width *= 2) {
+			for (int from = 0; from < n; from += 2 * width) {
+				int middle = Math.min(from + width, n);
+				int to = Math.min(from + 2 * width, n);
+				int a = from;
+				int b = middle;
+				int k = from;
+				while (a < middle && b < to)
+					merged[k++] = probabilities[res[b]]
+							.compareTo(probabilities[res[a]]) < 0 ? res[b++]
+							: res[a++];
+				while (a < middle)
+					merged[k++] = res[a++];
+				while (b < to)
+					merged[k++] = res[b++];
 			}
-			
-			root = res.CreateParentForNodes(a, b);
-			wertListe.put(root.probability, root);
+			int[] swap = res;
+			res = merged;
+			merged = swap;
 		}
-		
-		System.out.println("Anzahl wahrscheinlichkeitelementen: " + wertListe.elements());
-		
-		/*
-		 * ToDo: [7] Add the last element as the root of the tree.
-		 */
-		root.code = ArcType.NONE;
-		res.root = root;
-		System.out.println("res.root.value/probability: " + res.root.value + " " + res.root.probability);
+		return res;
+	}
+
+	/**
+	 * Create the Hoffman tree from the integer occurrence counts of the characters, without computing
+	 * and comparing BigDecimal probabilities. Only the reading of the input file is required before.
+	 */
+	public HoffmanTree CreateHoffmanTreeFromCounts() throws UserErrorException {
+		console.println("Creating HoffmanTree from the character counts...");
+		Metrics.Timer timer = Metrics.Start(Metrics.TREE);
+		HoffmanTreeBuilder builder = NewTreeBuilder();
+		console.println("res.root count: " + builder.rootCount());
+		HoffmanTree res = builder.CreateHoffmanTree();
+		res.setConsole(console);
+		timer.Stop(0, 0, chars.size());
+		return res;
+	}
+
+	/**
+	 * Create the canonical Hoffman codes from the integer occurrence counts of the characters with no
+	 * code longer than maxLength bits, so the decoder can look up every code in a table of a fixed width.
+	 * The cost of the limit is printed against the unconstrained codes and the entropy.
+	 */
+	public HoffmanTree CreateHoffmanTreeFromCounts(int maxLength)
+			throws UserErrorException {
+		console.println("Creating HoffmanTree with codes of at most " + maxLength + " bits...");
+		Metrics.Timer timer = Metrics.Start(Metrics.TREE);
+		HoffmanTreeBuilder builder = NewTreeBuilder();
+		int[] lengths = builder.LimitedCodeLengths(maxLength);
+		HoffmanTree res = HoffmanTree.FromCodeBook(builder.LimitedCanonicalCodeBook(maxLength));
+		res.setConsole(console);
+		timer.Stop(0, 0, chars.size());
+		PrintCodeLengthCost(builder, lengths, maxLength);
+		return res;
+	}
+
+	/**
+	 * Print the bits per symbol of the codes limited to maxLength bits next to the ones of the
+	 * unconstrained Hoffman codes and the entropy.
+	 */
+	public void PrintCodeLengthCost(int maxLength) throws UserErrorException {
+		HoffmanTreeBuilder builder = NewTreeBuilder();
+		PrintCodeLengthCost(builder, builder.LimitedCodeLengths(maxLength), maxLength);
+	}
+
+	private void PrintCodeLengthCost(HoffmanTreeBuilder builder, int[] limitedLengths, int maxLength) {
+		int[] lengths = builder.CodeLengths();
+		int depth = 0;
+		for (int length : lengths)
+			depth = Math.max(depth, length);
+		long[] counts = new long[chars.size()];
+		int i = 0;
+		for (int c : chars.symbols())
+			counts[i++] = chars.get(c).occurence;
+		double entropy = EntropyEngine.Entropy(counts, builder.rootCount());
+		double unconstrained = builder.BitsPerSymbol(lengths);
+		double limited = builder.BitsPerSymbol(limitedLengths);
+		try (Formatter ft = new Formatter()) {
+			console.println(ft.format(
+					"Code length limit %1$d bits (unconstrained %2$d bits): %3$.4f bits/symbol, unconstrained %4$.4f bits/symbol (+%5$.4f), entropy %6$.4f bits/symbol",
+					maxLength, depth, limited, unconstrained, limited - unconstrained, entropy).toString());
+		}
+	}
+
+	/**
+	 * Scale the occurrence counts of the characters to the frequencies of the rANS coder. The counts
+	 * are the ones of the text without the EOF character, the rANS file stores the number of the
+	 * symbols instead, so the EOF character can be a character of the text.
+	 */
+	public RansModel CreateRansModel() throws UserErrorException {
+		if (chars == null)
+			throw new UserErrorException(
+					"You have to request reading of the input file before you request creating of the rANS model.");
+		int[] symbols = TextSymbols();
+		long[] counts = new long[symbols.length];
+		for (int i = 0; i < symbols.length; ++i)
+			counts[i] = histogram[symbols[i]];
+		return RansModel.FromCounts(symbols, counts);
+	}
+
+	/** the characters occurring in the text in ascending order, without the EOF character unless it is in the text */
+	private int[] TextSymbols() {
+		int n = 0;
+		for (long count : histogram)
+			if (count != 0)
+				++n;
+		int[] res = new int[n];
+		n = 0;
+		for (int c = 0; c < histogram.length; ++c)
+			if (histogram[c] != 0)
+				res[n++] = c;
+		return res;
+	}
+
+	/**
+	 * Count the n-grams of k characters of the input text file and build their Hoffman codes. The
+	 * characters read before are the alphabet. The longest n-grams fitting into the budget are counted
+	 * first, k is the length costing the least bits together with the table, see HoffmanNGramModel.BestK.
+	 * The entropy per character is printed next to the one of the n-grams and their codes.
+	 *
+	 * @param tableBudget
+	 *            the most n-grams of the table, alphabet size ^ k
+	 */
+	public HoffmanNGramModel CreateNGramModel(String relativeFilePath, int tableBudget)
+			throws UserErrorException {
+		if (chars == null)
+			ReadInputTextFileCharacters(relativeFilePath);
+		int[] alphabet = TextSymbols();
+		int n = alphabet.length;
+		if (n == 0)
+			throw new UserErrorException("input file " + relativeFilePath
+					+ " has nothing inside.");
+		HoffmanNGramModel model = CountNGrams(relativeFilePath, alphabet,
+				HoffmanNGramModel.ChooseK(n, tableBudget));
+		int k = model.BestK();
+		if (k != model.k())
+			model = CountNGrams(relativeFilePath, alphabet, k);
+		Metrics.Timer timer = Metrics.Start(Metrics.TREE);
+		model.BuildCodes();
+		timer.Stop(0, 0, model.codeBook().size());
+		try (Formatter ft = new Formatter()) {
+			console.println(ft.format(
+					"Entropy: %1$.4f bits/symbol, %2$d-gram entropy: %3$.4f bits/symbol, %2$d-gram Hoffman codes: %4$.4f bits/symbol",
+					model.Entropy(), model.k(), model.NGramEntropy(), model.CodedBitsPerSymbol()).toString());
+		}
+		return model;
+	}
+
+	private HoffmanNGramModel CountNGrams(String relativeFilePath, int[] alphabet, int k)
+			throws UserErrorException {
+		HoffmanNGramModel model = new HoffmanNGramModel(alphabet, k);
+		console.println("Counting the " + k + "-grams of "
+				+ relativeFilePath + " (" + model.grams() + " n-grams)...");
+		Metrics.Timer timer = Metrics.Start(Metrics.COUNT);
+		try (FileInputStream in = new FileInputStream(relativeFilePath)) {
+			model.Count(mappedInput ? new MappedReader(in.getChannel(), charset)
+					: new InputStreamReader(in, charset));
+		} catch (FileNotFoundException ex) {
+			throw new UserErrorException("input file " + relativeFilePath
+					+ " does not exists.");
+		} catch (IOException e) {
+			throw new UserErrorException("input file " + relativeFilePath
+					+ " reading failed: " + e.getMessage());
+		}
+		timer.Stop(new File(relativeFilePath).length(), 0, model.symbolCount());
+		return model;
+	}
+
+	private HoffmanTreeBuilder NewTreeBuilder() throws UserErrorException {
+		if (chars == null)
+			throw new UserErrorException(
+					"You have to request reading of the input file before you request creating of Hffman Tree.");
+		int[] symbols = chars.symbols().clone();
+		long[] counts = new long[symbols.length];
+		for (int i = 0; i < symbols.length; ++i)
+			counts[i] = chars.get(symbols[i]).occurence;
+		HoffmanTreeBuilder res = new HoffmanTreeBuilder(symbols, counts);
+		res.Build();
 		return res;
 	}
 
@@ -0,0 +1,240 @@
+package zhaw;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Formatter;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Processes many files in one JVM on a fixed pool of worker threads and collects the throughput
+ * of every file. The output of the single files is dropped while the batch runs, the summary
+ * is printed at the end.
+ */
+public class ComputeBatch {
+
+	public static final String ENCODED_EXTENTION = ".hencoded";
+	public static final String DECODED_EXTENTION = ".hdecoded";
+	public static final String TABLE_EXTENTION = ".htable";
+
+	/** the work done for one file */
+	public interface FileJob {
+		/**
+		 * @param console - receives the messages of the file, instead of System.out
+		 * @return the paths of the written files, e.g. the .hencoded and the .htable file
+		 */
+		String[] Process( String filePath, PrintStream console) throws UserErrorException;
+	}
+
+	/** the outcome of one file */
+	static class FileResult {
+		String filePath;
+		long inputBytes;
+		long outputBytes;   /// of all the written files
+		long nanos;
+		String error;   /// null if the file was processed
+	}
+
+	/** the messages of the single files are dropped */
+	private static final PrintStream QUIET = new PrintStream( new OutputStream() {
+		@Override
+		public void write( int b)
+		{
+		}
+	});
+
+	private final List<String> files;
+	private final int threads;
+	private final List<FileResult> results = new ArrayList<>();
+	private long wallNanos;
+
+	/**
+	 * @param threads - the number of the files processed at once
+	 */
+	public ComputeBatch( List<String> files, int threads)
+	{
+		this.files = files;
+		this.threads = Math.max( 1, threads);
+	}
+
+	/**
+	 * The files of the batch:
+	 * 		a directory - all its files
+	 * 		@manifest - the paths listed in the manifest file, one per line, the lines starting with # are skipped
+	 * 		a glob - the files matching the pattern in its directory, e.g. "data_*.txt"
+	 * The .hdecoded, .htable and .hfreq files are skipped, as is a .hencoded file whose text file is in
+	 * the batch too, since encoding the text file rewrites it.
+	 */
+	public static List<String> ListFiles( String spec) throws UserErrorException
+	{
+		if ( spec == null )
+			throw new UserErrorException( "Missing files for the batch mode.");
+		List<String> res = new ArrayList<>();
+		if ( spec.startsWith( "@") )
+		{
+			String manifest = spec.substring( 1);
+			try ( BufferedReader in = new BufferedReader( new InputStreamReader( new FileInputStream( manifest), StandardCharsets.UTF_8)) )
+			{
+				String line;
+				while ( (line = in.readLine()) != null )
+				{
+					line = line.trim();
+					if ( ! line.isEmpty() && ! line.startsWith( "#") )
+						res.add( line);
+				}
+			} catch ( IOException ex)
+			{
+				throw new UserErrorException( "manifest file " + manifest + " reading failed.");
+			}
+		}
+		else if ( new File( spec).isDirectory() )
+		{
+			for ( File f : SortedFiles( new File( spec)))
+				if ( f.isFile() )
+					res.add( f.getPath());
+		}
+		else
+		{
+			File pattern = new File( spec);
+			File dir = pattern.getParentFile() == null ? new File( ".") : pattern.getParentFile();
+			PathMatcher matcher = FileSystems.getDefault().getPathMatcher( "glob:" + pattern.getName());
+			for ( File f : SortedFiles( dir))
+				if ( f.isFile() && matcher.matches( Paths.get( f.getName())) )
+					res.add( pattern.getParentFile() == null ? f.getName() : f.getPath());
+		}
+		res = Schedulable( res);
+		if ( res.isEmpty() )
+			throw new UserErrorException( "No files found for the batch " + spec + ".");
+		return res;
+	}
+
+	/** the files without the written ones and without the .hencoded files of the text files in the list */
+	private static List<String> Schedulable( List<String> files)
+	{
+		Set<Path> texts = new HashSet<>();
+		for ( String f : files)
+			if ( ! f.endsWith( ENCODED_EXTENTION) )
+				texts.add( Normalized( f));
+		List<String> res = new ArrayList<>();
+		for ( String f : files)
+		{
+			if ( f.endsWith( DECODED_EXTENTION) || f.endsWith( TABLE_EXTENTION) || f.endsWith( FrequencySnapshot.FILE_EXTENTION) )
+				continue;
+			if ( f.endsWith( ENCODED_EXTENTION) && texts.contains( Normalized( f.substring( 0, f.length() - ENCODED_EXTENTION.length()))) )
+				continue;
+			res.add( f);
+		}
+		return res;
+	}
+
+	private static Path Normalized( String filePath)
+	{
+		return Paths.get( filePath).toAbsolutePath().normalize();
+	}
+
+	private static File[] SortedFiles( File dir) throws UserErrorException
+	{
+		File[] res = dir.listFiles();
+		if ( res == null )
+			throw new UserErrorException( "directory " + dir + " can not be read.");
+		Arrays.sort( res);
+		return res;
+	}
+
+	/** process all the files and wait till they are finished */
+	public void Run( final FileJob job) throws UserErrorException
+	{
+		ExecutorService executor = Executors.newFixedThreadPool( threads);
+		long startTime = System.nanoTime();
+		try {
+			List<Future<FileResult>> pending = new ArrayList<>();
+			for ( final String filePath : files)
+				pending.add( executor.submit( new Callable<FileResult>() {
+					@Override
+					public FileResult call()
+					{
+						return Process( job, filePath);
+					}
+				}));
+			for ( Future<FileResult> future : pending)
+				results.add( Tasks.Get( future));
+		} catch ( IOException ex)
+		{
+			throw new UserErrorException( "batch processing failed: " + ex.getMessage());
+		} finally
+		{
+			wallNanos = System.nanoTime() - startTime;
+			executor.shutdownNow();
+		}
+	}
+
+	private static FileResult Process( FileJob job, String filePath)
+	{
+		FileResult res = new FileResult();
+		res.filePath = filePath;
+		res.inputBytes = new File( filePath).length();
+		long startTime = System.nanoTime();
+		try {
+			for ( String written : job.Process( filePath, QUIET))
+				res.outputBytes += new File( written).length();
+		} catch ( UserErrorException ex)
+		{
+			res.error = ex.getMessage();
+		} catch ( RuntimeException ex)
+		{
+			res.error = ex.toString();
+		}
+		res.nanos = System.nanoTime() - startTime;
+		return res;
+	}
+
+	/** print the throughput of every file and of the whole batch */
+	public void PrintSummary()
+	{
+		long inputBytes = 0;
+		long outputBytes = 0;
+		long nanos = 0;
+		int failed = 0;
+		System.out.println( String.format( "%-40s %12s %12s %10s %10s", "File", "Input bytes", "Output bytes", "ms", "MB/s"));
+		for ( FileResult r : results)
+		{
+			if ( r.error != null )
+			{
+				++failed;
+				System.out.println( String.format( "%-40s failed: %s", r.filePath, r.error));
+				continue;
+			}
+			inputBytes += r.inputBytes;
+			outputBytes += r.outputBytes;
+			nanos += r.nanos;
+			try (Formatter ft = new Formatter())
+			{
+				System.out.println( ft.format( "%-40s %12d %12d %10.1f %10.2f", r.filePath, r.inputBytes, r.outputBytes,
+						r.nanos / 1e6, r.inputBytes / (Math.max( r.nanos, 1) / 1e9) / (1024 * 1024)));
+			}
+		}
+		try (Formatter ft = new Formatter())
+		{
+			System.out.println( ft.format( "Processed %1$d files (%2$d failed) on %3$d threads: %4$d input bytes, %5$d output bytes in %6$.3f s (%7$.3f s summed up over the files): %8$.2f MB/s",
+					results.size() - failed, failed, threads, inputBytes, outputBytes, wallNanos / 1e9, nanos / 1e9,
+					inputBytes / (Math.max( wallNanos, 1) / 1e9) / (1024 * 1024)));
+		}
+	}
+}
@@ -1,7 +1,16 @@
 package zhaw;
 
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
 import java.math.BigDecimal;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -11,18 +20,54 @@ public class ComputeMain {
 
 	/**
 	 * Program arguments:
-	 * 	ComputeMain [-t <input_text_file_name> [-f | -p | -i | -e] [-h]] | [-d <file_for_decoding.hencoded>]
+	 * 	ComputeMain [-t <input_text_file_name> [-f | -p | -i | -e] [-h]] | [-d <file_for_decoding.hencoded>] | [-batch <files> [-threads <n>]]
 	 * 		-t is the input text file
 	 * 		-f compute the relative frequencies
 	 * 		-p compute the probabilities 
 	 * 		-i compute the information content
 	 * 		-e compute the entropy
 	 * 		-h create the hoffman tree and serialize it to the file. Note: requires probability information
+	 * 		-canonical write the canonical Hoffman codes, the .htable then keeps only the code length of every character (together with -h)
+	 * 		-maxlen <bits> limit the Hoffman codes to the given length and print the cost against the unconstrained codes
+	 * 			(together with -h, the codes are canonical then, or with -e)
+	 * 		-counts create the hoffman tree from the integer character counts instead of the probabilities (together with -h),
+	 * 			or compute the entropy from them with doubles (together with -e)
 	 * 		-d decode a file based on Hoffman encoding and generate the relevant .decoded file
+	 * 		-mmap read the input text file through memory mapped buffers, or write the decoded file through them
+	 * 			if the encoded file knows its number of characters and the charset has one byte per character
+	 * 		-blocks [<symbols>] write the block container of independently decodable blocks, encoded and decoded in parallel
+	 * 		-interleaved split every block into 4 interleaved bit streams decoded in one loop (implies -blocks)
+	 * 		-adaptive encode the input text file in one pass with adaptive Hoffman codes, without counting it before and without the .htable file
+	 * 		-batch <dir | glob | @manifest> encode all the files of the directory, the files matching the glob (e.g. "data_*.txt")
+	 * 			or the files listed in the manifest concurrently, the .hencoded files are decoded unless their text file is in the batch too
+	 * 		-threads <n> the number of the files processed at once in the batch mode, the number of the processors by default
+	 * 		-train <dictionary.hdict> build a shared code table with an escape code from the -t file or the -batch files and save it
+	 * 		-dict <dictionary.hdict> encode the -t file, decode the -d file or process the -batch files with the shared code table,
+	 * 			without counting the characters and without the .htable file
+	 * 		-order1 encode the input text file with one Hoffman table per preceding character and report the conditional entropy
+	 * 		-rans encode the input text file with the rANS coder from the character counts, the model is stored in the encoded file
+	 * 		-ngram [<n-grams>] encode the input text file with the Hoffman codes of the n-grams of k characters, k is chosen for the
+	 * 			least size together with the table of at most the given number of n-grams (65536 by default), the codes are stored in the encoded file
+	 * 		-words encode the input text file with one Hoffman code per word and separator, the .htable keeps the front coded dictionary
+	 * 		-snapshot keep the character counts of the input text file in its .hfreq snapshot, a re-run counts only the appended bytes
+	 * 		-merge <a.hfreq,b.hfreq,...> compute the frequencies, probabilities, information or entropy (-f, -p, -i, -e) of the summed up
+	 * 			snapshots of several files instead of reading the -t file
+	 * 		-save <merged.hfreq> write the summed up snapshots of -merge into the file
+	 * 		-estimate estimate the entropy of the -t file from randomly sampled blocks, with a bounded run time for any file size
+	 * 		-gate [<ratio>] skip the encoding of the files whose sampled compression ratio is above the ratio (0.95 by default)
+	 * 			even at the lower bound of the estimated entropy
+	 * 		-metrics [<file.json>] write the wall time, the CPU time, the allocated bytes, the bytes in and out and the symbols
+	 * 			of every phase as JSON into the file or to the standard output; the metrics are always available as the MXBean zhaw:type=Metrics
+	 * 		-bytes use the raw bytes of the files as the alphabet (ISO-8859-1) instead of the default charset, also for -d
 	 * */
 	private static HashMap<String, String> programParams = new HashMap<>();
+	/** the biggest compression ratio -gate accepts by default */
+	private static final double DEFAULT_GATE_RATIO = 0.95;
+	/** the shared code table of -dict, null without it */
+	private static HoffmanCodeBook dictionary = null;
 	
-	private static void parsProgramArguments( String[] args) throws UserErrorException {
+	/** parse the arguments into the names without the leading '-' and their values, null for the names without a value, also for BenchmarkMain */
+	public static void parsProgramArguments( String[] args, HashMap<String, String> params) throws UserErrorException {
 		String currParamValue = null;
 	    for (int i = 0; i < args.length; i++) {
 	    	switch (args[i].charAt(0)) {
@@ -30,16 +75,20 @@ public class ComputeMain {
 	        	Matcher matcher = Pattern.compile("\\-+([\\w_]+)").matcher(args[i]);
 	        	if ( ! matcher.find() || matcher.groupCount() <= 0 )
 	        		throw new UserErrorException("Ivalid argument name: " + args[i]);
-	        	programParams.put( currParamValue =  matcher.group(1), null);
+	        	params.put( currParamValue =  matcher.group(1), null);
 	        	continue;
 	        default:
-	        	if ( currParamValue == null || ! programParams.containsKey( currParamValue) )
+	        	if ( currParamValue == null || ! params.containsKey( currParamValue) )
 	        		throw new UserErrorException("No argument name specified for argument value: " + args[i]);
-	        	programParams.put( currParamValue, args[i]);
+	        	params.put( currParamValue, args[i]);
 	        	currParamValue = null;
 	        	continue;
 	    	}
 	    }
+	}
+
+	private static void parsProgramArguments( String[] args) throws UserErrorException {
+		parsProgramArguments( args, programParams);
 	    
 	    if ( LDEBUG ) {
 	    	System.out.println("Program parameters:   ");
@@ -49,54 +98,296 @@ public class ComputeMain {
 	    }
 	}
 	
+	/** the value of the argument as a positive number */
+	private static int ParseCount( String argument) throws UserErrorException {
+		try {
+			int res = Integer.parseInt( programParams.get( argument));
+			if ( res > 0 )
+				return res;
+		} catch ( NumberFormatException ex) {
+		}
+		throw new UserErrorException("Invalid number for the argument " + argument + ": " + programParams.get( argument));
+	}
+	
+	/** create the Hoffman tree from the already read input text file, serialize it and encode the file */
+	private static void EncodeFile( Compute compute, String textFilePath, Charset charset, PrintStream console) throws UserErrorException {
+		HoffmanTree hoffmanTree;
+		if ( programParams.containsKey("maxlen") )
+			hoffmanTree = compute.CreateHoffmanTreeFromCounts( ParseCount( "maxlen"));
+		else
+			hoffmanTree = programParams.containsKey("counts") ? compute.CreateHoffmanTreeFromCounts() : compute.CreateHoffmanTree();
+		// serialize to the binary Hoffman table file
+		console.println(textFilePath);
+		if ( programParams.containsKey("canonical") )
+			hoffmanTree.MakeCanonical();
+		hoffmanTree.Serialize( textFilePath, charset);
+		// encode the text file on the bases of the hoffmantree object to the binary file
+		int blockSymbols = 0;
+		if ( programParams.containsKey("blocks") )
+			blockSymbols = programParams.get("blocks") == null ? HoffmanBlockEncoder.DEFAULT_BLOCK_SYMBOLS : ParseCount( "blocks");
+		hoffmanTree.Encode( textFilePath, charset, programParams.containsKey("mmap"), blockSymbols, programParams.containsKey("interleaved"));
+	}
+
+	/** count the characters of the text file and encode it with the rANS coder */
+	private static void EncodeFileWithRans( Compute compute, String textFilePath, Charset charset, PrintStream console) throws UserErrorException {
+		compute.ReadInputTextFileCharacters( textFilePath);
+		new EncodedFileWriter( console).EncodeRans( textFilePath, charset, programParams.containsKey("mmap"), compute.CreateRansModel());
+	}
+
+	/** count the n-grams of the text file and encode it with their codes */
+	private static void EncodeFileWithNGrams( Compute compute, String textFilePath, Charset charset, PrintStream console) throws UserErrorException {
+		int budget = programParams.get("ngram") == null ? HoffmanNGramModel.DEFAULT_TABLE_BUDGET : ParseCount( "ngram");
+		new EncodedFileWriter( console).EncodeNGram( textFilePath, charset, programParams.containsKey("mmap"), compute.CreateNGramModel( textFilePath, budget));
+	}
+
+	/** encode the text file with the shared dictionary, the file is not read before */
+	private static void EncodeFileWithDictionary( String textFilePath, Charset charset, PrintStream console) throws UserErrorException {
+		int blockSymbols = 0;
+		if ( programParams.containsKey("blocks") && programParams.get("blocks") != null )
+			blockSymbols = ParseCount( "blocks");
+		HoffmanTree hoffmanTree = HoffmanTree.FromDictionary( dictionary);
+		hoffmanTree.setConsole( console);
+		hoffmanTree.Encode( textFilePath, charset, programParams.containsKey("mmap"), blockSymbols, programParams.containsKey("interleaved"));
+	}
+
+	private static void DecodeFile( String encodedFilePath, Charset charset, PrintStream console) throws UserErrorException {
+		HoffmanTree hoffmanTree = dictionary != null ? HoffmanTree.FromDictionary( dictionary) : new HoffmanTree();
+		hoffmanTree.setConsole( console);
+		// deserialize the Hoffman tree from file, the adaptive files and the dictionary do not need any
+		if ( dictionary == null && HoffmanTree.NeedsTree( encodedFilePath) )
+		{
+			console.println("Deserializing Hoffman tree...   ");
+			hoffmanTree.Deserialize( encodedFilePath, charset);
+		}
+		// decode the encoded file based on the already deserialized tree
+		hoffmanTree.Decode( encodedFilePath, charset, programParams.containsKey("mmap"));
+	}
+
+	/** encode or decode all the files of the batch concurrently, every file with its own Compute and HoffmanTree */
+	private static void RunBatch( final Charset charset) throws UserErrorException {
+		int threads = programParams.containsKey("threads") ? ParseCount( "threads") : Runtime.getRuntime().availableProcessors();
+		ComputeBatch batch = new ComputeBatch( ComputeBatch.ListFiles( programParams.get("batch")), threads);
+		batch.Run( new ComputeBatch.FileJob() {
+			@Override
+			public String[] Process( String filePath, PrintStream console) throws UserErrorException {
+				if ( filePath.endsWith( ComputeBatch.ENCODED_EXTENTION) )
+				{
+					DecodeFile( filePath, charset, console);
+					return new String[] { filePath.substring( 0, filePath.length() - ComputeBatch.ENCODED_EXTENTION.length()) + ComputeBatch.DECODED_EXTENTION };
+				}
+				CheckWorthCompressing( filePath, charset);
+				if ( dictionary != null )
+					EncodeFileWithDictionary( filePath, charset, console);
+				else if ( programParams.containsKey("adaptive") )
+					new EncodedFileWriter( console).EncodeAdaptive( filePath, charset, programParams.containsKey("mmap"));
+				else if ( programParams.containsKey("order1") )
+					new EncodedFileWriter( console).EncodeOrder1( filePath, charset, programParams.containsKey("mmap"));
+				else if ( programParams.containsKey("words") )
+					new EncodedFileWriter( console).EncodeWords( filePath, charset, programParams.containsKey("mmap"));
+				else if ( programParams.containsKey("rans") )
+					EncodeFileWithRans( NewCompute( console), filePath, charset, console);
+				else if ( programParams.containsKey("ngram") )
+					EncodeFileWithNGrams( NewCompute( console), filePath, charset, console);
+				else
+				{
+					Compute compute = NewCompute( console);
+					if ( programParams.containsKey("counts") )
+						compute.ReadInputTextFileCharacters( filePath);
+					else
+						compute.ComputeProbabilities( filePath);
+					EncodeFile( compute, filePath, charset, console);
+				}
+				// the tree, the order-1 and the word codes are kept in the .htable file
+				if ( dictionary != null || programParams.containsKey("adaptive") || programParams.containsKey("rans") || programParams.containsKey("ngram") )
+					return new String[] { filePath + ComputeBatch.ENCODED_EXTENTION };
+				return new String[] { filePath + ComputeBatch.ENCODED_EXTENTION, filePath + ComputeBatch.TABLE_EXTENTION };
+			}
+
+			private Compute NewCompute( PrintStream console) {
+				Compute res = new Compute( charset, programParams.containsKey("mmap"), programParams.containsKey("snapshot"));
+				res.setConsole( console);
+				return res;
+			}
+		});
+		batch.PrintSummary();
+	}
+
+	/** train the dictionary on the -t file or on the -batch files and save it */
+	private static void TrainDictionary( Charset charset) throws UserErrorException {
+		List<String> samples;
+		if ( programParams.containsKey("batch") )
+			samples = ComputeBatch.ListFiles( programParams.get("batch"));
+		else if ( programParams.get("t") != null )
+			samples = Collections.singletonList( programParams.get("t"));
+		else
+			throw new UserErrorException("Missing sample text files for the training of the dictionary.");
+		if ( programParams.get("train") == null )
+			throw new UserErrorException("Missing dictionary file name for the training.");
+		System.out.println("Training the dictionary on " + samples.size() + " files...");
+		HoffmanCodeBook trained = HoffmanDictionary.Train( samples, charset, programParams.containsKey("mmap"));
+		HoffmanDictionary.Save( trained, programParams.get("train"));
+		System.out.println("Dictionary of " + trained.size() + " codes saved into " + programParams.get("train"));
+	}
+
+	/** throw the user error if the -gate is set and the file is not worth compressing */
+	private static void CheckWorthCompressing( String textFilePath, Charset charset) throws UserErrorException {
+		if ( ! programParams.containsKey("gate") )
+			return;
+		double maxRatio = DEFAULT_GATE_RATIO;
+		if ( programParams.get("gate") != null )
+			try {
+				maxRatio = Double.parseDouble( programParams.get("gate"));
+			} catch ( NumberFormatException ex) {
+				throw new UserErrorException("Invalid ratio for the argument gate: " + programParams.get("gate"));
+			}
+		EntropyEstimator.Estimate estimate = new EntropyEstimator( charset).Estimate( textFilePath);
+		if ( estimate.LowerRatio() > maxRatio )
+			throw new UserErrorException("input file " + textFilePath + " is not worth compressing, the estimated compression ratio is " + String.format( "%.3f", estimate.Ratio()));
+	}
+
+	/** sum up the comma separated snapshot files, the sum is saved into the -save file */
+	private static FrequencySnapshot MergeSnapshots( String snapshotFilePaths) throws UserErrorException {
+		if ( snapshotFilePaths == null )
+			throw new UserErrorException("Missing snapshot files for the merging.");
+		FrequencySnapshot res = null;
+		for ( String path : snapshotFilePaths.split( ","))
+		{
+			FrequencySnapshot snapshot = FrequencySnapshot.Load( path.trim());
+			if ( res == null )
+				res = snapshot;
+			else
+				res.Merge( snapshot);
+		}
+		System.out.println("Merged " + res.total() + " characters of " + res.offset() + " bytes from the snapshots " + snapshotFilePaths);
+		if ( programParams.get("save") != null )
+			res.Save( programParams.get("save"));
+		return res;
+	}
+
+	/** write the JSON summary of the metrics into the file, to the standard output if there is no file */
+	private static void WriteMetrics( String jsonFilePath) throws UserErrorException {
+		String json = Metrics.get().getSummaryJson();
+		if ( jsonFilePath == null )
+		{
+			System.out.println( json);
+			return;
+		}
+		try ( Writer out = new OutputStreamWriter( new FileOutputStream( jsonFilePath), StandardCharsets.UTF_8) )
+		{
+			out.write( json);
+			out.write( System.lineSeparator());
+		} catch ( IOException ex) {
+			throw new UserErrorException( "metrics file " + jsonFilePath + " writting failed.");
+		}
+	}
+
 	public static void main(String[] args) {
 		System.out.println( "Starting ComputeMain...");
 
 		try {
 			parsProgramArguments( args);
+			Metrics.Register();
 			
-			Compute compute = new Compute();
+			Charset charset = programParams.containsKey("bytes") ? StandardCharsets.ISO_8859_1 : Charset.defaultCharset();
+			Compute compute = new Compute( charset, programParams.containsKey("mmap"), programParams.containsKey("snapshot"));
+			if ( programParams.containsKey("estimate") )
+			{
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the entropy estimation.");
+				long startTime = System.nanoTime();
+				EntropyEstimator.Estimate estimate = new EntropyEstimator( charset).Estimate( programParams.get("t"));
+				System.out.println("Estimated entropy: " + estimate + " in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+			}
+			if ( programParams.get("t") != null && ! programParams.containsKey("batch") && ! programParams.containsKey("train")
+					&& (programParams.containsKey("h") || programParams.containsKey("adaptive") || programParams.containsKey("order1") || programParams.containsKey("rans") || programParams.containsKey("ngram")
+					|| programParams.containsKey("words") || programParams.containsKey("dict")) )
+				CheckWorthCompressing( programParams.get("t"), charset);
+
+			// the batch computes the probabilities of every file in its jobs, -t is not read then
+			boolean computeText = ( programParams.containsKey("f") || programParams.containsKey("p") || programParams.containsKey("i") || programParams.containsKey("e") )
+					&& ! programParams.containsKey("batch");
+			if ( programParams.containsKey("merge") )
+				compute.ReadSnapshot( MergeSnapshots( programParams.get("merge")));
 			// check if the input text file is required 
-			if ( programParams.containsKey("f") || programParams.containsKey("p") || programParams.containsKey("i") || programParams.containsKey("e") )
+			else if ( computeText )
 				if ( programParams.get("t") == null)
 					throw new UserErrorException("Missing input text file for reading.");
 
-			/// compute entropy
-			if ( programParams.containsKey("e") ) {
-				BigDecimal entropy = compute.ComputeEntropy( programParams.get("t"));
-				System.out.println("Entropy : " + entropy);
+			if ( computeText ) {
+				/// compute entropy
+				if ( programParams.containsKey("e") ) {
+					if ( programParams.containsKey("counts") )
+						System.out.println("Entropy : " + compute.ComputeEntropyFromCounts( programParams.get("t")));
+					else {
+						BigDecimal entropy = compute.ComputeEntropy( programParams.get("t"));
+						System.out.println("Entropy : " + entropy);
+					}
+					if ( programParams.containsKey("maxlen") )
+						compute.PrintCodeLengthCost( ParseCount( "maxlen"));
+				}
+				/// compute information
+				else if ( programParams.containsKey("i") )
+					compute.ComputeInformation( programParams.get("t"));
+				/// compute probability
+				else if ( programParams.containsKey("p") )
+					compute.ComputeProbabilities( programParams.get("t"));
+				/// compute frequency
+				else if ( programParams.containsKey("f") )
+					compute.ReadInputTextFileCharacters( programParams.get("t"));
 			}
-			/// compute information
-			else if ( programParams.containsKey("i") )
-				compute.ComputeInformation( programParams.get("t"));
-			/// compute probability
-			else if ( programParams.containsKey("p") )
-				compute.ComputeProbabilities( programParams.get("t"));
-			/// compute frequency
-			else if ( programParams.containsKey("f") )
-				compute.ReadInputTextFileCharacters( programParams.get("t"));
 			
-			if ( programParams.containsKey("h") )
+			if ( programParams.containsKey("dict") )
 			{
-				HoffmanTree hoffmanTree = compute.CreateHoffmanTree();
-				// serialize to the binary Hoffman table file
-				System.out.println(programParams.get("t"));
-				hoffmanTree.Serialize( programParams.get("t"));
-				// encode the text file on the bases of the hoffmantree object to the binary file
-				hoffmanTree.Encode( programParams.get("t"));
+				if ( programParams.get("dict") == null )
+					throw new UserErrorException("Missing dictionary file name.");
+				dictionary = HoffmanDictionary.Load( programParams.get("dict"));
 			}
-			else if ( programParams.containsKey("d") )
+
+			if ( programParams.containsKey("train") )
+				TrainDictionary( charset);
+			else if ( programParams.containsKey("batch") )
+				RunBatch( charset);
+			else if ( dictionary != null && programParams.get("t") != null )
+				EncodeFileWithDictionary( programParams.get("t"), charset, System.out);
+			else if ( programParams.containsKey("order1") )
 			{
-				HoffmanTree hoffmanTree = new HoffmanTree();
-				// deserialize the Hoffman tree from file
-				System.out.println("Deserializing Hoffman tree...   ");
-				hoffmanTree.Deserialize( programParams.get("d"));
-				// decode the encoded file based on the already deserialized tree
-				hoffmanTree.Decode( programParams.get("d"));
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the order-1 encoding.");
+				new EncodedFileWriter( System.out).EncodeOrder1( programParams.get("t"), charset, programParams.containsKey("mmap"));
+			}
+			else if ( programParams.containsKey("words") )
+			{
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the word encoding.");
+				new EncodedFileWriter( System.out).EncodeWords( programParams.get("t"), charset, programParams.containsKey("mmap"));
+			}
+			else if ( programParams.containsKey("rans") )
+			{
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the rANS encoding.");
+				EncodeFileWithRans( compute, programParams.get("t"), charset, System.out);
 			}
+			else if ( programParams.containsKey("ngram") )
+			{
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the n-gram encoding.");
+				EncodeFileWithNGrams( compute, programParams.get("t"), charset, System.out);
+			}
+			else if ( programParams.containsKey("adaptive") )
+			{
+				if ( programParams.get("t") == null)
+					throw new UserErrorException("Missing input text file for the adaptive encoding.");
+				new EncodedFileWriter( System.out).EncodeAdaptive( programParams.get("t"), charset, programParams.containsKey("mmap"));
+			}
+			else if ( programParams.containsKey("h") )
+				EncodeFile( compute, programParams.get("t"), charset, System.out);
+			else if ( programParams.containsKey("d") )
+				DecodeFile( programParams.get("d"), charset, System.out);
 
-			if ( programParams.containsKey("f") || programParams.containsKey("p") || programParams.containsKey("i") || programParams.containsKey("e") )
+			if ( computeText )
 				compute.PrintOutCharProps();
+			if ( programParams.containsKey("metrics") )
+				WriteMetrics( programParams.get("metrics"));
 		} catch ( UserErrorException uex) {
 			System.err.println("Error: " + uex.getMessage());
 		}
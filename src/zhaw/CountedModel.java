@@ -0,0 +1,21 @@
+package zhaw;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+
+/**
+ * The model of a format which counts the text file before it is encoded and keeps the codes in
+ * the .htable file, e.g. the order-1 or the word model.
+ */
+interface CountedModel {
+
+	/** count the symbols of the text */
+	void Count( Reader in) throws IOException, UserErrorException;
+
+	/** the number of the counted symbols */
+	long symbolCount();
+
+	/** write the codes into the .htable file, they have to be built */
+	void Write( DataOutputStream out) throws IOException;
+}
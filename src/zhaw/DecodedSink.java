@@ -0,0 +1,167 @@
+package zhaw;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * Writes the decoded symbols into a file without a BufferedWriter and an OutputStreamWriter:
+ * the symbols are collected in one reusable char block, encoded into one reusable byte block
+ * and the byte block is written through the FileChannel. Nothing is allocated per written block.
+ *
+ * The ISO-8859-1 symbols are copied into the bytes without any charset encoder. If the number of the
+ * symbols is known before and the charset has one byte per character, the output file can be memory
+ * mapped in its final size and the symbols are stored directly into the mapped bytes.
+ */
+public class DecodedSink extends Writer {
+
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	private final FileChannel channel;
+	private final CharsetEncoder encoder;   /// null for the raw bytes
+	private final CharBuffer chars = CharBuffer.allocate( BLOCK_SIZE);
+	private final ByteBuffer bytes;
+	private final MappedByteBuffer mapped;  /// null if the output is not mapped
+	private boolean closed = false;
+
+	/**
+	 * @param expectedSymbols - the number of the symbols which will be written, -1 if not known
+	 * @param mappedOutput - map the output file if the expected symbols are known and the charset has one byte per character
+	 */
+	public static DecodedSink Open( String filePath, Charset charset, long expectedSymbols, boolean mappedOutput) throws IOException
+	{
+		if ( mappedOutput && expectedSymbols >= 0 && expectedSymbols <= MappedInput.MAX_WINDOW && IsSingleByte( charset) )
+		{
+			try ( RandomAccessFile file = new RandomAccessFile( filePath, "rw") )
+			{
+				file.setLength( 0);
+				// the mapping stays valid after the file is closed
+				MappedByteBuffer buffer = file.getChannel().map( FileChannel.MapMode.READ_WRITE, 0, expectedSymbols);
+				return new DecodedSink( null, charset, buffer);
+			}
+		}
+		return new DecodedSink( new FileOutputStream( filePath).getChannel(), charset, null);
+	}
+
+	private static boolean IsSingleByte( Charset charset)
+	{
+		return MappedInput.IsRawBytes( charset) || (MappedInput.CanSplit( charset) && charset.newEncoder().maxBytesPerChar() == 1.0f);
+	}
+
+	private DecodedSink( FileChannel channel, Charset charset, MappedByteBuffer mapped)
+	{
+		this.channel = channel;
+		this.mapped = mapped;
+		this.encoder = MappedInput.IsRawBytes( charset) ? null : charset.newEncoder()
+				.onMalformedInput( CodingErrorAction.REPLACE)
+				.onUnmappableCharacter( CodingErrorAction.REPLACE);
+		this.bytes = mapped != null ? mapped : ByteBuffer.allocateDirect( BLOCK_SIZE * (encoder == null ? 1 : (int)Math.ceil( encoder.maxBytesPerChar())));
+	}
+
+	@Override
+	public void write( int c) throws IOException
+	{
+		if ( ! chars.hasRemaining() )
+			Drain( false);
+		chars.put( (char)c);
+	}
+
+	@Override
+	public void write( char[] cbuf, int off, int len) throws IOException
+	{
+		while ( len > 0 )
+		{
+			if ( ! chars.hasRemaining() )
+				Drain( false);
+			int n = Math.min( len, chars.remaining());
+			chars.put( cbuf, off, n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	@Override
+	public void write( String str, int off, int len) throws IOException
+	{
+		while ( len > 0 )
+		{
+			if ( ! chars.hasRemaining() )
+				Drain( false);
+			int n = Math.min( len, chars.remaining());
+			chars.put( str, off, off + n);
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** encode the collected chars into the bytes, the bytes are written out when they are full */
+	private void Drain( boolean end) throws IOException
+	{
+		chars.flip();
+		if ( encoder == null )
+		{
+			char[] array = chars.array();
+			for ( int i=chars.position(); i<chars.limit(); ++i)
+			{
+				if ( ! bytes.hasRemaining() )
+					WriteBytes();
+				char c = array[i];
+				bytes.put( c <= 0xFF ? (byte)c : (byte)'?');
+			}
+			chars.position( chars.limit());
+		}
+		else
+		{
+			while ( encoder.encode( chars, bytes, end).isOverflow() )
+				WriteBytes();
+			if ( end )
+				while ( encoder.flush( bytes).isOverflow() )
+					WriteBytes();
+		}
+		// a high surrogate at the end of the block stays for the next block
+		chars.compact();
+	}
+
+	private void WriteBytes() throws IOException
+	{
+		if ( mapped != null )
+			throw new IOException( "More symbols were decoded than the file header announced.");
+		bytes.flip();
+		while ( bytes.hasRemaining() )
+			channel.write( bytes);
+		bytes.clear();
+	}
+
+	/** write the collected symbols into the file, the mapped output is only written by the operating system */
+	@Override
+	public void flush() throws IOException
+	{
+		Drain( false);
+		if ( mapped == null )
+			WriteBytes();
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if ( closed )
+			return;
+		closed = true;
+		Drain( true);
+		if ( mapped == null )
+		{
+			WriteBytes();
+			channel.close();
+		}
+		else if ( mapped.hasRemaining() )
+			throw new IOException( "Only " + mapped.position() + " of the " + mapped.capacity() + " symbols announced by the file header were decoded.");
+	}
+}
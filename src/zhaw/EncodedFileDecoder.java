@@ -0,0 +1,29 @@
+package zhaw;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * The decoder of an encoded file which needs no Hoffman tree, e.g. an adaptive, order-1, rANS, n-gram
+ * or word file. The header of the file is read when the decoder is created.
+ */
+interface EncodedFileDecoder {
+
+	/** the name of the format in the messages */
+	String format();
+
+	/** the charset of the encoded text */
+	Charset charset();
+
+	/** the number of the encoded symbols, -1 if the file does not store it */
+	long symbolCount();
+
+	/**
+	 * Decode all the symbols into the output.
+	 *
+	 * @return the number of the written symbols
+	 * @throws java.io.EOFException if the input ends before all the symbols are decoded
+	 */
+	long Decode( Writer out) throws IOException, UserErrorException;
+}
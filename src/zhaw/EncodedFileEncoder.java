@@ -0,0 +1,24 @@
+package zhaw;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * The encoder of a format which needs no Hoffman tree, e.g. an adaptive, order-1, rANS, n-gram
+ * or word file. The header of the file is written in front of the symbols.
+ */
+interface EncodedFileEncoder {
+
+	/** the name of the format in the messages */
+	String format();
+
+	/**
+	 * Encode all the symbols of the input.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	long Encode( Reader in, Charset charset, OutputStream out) throws IOException, UserErrorException;
+}
@@ -0,0 +1,192 @@
+package zhaw;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Formatter;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Encodes the text files into the formats which need no Hoffman tree. Every format builds its model
+ * on its own, the encoded file is written by one body for all of them.
+ *  => <text_file_name.txt> => <binary_text_encoded>.hencoded
+ */
+public final class EncodedFileWriter {
+
+	/** receives the messages */
+	private final PrintStream console;
+
+	public EncodedFileWriter( PrintStream console)
+	{
+		this.console = console;
+	}
+
+	/**
+	 * Encode the text file in one pass with the adaptive Hoffman codes, the characters do not have to be
+	 * counted before and no .htable file is written.
+	 *
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void EncodeAdaptive( String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		Encode( new HoffmanAdaptiveEncoder(), relativeTextFilePath, charset, mappedInput);
+	}
+
+	/**
+	 * Encode the text file with one table per preceding character (order-1 context), the tables of
+	 * all the contexts are built in parallel and written into the .htable file.
+	 *
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void EncodeOrder1( String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		HoffmanContextModel model = new HoffmanContextModel();
+		Count( model, "order-1 contexts", relativeTextFilePath, charset, mappedInput);
+		long startTime = System.nanoTime();
+		Metrics.Timer timer = Metrics.Start( Metrics.TREE);
+		model.BuildTables( ForkJoinPool.commonPool());
+		timer.Stop( 0, 0, model.Contexts().length);
+		console.println( "Built the tables of " + model.Contexts().length + " contexts in " + (System.nanoTime() - startTime) / 1000000 + " ms");
+		try (Formatter ft = new Formatter())
+		{
+			console.println( ft.format( "Order-0 entropy: %1$.4f bits/symbol, order-1 conditional entropy: %2$.4f bits/symbol, order-1 Hoffman codes: %3$.4f bits/symbol",
+					model.Entropy(), model.ConditionalEntropy(), model.CodedBitsPerSymbol()));
+		}
+		WriteTable( model, model.Contexts().length, relativeTextFilePath);
+		Encode( new HoffmanContextEncoder( model), relativeTextFilePath, charset, mappedInput);
+	}
+
+	/**
+	 * Encode the text file with one Hoffman code per distinct word and separator, the front coded
+	 * dictionary of the words together with their code lengths is written into the .htable file.
+	 *
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void EncodeWords( String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		HoffmanWordModel model = new HoffmanWordModel( new File( relativeTextFilePath).length());
+		Count( model, "words", relativeTextFilePath, charset, mappedInput);
+		Metrics.Timer timer = Metrics.Start( Metrics.TREE);
+		model.BuildCodes();
+		timer.Stop( 0, 0, model.size());
+		try (Formatter ft = new Formatter())
+		{
+			console.println( ft.format( "%1$d words and separators, %2$d distinct: word entropy %3$.4f bits/symbol, word Hoffman codes %4$.4f bits/symbol",
+					model.tokenCount(), model.size(), model.Entropy(), model.CodedBitsPerSymbol()));
+		}
+		String tableFilePath = WriteTable( model, model.size(), relativeTextFilePath);
+		console.println( "Word dictionary " + tableFilePath + ": " + new File( tableFilePath).length() + " bytes");
+		Encode( new HoffmanWordEncoder( model), relativeTextFilePath, charset, mappedInput);
+	}
+
+	/**
+	 * Encode the text file with the rANS coder and the frequencies scaled from the counts of the characters.
+	 * The model is written into the header of the encoded file, no .htable file is written.
+	 *
+	 * @param model - the model created from the counts of this text file
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void EncodeRans( String relativeTextFilePath, Charset charset, boolean mappedInput, RansModel model) throws UserErrorException
+	{
+		try (Formatter ft = new Formatter())
+		{
+			console.println( ft.format( "Entropy: %1$.4f bits/symbol, rANS frequencies of %2$d bits: %3$.4f bits/symbol",
+					model.entropy(), model.probBits(), model.codedBitsPerSymbol()));
+		}
+		Encode( new RansEncoder( model), relativeTextFilePath, charset, mappedInput);
+	}
+
+	/**
+	 * Encode the text file with the codes of its n-grams, the codes are written into the header of the
+	 * encoded file, no .htable file is written.
+	 *
+	 * @param model - the model counted from this text file, with the built codes
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void EncodeNGram( String relativeTextFilePath, Charset charset, boolean mappedInput, HoffmanNGramModel model) throws UserErrorException
+	{
+		Encode( new HoffmanNGramEncoder( model), relativeTextFilePath, charset, mappedInput);
+	}
+
+	private static Reader OpenReader( FileInputStream in, Charset charset, boolean mappedInput) throws IOException
+	{
+		return mappedInput ? new MappedReader( in.getChannel(), charset) : new InputStreamReader( in, charset);
+	}
+
+	/** count the text file into the model, which needs at least one symbol */
+	private void Count( CountedModel model, String what, String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		try ( FileInputStream in = new FileInputStream( relativeTextFilePath) )
+		{
+			console.println( "Counting the " + what + " of " + relativeTextFilePath + "...");
+			Metrics.Timer timer = Metrics.Start( Metrics.COUNT);
+			model.Count( OpenReader( in, charset, mappedInput));
+			timer.Stop( new File( relativeTextFilePath).length(), 0, model.symbolCount());
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + relativeTextFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "input file " + relativeTextFilePath + " reading failed: " + e.getMessage());
+		}
+		if ( model.symbolCount() == 0 )
+			throw new UserErrorException( "input file " + relativeTextFilePath + " has nothing inside.");
+	}
+
+	/**
+	 * @param entries - the number of the written tables or codes, for the metrics
+	 * @return the path of the .htable file
+	 */
+	private static String WriteTable( CountedModel model, long entries, String relativeTextFilePath) throws UserErrorException
+	{
+		String tableFilePath = relativeTextFilePath + HoffmanTree.FILE_HOFFOMANTREE_EXTENTION;
+		Metrics.Timer timer = Metrics.Start( Metrics.SERIALIZE);
+		try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tableFilePath))) )
+		{
+			model.Write( out);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "output file " + tableFilePath + " can not be created.");
+		} catch (IOException e) {
+			throw new UserErrorException( "output file " + tableFilePath + " writting failed: " + e.getMessage());
+		}
+		timer.Stop( 0, new File( tableFilePath).length(), entries);
+		return tableFilePath;
+	}
+
+	/** encode the text file with the encoder of the format and print the throughput */
+	private void Encode( EncodedFileEncoder encoder, String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		String encodedFilePath = relativeTextFilePath + HoffmanTree.FILE_HOFFOMANENCODED_EXTENTION;
+		try ( 	FileInputStream in = new FileInputStream( relativeTextFilePath);
+				OutputStream out = new BufferedOutputStream( new FileOutputStream( encodedFilePath))
+				)
+		{
+			console.println( "Encoding file " + relativeTextFilePath + " with the " + encoder.format() + " codes...");
+			long startTime = System.nanoTime();
+			Metrics.Timer timer = Metrics.Start( Metrics.ENCODE);
+			long symbols = encoder.Encode( OpenReader( in, charset, mappedInput), charset, out);
+			out.flush();
+			HoffmanTree.PrintThroughput( console, "Encoded with the " + encoder.format() + " codes", symbols, new File( encodedFilePath).length(), System.nanoTime() - startTime);
+			timer.Stop( new File( relativeTextFilePath).length(), new File( encodedFilePath).length(), symbols);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + relativeTextFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + relativeTextFilePath + " writting failed: " + e.getMessage());
+		}
+	}
+}
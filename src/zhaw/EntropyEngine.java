@@ -0,0 +1,94 @@
+package zhaw;
+
+/**
+ * Computes the entropy and the information content from the integer counts of the symbols with
+ * primitive doubles: H = log2(N) - sum( c * log2(c)) / N. The values c * log2(c) of the small counts
+ * are looked up in a precomputed table, the bigger ones are computed.
+ *
+ * The sum over a histogram is split into four independent partial sums, so the additions do not wait
+ * for each other and the JIT can keep them in separate registers.
+ */
+public class EntropyEngine {
+
+	/** the counts below this one are looked up */
+	public static final int TABLE_SIZE = 1 << 16;
+	private static final double INV_LN2 = 1.0 / Math.log( 2.0);
+
+	/** the table is built when it is used the first time */
+	private static class Table {
+		static final double[] C_LOG2_C = new double[TABLE_SIZE];
+		static
+		{
+			for ( int c=2; c<TABLE_SIZE; ++c)
+				C_LOG2_C[c] = c * Math.log( c) * INV_LN2;
+		}
+	}
+
+	public static double Log2( double d)
+	{
+		return Math.log( d) * INV_LN2;
+	}
+
+	/** c * log2(c), 0 for the count 0 */
+	public static double CLog2C( long c)
+	{
+		if ( c < TABLE_SIZE )
+			return Table.C_LOG2_C[(int)c];
+		return c * Math.log( c) * INV_LN2;
+	}
+
+	/** the sum of c * log2(c) over the histogram */
+	public static double SumCLog2C( long[] histogram)
+	{
+		double[] table = Table.C_LOG2_C;
+		double s0 = 0, s1 = 0, s2 = 0, s3 = 0;
+		int n = histogram.length & ~3;
+		for ( int i=0; i<n; i+=4)
+		{
+			long c0 = histogram[i], c1 = histogram[i + 1], c2 = histogram[i + 2], c3 = histogram[i + 3];
+			// the four counts are small in nearly all the histograms, so there is one branch for all of them
+			if ( (c0 | c1 | c2 | c3) < TABLE_SIZE )
+			{
+				s0 += table[(int)c0];
+				s1 += table[(int)c1];
+				s2 += table[(int)c2];
+				s3 += table[(int)c3];
+			}
+			else
+			{
+				s0 += CLog2C( c0);
+				s1 += CLog2C( c1);
+				s2 += CLog2C( c2);
+				s3 += CLog2C( c3);
+			}
+		}
+		for ( int i=n; i<histogram.length; ++i)
+			s0 += CLog2C( histogram[i]);
+		return (s0 + s1) + (s2 + s3);
+	}
+
+	/** the entropy in bits per symbol of the counts having the given total */
+	public static double Entropy( long[] histogram, long total)
+	{
+		if ( total == 0 )
+			return 0;
+		return Math.max( 0, Log2( total) - SumCLog2C( histogram) / total);
+	}
+
+	public static double Entropy( long[] histogram)
+	{
+		return Entropy( histogram, FrequencyCounter.Total( histogram));
+	}
+
+	/** the entropy from the already summed up c * log2(c) of all the counts */
+	public static double Entropy( long total, double sumCLog2C)
+	{
+		return total == 0 ? 0 : Math.max( 0, Log2( total) - sumCLog2C / total);
+	}
+
+	/** the information content log2(N / c) of the symbol occurring c times out of N */
+	public static double Information( long c, long total)
+	{
+		return Log2( total) - Log2( c);
+	}
+}
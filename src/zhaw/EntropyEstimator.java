@@ -0,0 +1,247 @@
+package zhaw;
+
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.util.Random;
+
+/**
+ * Estimates the entropy of a big text file from a bounded number of randomly placed blocks, so the
+ * estimation costs about the same for any file size. The file is cut into as many strata as blocks are
+ * sampled and every block is memory mapped at a random position of its stratum. A file not bigger than
+ * all the blocks together is counted completely and the entropy is exact.
+ *
+ * The entropy is computed with doubles from the pooled counts of the blocks. The confidence interval
+ * comes from the jackknife over the blocks (leaving out one block at a time), so it covers the
+ * differences between the parts of the file and not only the random error of the counts.
+ */
+public class EntropyEstimator {
+
+	public static final int DEFAULT_BLOCK_BYTES = 64 << 10;
+	public static final int DEFAULT_BLOCKS = 32;
+	/** the normal quantile of the 95% confidence interval */
+	private static final double Z_95 = 1.959964;
+
+	private final Charset charset;
+	private final int blockBytes;
+	private final int blocks;
+	private final Random random;
+
+	/** the estimate of the entropy and of the compression ratio of the Hoffman codes */
+	public static class Estimate {
+		public double entropy;           /// bits per symbol
+		public double lower;             /// the bounds of the 95% confidence interval of the entropy
+		public double upper;
+		public long sampledBytes;
+		public long sampledSymbols;
+		public long fileBytes;
+		public int sampledBlocks;
+		public boolean exact;            /// the whole file was counted
+
+		/** the expected size of the encoded file relative to the file, the codes can not be shorter than the entropy */
+		public double Ratio()
+		{
+			return Ratio( entropy);
+		}
+
+		/** the ratio at the lower bound of the entropy */
+		public double LowerRatio()
+		{
+			return Ratio( lower);
+		}
+
+		public double UpperRatio()
+		{
+			return Ratio( upper);
+		}
+
+		private double Ratio( double bitsPerSymbol)
+		{
+			return sampledBytes == 0 ? 0 : bitsPerSymbol * sampledSymbols / (8.0 * sampledBytes);
+		}
+
+		@Override
+		public String toString()
+		{
+			return String.format( "%.4f bits/symbol (95%% confidence interval %.4f - %.4f), compression ratio %.3f (%.3f - %.3f), %s %d of %d bytes in %d blocks",
+					entropy, lower, upper, Ratio(), LowerRatio(), UpperRatio(), exact ? "counted" : "sampled", sampledBytes, fileBytes, sampledBlocks);
+		}
+	}
+
+	public EntropyEstimator( Charset charset)
+	{
+		this( charset, DEFAULT_BLOCK_BYTES, DEFAULT_BLOCKS, new Random());
+	}
+
+	/**
+	 * @param blockBytes - the size of every sampled block
+	 * @param blocks - the number of the sampled blocks, at least 2 for the confidence interval
+	 * @param random - the source of the block positions, seeded for a repeatable estimate
+	 */
+	public EntropyEstimator( Charset charset, int blockBytes, int blocks, Random random)
+	{
+		if ( blockBytes <= 0 || blocks < 2 )
+			throw new IllegalArgumentException( "Invalid sampling of " + blocks + " blocks of " + blockBytes + " bytes.");
+		this.charset = charset;
+		this.blockBytes = blockBytes;
+		this.blocks = blocks;
+		this.random = random;
+	}
+
+	public Estimate Estimate( String filePath) throws UserErrorException
+	{
+		try ( 	FileInputStream in = new FileInputStream( filePath);
+				FileChannel channel = in.getChannel()
+				)
+		{
+			return Estimate( channel);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + filePath + " does not exists.");
+		} catch (IOException e) {
+			throw new UserErrorException( "input file " + filePath + " reading failed.");
+		}
+	}
+
+	public Estimate Estimate( FileChannel channel) throws IOException
+	{
+		long size = channel.size();
+		Estimate res = new Estimate();
+		res.fileBytes = size;
+		long[][] ranges = SampleRanges( channel, size);
+		res.exact = ranges.length == 1 && ranges[0][0] == 0 && ranges[0][1] == size;
+
+		long[] total = new long[FrequencyCounter.ALPHABET_SIZE];
+		int[][] blockSymbols = new int[ranges.length][];
+		int[][] blockCounts = new int[ranges.length][];
+		int[] counts = new int[FrequencyCounter.ALPHABET_SIZE];
+		for ( int b=0; b<ranges.length; ++b)
+		{
+			long from = ranges[b][0];
+			long to = ranges[b][1];
+			if ( to <= from )
+				continue;
+			CountBlock( channel, from, to, counts);
+			res.sampledBytes += to - from;
+			// keep only the symbols of the block for the jackknife
+			int n = 0;
+			for ( int c=0; c<counts.length; ++c)
+				if ( counts[c] != 0 )
+					++n;
+			blockSymbols[b] = new int[n];
+			blockCounts[b] = new int[n];
+			n = 0;
+			for ( int c=0; c<counts.length; ++c)
+				if ( counts[c] != 0 )
+				{
+					blockSymbols[b][n] = c;
+					blockCounts[b][n++] = counts[c];
+					total[c] += counts[c];
+					counts[c] = 0;
+				}
+			++res.sampledBlocks;
+		}
+
+		long symbols = 0;
+		double sum = 0;   /// sum of c * log2(c) over all the pooled counts
+		for ( long c : total)
+			if ( c != 0 )
+			{
+				symbols += c;
+				sum += EntropyEngine.CLog2C( c);
+			}
+		res.sampledSymbols = symbols;
+		res.entropy = EntropyEngine.Entropy( symbols, sum);
+		res.lower = res.entropy;
+		res.upper = res.entropy;
+		if ( res.exact || res.sampledBlocks < 2 )
+			return res;
+
+		// the jackknife: the entropy of the pooled counts without one block
+		double[] leaveOut = new double[ranges.length];
+		double mean = 0;
+		for ( int b=0; b<ranges.length; ++b)
+		{
+			if ( blockSymbols[b] == null )
+				continue;
+			long n = symbols;
+			double s = sum;
+			for ( int i=0; i<blockSymbols[b].length; ++i)
+			{
+				long c = total[blockSymbols[b][i]];
+				long rest = c - blockCounts[b][i];
+				s -= EntropyEngine.CLog2C( c) - EntropyEngine.CLog2C( rest);
+				n -= blockCounts[b][i];
+			}
+			leaveOut[b] = EntropyEngine.Entropy( n, s);
+			mean += leaveOut[b];
+		}
+		int k = res.sampledBlocks;
+		mean /= k;
+		double variance = 0;
+		for ( int b=0; b<ranges.length; ++b)
+			if ( blockSymbols[b] != null )
+				variance += (leaveOut[b] - mean) * (leaveOut[b] - mean);
+		variance *= (k - 1) / (double)k;
+		double halfWidth = Z_95 * Math.sqrt( variance);
+		res.lower = Math.max( 0, res.entropy - halfWidth);
+		res.upper = res.entropy + halfWidth;
+		return res;
+	}
+
+	/** the ranges of the sampled blocks starting and ending at the character borders, the whole file if it is small */
+	private long[][] SampleRanges( FileChannel channel, long size) throws IOException
+	{
+		long sampled = (long)blockBytes * blocks;
+		if ( size <= sampled )
+			return new long[][] { { 0, size } };
+		if ( ! MappedInput.CanSplit( charset) )
+			// the character borders can not be found at random positions, sample the start of the file
+			return new long[][] { { 0, MappedInput.CompleteEnd( channel, sampled, charset) } };
+		long[][] res = new long[blocks][];
+		long stratum = size / blocks;
+		for ( int b=0; b<blocks; ++b)
+		{
+			long start = b * stratum + (long)(random.nextDouble() * (stratum - blockBytes));
+			long from = MappedInput.CharBorder( channel, start, charset);
+			long to = MappedInput.CompleteEnd( channel, Math.min( size, start + blockBytes), charset);
+			res[b] = new long[] { from, Math.max( from, to) };
+		}
+		return res;
+	}
+
+	private void CountBlock( FileChannel channel, long from, long to, int[] counts) throws IOException
+	{
+		ByteBuffer in = MappedInput.Map( channel, from, to);
+		CharsetDecoder decoder = MappedInput.NewDecoder( charset);
+		if ( decoder == null )
+		{
+			while ( in.hasRemaining() )
+				++counts[in.get() & 0xFF];
+			return;
+		}
+		CharBuffer out = CharBuffer.allocate( 1 << 16);
+		boolean more;
+		do {
+			more = decoder.decode( in, out, true).isOverflow();
+			if ( ! more )
+				while ( decoder.flush( out).isOverflow() )
+					Drain( out, counts);
+			Drain( out, counts);
+		} while ( more );
+	}
+
+	private static void Drain( CharBuffer chars, int[] counts)
+	{
+		chars.flip();
+		char[] array = chars.array();
+		for ( int i=chars.position(); i<chars.limit(); ++i)
+			++counts[array[i]];
+		chars.clear();
+	}
+}
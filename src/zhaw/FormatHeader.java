@@ -0,0 +1,82 @@
+package zhaw;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The start of the self-describing encoded files:
+ *
+ * 		int    the magic number of the format
+ * 		byte   the version of the format
+ * 		short  the length of the charset name, followed by the name in ASCII
+ *
+ * The block format keeps its counts between the version and the charset, so it writes and reads the
+ * two parts on its own.
+ */
+final class FormatHeader {
+
+	private FormatHeader()
+	{
+	}
+
+	static void Write( DataOutput out, int magic, int version, Charset charset) throws IOException
+	{
+		WriteStart( out, magic, version);
+		WriteCharset( out, charset);
+	}
+
+	static void WriteStart( DataOutput out, int magic, int version) throws IOException
+	{
+		out.writeInt( magic);
+		out.writeByte( version);
+	}
+
+	static void WriteCharset( DataOutput out, Charset charset) throws IOException
+	{
+		byte[] charsetName = charset.name().getBytes( StandardCharsets.US_ASCII);
+		out.writeShort( charsetName.length);
+		out.write( charsetName);
+	}
+
+	/** the number of the bytes WriteCharset writes */
+	static int CharsetSize( Charset charset)
+	{
+		return 2 + charset.name().getBytes( StandardCharsets.US_ASCII).length;
+	}
+
+	/**
+	 * @param file the kind of the file in the messages, e.g. "an adaptive Hoffman file"
+	 * @return the charset of the encoded text
+	 * @throws IOException if the input is not of the format or its charset is not supported
+	 */
+	static Charset Read( DataInput in, int magic, int version, String file) throws IOException
+	{
+		ReadStart( in, magic, version, file);
+		return ReadCharset( in);
+	}
+
+	static void ReadStart( DataInput in, int magic, int version, String file) throws IOException
+	{
+		if ( in.readInt() != magic )
+			throw new IOException( "The input is not " + file + ".");
+		int readVersion = in.readByte();
+		if ( readVersion != version )
+			throw new IOException( "Unsupported version " + readVersion + " of " + file + ".");
+	}
+
+	static Charset ReadCharset( DataInput in) throws IOException
+	{
+		byte[] charsetName = new byte[in.readUnsignedShort()];
+		in.readFully( charsetName);
+		String name = new String( charsetName, StandardCharsets.US_ASCII);
+		try {
+			return Charset.forName( name);
+		} catch ( IllegalArgumentException ex)
+		{
+			throw new IOException( "The charset \"" + name + "\" of the encoded file is not supported.");
+		}
+	}
+}
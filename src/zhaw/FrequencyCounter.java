@@ -0,0 +1,221 @@
+package zhaw;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Counts the characters of a text file in parallel.
+ *
+ * The file is split into chunks at character borders, every chunk is decoded and counted into its own
+ * primitive histogram on a ForkJoinPool and the histograms are summed up while the tasks are joined.
+ * Only the charsets where a character border can be found from the bytes (the single byte charsets and UTF-8)
+ * are split, any other charset is counted in one chunk.
+ *
+ * The chunks are either read with positional reads into a heap buffer or memory mapped, so the bytes
+ * are decoded directly from the page cache. The ISO-8859-1 alphabet is counted from the raw bytes
+ * without any charset decoding.
+ */
+public class FrequencyCounter {
+	public static final int ALPHABET_SIZE = 1 << 16;   /// one counter for every char value
+
+	private static final int CHUNK_SIZE = 8 << 20;
+	private static final int READ_SIZE = 1 << 18;
+
+	private final Charset charset;
+	private final boolean mapped;
+	private final ForkJoinPool pool;
+
+	public FrequencyCounter( Charset charset, boolean mapped)
+	{
+		this( charset, mapped, ForkJoinPool.commonPool());
+	}
+
+	public FrequencyCounter( Charset charset, boolean mapped, ForkJoinPool pool)
+	{
+		this.charset = charset;
+		this.mapped = mapped;
+		this.pool = pool;
+	}
+
+	/**
+	 * @return the histogram of the file characters, indexed by the char value
+	 */
+	public long[] Count( String filePath) throws IOException
+	{
+		try ( 	FileInputStream in = new FileInputStream( filePath);
+				FileChannel channel = in.getChannel()
+				)
+		{
+			return Count( channel, 0, channel.size());
+		}
+	}
+
+	/**
+	 * Count the part of the file from the position to the end position (exclusive), both have to be character borders.
+	 *
+	 * @return the histogram of the characters of the part, indexed by the char value
+	 */
+	public long[] Count( FileChannel channel, long from, long to) throws IOException
+	{
+		try {
+			long[] bounds = MappedInput.Ranges( channel, charset, from, to, CHUNK_SIZE);
+			return pool.invoke( new CountTask( channel, bounds, 0, bounds.length - 1));
+		} catch ( UncheckedIOException ex)
+		{
+			throw ex.getCause();
+		}
+	}
+
+	/** counts the chunks from first to last (exclusive), splitting them in halves till one chunk is left */
+	private class CountTask extends RecursiveTask<long[]> {
+		private static final long serialVersionUID = 1L;
+		private final FileChannel channel;
+		private final long[] bounds;
+		private final int first;
+		private final int last;
+
+		CountTask( FileChannel channel, long[] bounds, int first, int last)
+		{
+			this.channel = channel;
+			this.bounds = bounds;
+			this.first = first;
+			this.last = last;
+		}
+
+		@Override
+		protected long[] compute()
+		{
+			if ( last - first > 1 )
+			{
+				int middle = (first + last) >>> 1;
+				CountTask left = new CountTask( channel, bounds, first, middle);
+				left.fork();
+				long[] res = new CountTask( channel, bounds, middle, last).compute();
+				long[] leftRes = left.join();
+				for ( int c=0; c<ALPHABET_SIZE; ++c)
+					res[c] += leftRes[c];
+				return res;
+			}
+			try {
+				long from = bounds[first], to = bounds[last];
+				if ( mapped && to - from <= MappedInput.MAX_WINDOW )
+					return CountBuffer( MappedInput.Map( channel, from, to));
+				return CountChunk( from, to);
+			} catch ( IOException ex)
+			{
+				throw new UncheckedIOException( ex);
+			}
+		}
+
+		/** count the chunk read into the heap buffer by parts */
+		private long[] CountChunk( long from, long to) throws IOException
+		{
+			CharsetDecoder decoder = MappedInput.NewDecoder( charset);
+			ByteBuffer in = ByteBuffer.allocate( READ_SIZE);
+			CharBuffer out = CharBuffer.allocate( READ_SIZE);
+			int[] counts = new int[ALPHABET_SIZE];
+			long[] res = new long[ALPHABET_SIZE];
+			long pos = from;
+			long countedFrom = from;   /// the position since the int counters are counting
+			boolean end = false;
+			while ( ! end )
+			{
+				if ( to - pos < in.remaining() )
+					in.limit( in.position() + (int)(to - pos));
+				int n = channel.read( in, pos);
+				if ( n > 0 )
+					pos += n;
+				end = n < 0 || pos >= to;
+				in.flip();
+				if ( decoder == null )
+					CountBytes( in, counts);
+				else
+				{
+					CoderResult result;
+					do {
+						result = decoder.decode( in, out, end);
+						CountInto( out, counts);
+					} while ( result.isOverflow() );
+				}
+				in.compact();
+				// the int counters can not overflow before the next READ_SIZE bytes
+				if ( pos - countedFrom > Integer.MAX_VALUE - READ_SIZE )
+				{
+					AddInto( counts, res);
+					countedFrom = pos;
+				}
+			}
+			if ( decoder != null )
+			{
+				while ( decoder.flush( out).isOverflow() )
+					CountInto( out, counts);
+				CountInto( out, counts);
+			}
+			AddInto( counts, res);
+			return res;
+		}
+
+		/** count the whole (memory mapped) chunk at once, it has less than 2^31 bytes */
+		private long[] CountBuffer( ByteBuffer in)
+		{
+			CharsetDecoder decoder = MappedInput.NewDecoder( charset);
+			int[] counts = new int[ALPHABET_SIZE];
+			if ( decoder == null )
+				CountBytes( in, counts);
+			else
+			{
+				CharBuffer out = CharBuffer.allocate( READ_SIZE);
+				while ( decoder.decode( in, out, true).isOverflow() )
+					CountInto( out, counts);
+				while ( decoder.flush( out).isOverflow() )
+					CountInto( out, counts);
+				CountInto( out, counts);
+			}
+			long[] res = new long[ALPHABET_SIZE];
+			AddInto( counts, res);
+			return res;
+		}
+	}
+
+	private static void CountBytes( ByteBuffer bytes, int[] counts)
+	{
+		for ( int i=bytes.position(); i<bytes.limit(); ++i)
+			++counts[bytes.get( i) & 0xFF];
+		bytes.position( bytes.limit());
+	}
+
+	private static void CountInto( CharBuffer chars, int[] counts)
+	{
+		chars.flip();
+		char[] array = chars.array();
+		for ( int i=chars.position(); i<chars.limit(); ++i)
+			++counts[array[i]];
+		chars.clear();
+	}
+
+	private static void AddInto( int[] counts, long[] histogram)
+	{
+		for ( int c=0; c<ALPHABET_SIZE; ++c)
+			histogram[c] += counts[c];
+		Arrays.fill( counts, 0);
+	}
+
+	/** the number of all the counted characters */
+	public static long Total( long[] histogram)
+	{
+		long total = 0;
+		for ( long count : histogram)
+			total += count;
+		return total;
+	}
+}
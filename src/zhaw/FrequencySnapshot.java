@@ -0,0 +1,237 @@
+package zhaw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.zip.CRC32;
+
+/**
+ * The character counts of a file together with the byte offset up to which the file was counted,
+ * so a file which only grows at its end (e.g. a log) is counted again from the offset only.
+ * The snapshot is kept next to the file in the file with the FILE_EXTENTION.
+ *
+ * The snapshots of different files (shards) can be merged into one, a merged snapshot keeps only the
+ * summed up counts and can not be updated from a file any more.
+ *
+ * The snapshot file:
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		byte   flags, FLAG_MERGED for the merged snapshots
+ * 		UTF    the charset name of the counted file
+ * 		long   the byte offset, the summed up offsets for the merged snapshots
+ * 		int    the CRC32 of the first HEAD_BYTES bytes of the file (or of all the counted ones, if less)
+ * 		varint the number of the counted symbols, then for every one in ascending order:
+ * 		       varint difference to the previous symbol + 1, long count
+ */
+public class FrequencySnapshot {
+
+	public static final int MAGIC = 0x48465251;   /// "HFRQ"
+	public static final byte VERSION = 1;
+	public static final int FLAG_MERGED = 1;
+	public static final String FILE_EXTENTION = ".hfreq";
+	/** the bytes at the start of the file checked before the counting continues, to find a rewritten file */
+	private static final int HEAD_BYTES = 4096;
+
+	private final long[] counts = new long[FrequencyCounter.ALPHABET_SIZE];
+	private final String charsetName;
+	private long total = 0;
+	private long offset = 0;
+	private int headChecksum = 0;
+	private boolean merged = false;
+	private long countedBytes = 0;   /// the bytes counted by the last Update
+
+	public FrequencySnapshot( Charset charset)
+	{
+		this.charsetName = charset.name();
+	}
+
+	/**
+	 * Count the file from the offset of its snapshot and save the updated snapshot. The file is counted
+	 * from its start if it has no snapshot yet, got shorter or its start changed.
+	 *
+	 * @param console - receives the messages
+	 */
+	public static FrequencySnapshot Update( String filePath, Charset charset, boolean mappedInput, PrintStream console) throws UserErrorException
+	{
+		String snapshotPath = filePath + FILE_EXTENTION;
+		FrequencySnapshot res = new File( snapshotPath).exists() ? Load( snapshotPath) : new FrequencySnapshot( charset);
+		if ( res.merged )
+			throw new UserErrorException( "snapshot " + snapshotPath + " is merged from several files and can not be updated.");
+		if ( ! res.charsetName.equals( charset.name()) )
+			throw new UserErrorException( "snapshot " + snapshotPath + " counts the charset " + res.charsetName + ", not " + charset.name() + ".");
+		try ( 	FileInputStream in = new FileInputStream( filePath);
+				FileChannel channel = in.getChannel()
+				)
+		{
+			long end = MappedInput.CompleteEnd( channel, channel.size(), charset);
+			if ( end < res.offset || res.headChecksum != HeadChecksum( channel, res.offset) )
+			{
+				console.println( "The file " + filePath + " changed before the offset of its snapshot, counting it from the start...");
+				res = new FrequencySnapshot( charset);
+			}
+			if ( end > res.offset )
+			{
+				long[] histogram = new FrequencyCounter( charset, mappedInput).Count( channel, res.offset, end);
+				res.Add( histogram);
+				console.println( "Counted " + (end - res.offset) + " appended bytes of " + filePath + " from the offset " + res.offset);
+				res.countedBytes = end - res.offset;
+				res.offset = end;
+				res.headChecksum = HeadChecksum( channel, end);
+			}
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + filePath + " does not exists.");
+		} catch (IOException e) {
+			throw new UserErrorException( "input file " + filePath + " reading failed.");
+		}
+		res.Save( snapshotPath);
+		return res;
+	}
+
+	private static int HeadChecksum( FileChannel channel, long offset) throws IOException
+	{
+		ByteBuffer head = ByteBuffer.allocate( (int)Math.min( HEAD_BYTES, offset));
+		while ( head.hasRemaining() && channel.read( head, head.position()) > 0 )
+			;
+		CRC32 crc = new CRC32();
+		crc.update( head.array(), 0, head.position());
+		return (int)crc.getValue();
+	}
+
+	private void Add( long[] histogram)
+	{
+		for ( int c=0; c<counts.length; ++c)
+			counts[c] += histogram[c];
+		total += FrequencyCounter.Total( histogram);
+	}
+
+	/** add the counts of the other snapshot, e.g. of another shard; the snapshot can not be updated from a file afterwards */
+	public void Merge( FrequencySnapshot other) throws UserErrorException
+	{
+		if ( ! charsetName.equals( other.charsetName) )
+			throw new UserErrorException( "snapshots of the charsets " + charsetName + " and " + other.charsetName + " can not be merged.");
+		Add( other.counts);
+		offset += other.offset;
+		headChecksum = 0;
+		merged = true;
+	}
+
+	/** the counts indexed by the char value, the array must not be changed */
+	public long[] histogram()
+	{
+		return counts;
+	}
+
+	/** the number of the counted characters */
+	public long total()
+	{
+		return total;
+	}
+
+	/** the counted bytes of the file, where the next Update continues */
+	public long offset()
+	{
+		return offset;
+	}
+
+	/** the bytes counted by the Update which returned this snapshot */
+	public long countedBytes()
+	{
+		return countedBytes;
+	}
+
+	public boolean isMerged()
+	{
+		return merged;
+	}
+
+	public void Write( DataOutputStream out) throws IOException
+	{
+		out.writeInt( MAGIC);
+		out.writeByte( VERSION);
+		out.writeByte( merged ? FLAG_MERGED : 0);
+		out.writeUTF( charsetName);
+		out.writeLong( offset);
+		out.writeInt( headChecksum);
+		int n = 0;
+		for ( long count : counts)
+			if ( count != 0 )
+				++n;
+		HoffmanCodeBook.WriteVarInt( out, n);
+		int previous = -1;
+		for ( int c=0; c<counts.length; ++c)
+			if ( counts[c] != 0 )
+			{
+				HoffmanCodeBook.WriteVarInt( out, c - previous - 1);
+				out.writeLong( counts[c]);
+				previous = c;
+			}
+	}
+
+	public static FrequencySnapshot Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		if ( in.readInt() != MAGIC )
+			throw new UserErrorException( "The file is not a frequency snapshot.");
+		int version = in.readByte();
+		if ( version != VERSION )
+			throw new UserErrorException( "Unsupported frequency snapshot version " + version + ".");
+		int flags = in.readByte();
+		FrequencySnapshot res;
+		try {
+			res = new FrequencySnapshot( Charset.forName( in.readUTF()));
+		} catch ( IllegalArgumentException ex)
+		{
+			throw new UserErrorException( "The charset of the frequency snapshot is not supported.");
+		}
+		res.merged = (flags & FLAG_MERGED) != 0;
+		res.offset = in.readLong();
+		res.headChecksum = in.readInt();
+		int n = HoffmanCodeBook.ReadVarInt( in);
+		int c = -1;
+		for ( int i=0; i<n; ++i)
+		{
+			c += HoffmanCodeBook.ReadVarInt( in) + 1;
+			if ( c >= res.counts.length )
+				throw new UserErrorException( "Invalid symbol " + c + " in the frequency snapshot.");
+			res.counts[c] = in.readLong();
+			res.total += res.counts[c];
+		}
+		return res;
+	}
+
+	public void Save( String snapshotFilePath) throws UserErrorException
+	{
+		try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( snapshotFilePath))) )
+		{
+			Write( out);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "output file " + snapshotFilePath + " can not be created.");
+		} catch (IOException e) {
+			throw new UserErrorException( "output file " + snapshotFilePath + " writting failed.");
+		}
+	}
+
+	public static FrequencySnapshot Load( String snapshotFilePath) throws UserErrorException
+	{
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( snapshotFilePath))) )
+		{
+			return Read( in);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + snapshotFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + snapshotFilePath + " reading failed.");
+		}
+	}
+}
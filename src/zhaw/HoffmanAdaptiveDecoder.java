@@ -0,0 +1,72 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the files written by HoffmanAdaptiveEncoder, the model is updated after every frame
+ * exactly like the encoder did it.
+ */
+public class HoffmanAdaptiveDecoder implements EncodedFileDecoder {
+
+	private final DataInputStream data;
+	private final Charset charset;
+
+	/** read the header of the input */
+	public HoffmanAdaptiveDecoder( InputStream in) throws IOException
+	{
+		data = new DataInputStream( in);
+		charset = FormatHeader.Read( data, HoffmanAdaptiveEncoder.MAGIC, HoffmanAdaptiveEncoder.VERSION, "an adaptive Hoffman file");
+	}
+
+	public String format()
+	{
+		return "adaptive";
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** the frames store their numbers of the symbols, the file does not store the whole one */
+	public long symbolCount()
+	{
+		return -1;
+	}
+
+	/**
+	 * Decode all the frames into the output.
+	 *
+	 * @return the number of the written symbols
+	 */
+	public long Decode( Writer out) throws IOException, UserErrorException
+	{
+		HoffmanAdaptiveModel model = new HoffmanAdaptiveModel();
+		char[] frame = new char[HoffmanAdaptiveModel.MAX_FRAME_SYMBOLS];
+		byte[] encoded = new byte[0];
+		long symbols = 0;
+		while (true)
+		{
+			int count = HoffmanCodeBook.ReadVarInt( data);
+			if ( count == 0 )
+				break;
+			int bytes = HoffmanCodeBook.ReadVarInt( data);
+			if ( count < 0 || count > model.frameSymbols() || bytes < 0 || bytes > 9L * count + 8 )
+				throw new IOException( "Invalid adaptive Hoffman frame of " + count + " symbols in " + bytes + " bytes.");
+			if ( encoded.length < bytes )
+				encoded = new byte[bytes];
+			data.readFully( encoded, 0, bytes);
+			new HoffmanDecoder( model.codeBook()).DecodeBlock( ByteBuffer.wrap( encoded, 0, bytes), frame, count, HoffmanAdaptiveModel.ESCAPE);
+			out.write( frame, 0, count);
+			symbols += count;
+			model.Update( frame, count);
+		}
+		return symbols;
+	}
+}
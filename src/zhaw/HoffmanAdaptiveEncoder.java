@@ -0,0 +1,73 @@
+package zhaw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes a text in one pass with the codes of a HoffmanAdaptiveModel, so the input does not have
+ * to be counted before and no .htable file is needed. The format of the .hencoded file:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		short  length of the charset name, followed by the name in ASCII
+ * 		for every frame: varint number of the symbols, varint number of the bytes, the bytes of the bit stream
+ * 		varint 0 as the end of the file
+ *
+ * Every frame is encoded with the model updated by all the frames before it.
+ */
+public class HoffmanAdaptiveEncoder implements EncodedFileEncoder {
+
+	public static final int MAGIC = 0x48414450;   /// "HADP"
+	public static final byte VERSION = 1;
+
+	public String format()
+	{
+		return "adaptive";
+	}
+
+	/**
+	 * Encode all the characters of the input.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, OutputStream out) throws IOException, UserErrorException
+	{
+		DataOutputStream data = new DataOutputStream( out);
+		FormatHeader.Write( data, MAGIC, VERSION, charset);
+
+		HoffmanAdaptiveModel model = new HoffmanAdaptiveModel();
+		char[] frame = new char[HoffmanAdaptiveModel.MAX_FRAME_SYMBOLS];
+		ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+		long symbols = 0;
+		while (true)
+		{
+			int count = ReadFully( in, frame, model.frameSymbols());
+			if ( count == 0 )
+				break;
+			encoded.reset();
+			new HoffmanEncoder( model.codeBook()).EncodeBlock( frame, 0, count, encoded, HoffmanAdaptiveModel.ESCAPE);
+			HoffmanCodeBook.WriteVarInt( data, count);
+			HoffmanCodeBook.WriteVarInt( data, encoded.size());
+			encoded.writeTo( data);
+			symbols += count;
+			model.Update( frame, count);
+		}
+		HoffmanCodeBook.WriteVarInt( data, 0);
+		data.flush();
+		return symbols;
+	}
+
+	private static int ReadFully( Reader in, char[] buffer, int length) throws IOException
+	{
+		int count = 0;
+		int n;
+		while ( count < length && (n = in.read( buffer, count, length - count)) != -1 )
+			count += n;
+		return count;
+	}
+}
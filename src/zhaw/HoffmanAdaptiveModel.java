@@ -0,0 +1,66 @@
+package zhaw;
+
+/**
+ * The symbol counts shared by the adaptive encoder and decoder. Both start with an empty model and
+ * update it with every frame in the same way, so the decoder rebuilds the same codes as the encoder
+ * without any table in the file.
+ *
+ * The model has a code for every symbol seen in the previous frames and for the ESCAPE symbol, which
+ * announces a symbol not seen yet. The frames get longer while the model settles, so the first
+ * symbols are not encoded with the codes of a nearly empty model for long.
+ */
+public class HoffmanAdaptiveModel {
+	/** marks a symbol written with its 16 bits */
+	public static final int ESCAPE = HoffmanCodeBook.ESCAPE;
+
+	static final int FIRST_FRAME_SYMBOLS = 1 << 12;
+	static final int MAX_FRAME_SYMBOLS = 1 << 20;
+
+	private final long[] counts = new long[FrequencyCounter.ALPHABET_SIZE];
+	private int distinct = 0;
+	private int frameSymbols = FIRST_FRAME_SYMBOLS;
+	private HoffmanCodeBook codeBook;
+
+	public HoffmanAdaptiveModel() throws UserErrorException
+	{
+		Rebuild();
+	}
+
+	/** the codes of the current frame */
+	public HoffmanCodeBook codeBook()
+	{
+		return codeBook;
+	}
+
+	/** the number of the symbols of the next frame */
+	public int frameSymbols()
+	{
+		return frameSymbols;
+	}
+
+	/** count the symbols of the finished frame and build the codes of the next one */
+	public void Update( char[] symbols, int count) throws UserErrorException
+	{
+		for ( int i=0; i<count; ++i)
+			if ( counts[symbols[i]]++ == 0 )
+				++distinct;
+		frameSymbols = Math.min( 2 * frameSymbols, MAX_FRAME_SYMBOLS);
+		Rebuild();
+	}
+
+	private void Rebuild() throws UserErrorException
+	{
+		int[] symbols = new int[distinct + 1];
+		long[] symbolCounts = new long[distinct + 1];
+		int n = 0;
+		for ( int c=0; c<counts.length; ++c)
+			if ( counts[c] != 0 )
+			{
+				symbols[n] = c;
+				symbolCounts[n++] = counts[c];
+			}
+		symbols[n] = ESCAPE;
+		symbolCounts[n] = 1;
+		codeBook = new HoffmanTreeBuilder( symbols, symbolCounts).CanonicalCodeBook();
+	}
+}
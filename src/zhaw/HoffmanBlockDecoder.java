@@ -0,0 +1,179 @@
+package zhaw;
+
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Decodes the block container written by HoffmanBlockEncoder. Any block can be decoded on its own
+ * and the blocks of the whole file are decoded in parallel.
+ */
+public class HoffmanBlockDecoder implements Closeable {
+
+	private final FileInputStream file;
+	private final FileChannel channel;
+	private final HoffmanDecoder decoder;
+	private final int escapeSymbol;
+	private final boolean interleaved;
+	private final Charset charset;
+	private final long symbolCount;
+	private final long[] offsets;
+	private final long[] bitLengths;
+	private final int[] symbolCounts;
+
+	public HoffmanBlockDecoder( String encodedFilePath, HoffmanCodeBook codeBook) throws IOException
+	{
+		file = new FileInputStream( encodedFilePath);
+		try {
+			channel = file.getChannel();
+			DataInputStream in = new DataInputStream( Channels.newInputStream( channel));
+			FormatHeader.ReadStart( in, HoffmanBlockEncoder.MAGIC, HoffmanBlockEncoder.VERSION, "a Hoffman block file");
+			int flags = in.readByte();
+			int blockCount = in.readInt();
+			symbolCount = in.readLong();
+			long indexOffset = in.readLong();
+			charset = FormatHeader.ReadCharset( in);
+			if ( (flags & HoffmanBlockEncoder.FLAG_DICTIONARY) != 0 )
+			{
+				if ( ! codeBook.isCanonical() || in.readInt() != codeBook.Checksum() )
+					throw new IOException( encodedFilePath + " was encoded with another dictionary.");
+				escapeSymbol = HoffmanCodeBook.ESCAPE;
+			}
+			else
+				escapeSymbol = -1;
+			interleaved = (flags & HoffmanBlockEncoder.FLAG_INTERLEAVED) != 0;
+
+			long fileSize = channel.size();
+			if ( blockCount < 0 || indexOffset < 0 || indexOffset > fileSize
+					|| blockCount > (fileSize - indexOffset) / HoffmanBlockEncoder.INDEX_ENTRY_SIZE )
+				throw new IOException( "Invalid index of " + blockCount + " blocks at " + indexOffset + " in " + encodedFilePath + ".");
+			ByteBuffer index = ByteBuffer.allocate( blockCount * HoffmanBlockEncoder.INDEX_ENTRY_SIZE);
+			ReadFully( index, indexOffset);
+			index.flip();
+			offsets = new long[blockCount];
+			bitLengths = new long[blockCount];
+			symbolCounts = new int[blockCount];
+			for ( int i=0; i<blockCount; ++i)
+			{
+				offsets[i] = index.getLong();
+				bitLengths[i] = index.getLong();
+				symbolCounts[i] = index.getInt();
+				if ( offsets[i] < 0 || bitLengths[i] < 0 || symbolCounts[i] < 0 || offsets[i] > indexOffset
+						|| (bitLengths[i] + 7) / 8 > indexOffset - offsets[i] )
+					throw new IOException( "Invalid index entry of the block " + i + " in " + encodedFilePath + ".");
+			}
+		} catch ( IOException | RuntimeException ex)
+		{
+			file.close();
+			throw ex;
+		}
+		decoder = new HoffmanDecoder( codeBook);
+	}
+
+	public int blockCount()
+	{
+		return offsets.length;
+	}
+
+	/** the number of the symbols in all the blocks */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** decode only the given block, it can be called from several threads at once */
+	public char[] DecodeBlock( int block) throws IOException
+	{
+		ByteBuffer bits = ByteBuffer.allocate( (int)((bitLengths[block] + 7) / 8));
+		ReadFully( bits, offsets[block]);
+		bits.flip();
+		char[] res = new char[symbolCounts[block]];
+		if ( interleaved )
+			decoder.DecodeInterleaved( bits.array(), StreamBounds( bits), res, res.length, escapeSymbol);
+		else
+			decoder.DecodeBlock( bits, res, res.length, escapeSymbol);
+		return res;
+	}
+
+	/** the bytes of every stream of an interleaved block from its jump table */
+	private static int[] StreamBounds( ByteBuffer block) throws IOException
+	{
+		int streams = HoffmanBlockEncoder.STREAMS;
+		int[] res = new int[streams + 1];
+		if ( block.remaining() < 4 * (streams - 1) )
+			throw new IOException( "The interleaved block has no jump table.");
+		res[0] = 4 * (streams - 1);
+		for ( int k=0; k<streams - 1; ++k)
+		{
+			int length = block.getInt( 4 * k);
+			if ( length < 0 || length > block.limit() - res[k] )
+				throw new IOException( "Invalid length " + length + " of the interleaved stream " + k + ".");
+			res[k + 1] = res[k] + length;
+		}
+		res[streams] = block.limit();
+		return res;
+	}
+
+	private void ReadFully( ByteBuffer buffer, long position) throws IOException
+	{
+		while ( buffer.hasRemaining() )
+			if ( channel.read( buffer, position + buffer.position()) < 0 )
+				throw new EOFException();
+	}
+
+	/**
+	 * Decode all the blocks with the executor and write them in their order.
+	 *
+	 * @param parallelism - the number of the threads of the executor
+	 * @return the number of the written symbols
+	 */
+	public long DecodeAll( Writer out, ExecutorService executor, int parallelism) throws IOException
+	{
+		ArrayDeque<Future<char[]>> pending = new ArrayDeque<>();
+		int maxPending = 2 * Math.max( 1, parallelism);
+		int next = 0;
+		long written = 0;
+		while ( next < blockCount() || ! pending.isEmpty() )
+		{
+			if ( next < blockCount() && pending.size() < maxPending )
+			{
+				final int block = next++;
+				pending.add( executor.submit( new Callable<char[]>() {
+					@Override
+					public char[] call() throws IOException
+					{
+						return DecodeBlock( block);
+					}
+				}));
+				continue;
+			}
+			char[] symbols = Tasks.Get( pending.poll());
+			out.write( symbols);
+			written += symbols.length;
+		}
+		return written;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		file.close();
+	}
+}
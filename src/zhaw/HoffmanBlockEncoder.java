@@ -0,0 +1,203 @@
+package zhaw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Encodes a text into the block container format of the .hencoded file, where the blocks are
+ * encoded in parallel with the same Hoffman tree and every block can be decoded on its own:
+ *
+ * 		int   MAGIC
+ * 		byte  VERSION
+ * 		byte  flags, FLAG_DICTIONARY if the blocks were encoded with a shared dictionary,
+ * 		      FLAG_INTERLEAVED if every block has STREAMS interleaved bit streams
+ * 		int   number of the blocks
+ * 		long  number of all the symbols
+ * 		long  offset of the block index in the file
+ * 		short length of the charset name, followed by the name in ASCII
+ * 		int   the checksum of the dictionary, only with FLAG_DICTIONARY
+ * 		the bit streams of the blocks, every block starts on a byte border
+ * 		the block index, for every block: long offset, long length in bits, int number of the symbols
+ *
+ * The number of the symbols of every block is known, so there is no end of content symbol.
+ * An interleaved block puts the symbol i into the bit stream i % STREAMS. It starts with a jump table
+ * of STREAMS - 1 ints, the byte lengths of all the streams but the last, followed by the streams,
+ * every one starting on a byte border. Its length in the block index is the length of all its bytes.
+ * The dictionary has the HoffmanCodeBook.ESCAPE symbol, which is followed by the 16 bits of the symbols
+ * not having a code in the dictionary.
+ */
+public class HoffmanBlockEncoder {
+
+	public static final int MAGIC = 0x48424C4B;   /// "HBLK"
+	public static final byte VERSION = 1;
+	public static final int DEFAULT_BLOCK_SYMBOLS = 1 << 20;
+	public static final int FLAG_DICTIONARY = 1;
+	public static final int FLAG_INTERLEAVED = 2;
+	/** the number of the bit streams of an interleaved block */
+	public static final int STREAMS = 4;
+
+	static final int HEADER_SIZE = 4 + 1 + 1 + 4 + 8 + 8;   /// without the charset
+	static final int INDEX_ENTRY_SIZE = 8 + 8 + 4;
+
+	private final HoffmanEncoder codes;
+	private final int escapeSymbol;
+	private final int dictionaryChecksum;
+	private final int blockSymbols;
+	private final ExecutorService executor;
+	private final int maxPendingBlocks;
+	private final boolean interleaved;
+
+	/**
+	 * @param blockSymbols - the number of the symbols in a block, the last one can be shorter
+	 * @param executor - encodes the blocks
+	 * @param parallelism - the number of the threads of the executor
+	 */
+	public HoffmanBlockEncoder( HoffmanCodeBook codeBook, int blockSymbols, ExecutorService executor, int parallelism)
+	{
+		this( codeBook, blockSymbols, executor, parallelism, false);
+	}
+
+	/**
+	 * @param dictionary - the code book is a shared dictionary having the HoffmanCodeBook.ESCAPE symbol
+	 */
+	public HoffmanBlockEncoder( HoffmanCodeBook codeBook, int blockSymbols, ExecutorService executor, int parallelism, boolean dictionary)
+	{
+		this( codeBook, blockSymbols, executor, parallelism, dictionary, false);
+	}
+
+	/**
+	 * @param dictionary - the code book is a shared dictionary having the HoffmanCodeBook.ESCAPE symbol
+	 * @param interleaved - split every block into STREAMS bit streams, which are decoded in one loop
+	 */
+	public HoffmanBlockEncoder( HoffmanCodeBook codeBook, int blockSymbols, ExecutorService executor, int parallelism, boolean dictionary, boolean interleaved)
+	{
+		if ( blockSymbols <= 0 )
+			throw new IllegalArgumentException( "A block needs at least one symbol.");
+		this.codes = new HoffmanEncoder( codeBook);
+		this.blockSymbols = blockSymbols;
+		this.executor = executor;
+		this.maxPendingBlocks = 2 * Math.max( 1, parallelism);
+		this.escapeSymbol = dictionary ? HoffmanCodeBook.ESCAPE : -1;
+		this.dictionaryChecksum = dictionary ? codeBook.Checksum() : 0;
+		this.interleaved = interleaved;
+	}
+
+	private static class EncodedBlock {
+		byte[] data;
+		long bits;
+		int symbols;
+	}
+
+	private class EncodeTask implements Callable<EncodedBlock> {
+		private final char[] symbols;
+		private final int count;
+
+		EncodeTask( char[] symbols, int count)
+		{
+			this.symbols = symbols;
+			this.count = count;
+		}
+
+		@Override
+		public EncodedBlock call() throws IOException
+		{
+			ByteArrayOutputStream out = new ByteArrayOutputStream( count / 2 + 16);
+			EncodedBlock res = new EncodedBlock();
+			HoffmanEncoder encoder = new HoffmanEncoder( codes);
+			if ( interleaved )
+			{
+				ByteArrayOutputStream[] streams = new ByteArrayOutputStream[STREAMS];
+				DataOutputStream jumpTable = new DataOutputStream( out);
+				for ( int k=0; k<STREAMS; ++k)
+				{
+					streams[k] = new ByteArrayOutputStream( count / (2 * STREAMS) + 16);
+					encoder.EncodeBlock( symbols, k, count, STREAMS, streams[k], escapeSymbol);
+					if ( k < STREAMS - 1 )
+						jumpTable.writeInt( streams[k].size());
+				}
+				for ( ByteArrayOutputStream stream : streams)
+					stream.writeTo( out);
+				res.data = out.toByteArray();
+				res.bits = res.data.length * 8L;
+			}
+			else
+			{
+				res.bits = encoder.EncodeBlock( symbols, 0, count, out, escapeSymbol);
+				res.data = out.toByteArray();
+			}
+			res.symbols = count;
+			return res;
+		}
+	}
+
+	/**
+	 * Encode all the characters of the input into the container file. At most a few blocks are kept in memory
+	 * while the executor encodes them, the blocks are written in their order.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, String encodedFilePath) throws IOException
+	{
+		ByteArrayOutputStream indexBytes = new ByteArrayOutputStream();
+		DataOutputStream index = new DataOutputStream( indexBytes);
+		long symbolCount = 0;
+		int blockCount = 0;
+		try ( RandomAccessFile out = new RandomAccessFile( encodedFilePath, "rw") )
+		{
+			out.setLength( 0);
+			out.write( new byte[HEADER_SIZE + FormatHeader.CharsetSize( charset) + (escapeSymbol < 0 ? 0 : 4)]);   // written at the end, when it is known
+			ArrayDeque<Future<EncodedBlock>> pending = new ArrayDeque<>();
+			boolean end = false;
+			while ( ! end || ! pending.isEmpty() )
+			{
+				if ( ! end && pending.size() < maxPendingBlocks )
+				{
+					char[] symbols = new char[blockSymbols];
+					int count = ReadFully( in, symbols);
+					end = count < blockSymbols;
+					if ( count > 0 )
+						pending.add( executor.submit( new EncodeTask( symbols, count)));
+					continue;
+				}
+				EncodedBlock block = Tasks.Get( pending.poll());
+				index.writeLong( out.getFilePointer());
+				index.writeLong( block.bits);
+				index.writeInt( block.symbols);
+				out.write( block.data);
+				symbolCount += block.symbols;
+				++blockCount;
+			}
+			long indexOffset = out.getFilePointer();
+			out.write( indexBytes.toByteArray());
+
+			out.seek( 0);
+			FormatHeader.WriteStart( out, MAGIC, VERSION);
+			out.writeByte( (escapeSymbol < 0 ? 0 : FLAG_DICTIONARY) | (interleaved ? FLAG_INTERLEAVED : 0));
+			out.writeInt( blockCount);
+			out.writeLong( symbolCount);
+			out.writeLong( indexOffset);
+			FormatHeader.WriteCharset( out, charset);
+			if ( escapeSymbol >= 0 )
+				out.writeInt( dictionaryChecksum);
+		}
+		return symbolCount;
+	}
+
+	private static int ReadFully( Reader in, char[] buffer) throws IOException
+	{
+		int count = 0;
+		int n;
+		while ( count < buffer.length && (n = in.read( buffer, count, buffer.length - count)) != -1 )
+			count += n;
+		return count;
+	}
+}
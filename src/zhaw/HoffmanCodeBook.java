@@ -0,0 +1,343 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * The list of the <symbol> -> <Hoffman code> pairs of a tree kept in primitive arrays.
+ * A code is stored as its bits (the first arc is the most significant bit) and its length.
+ *
+ * The encoder and the decoder are built from it, so they do not need to traverse the tree
+ * or concatenate Strings for every symbol.
+ */
+public class HoffmanCodeBook {
+
+	/** The longest code which fits (together with a partial byte) into a 64 bit accumulator.
+	 *  A Hoffman tree gets that deep only for inputs with more than 10^11 symbols. */
+	public static final int MAX_CODE_LENGTH = 56;
+
+	/** the binary canonical table format:
+	 * 		int    CANONICAL_MAGIC
+	 * 		byte   CANONICAL_VERSION
+	 * 		varint number of the symbols
+	 * 		for every symbol in ascending order: varint difference to the previous symbol + 1, byte code length
+	 * */
+	public static final int CANONICAL_MAGIC = 0x4843414E;   /// "HCAN"
+	public static final byte CANONICAL_VERSION = 1;
+
+	/** the symbol after all the char values, its code announces a symbol written with its 16 bits */
+	public static final int ESCAPE = FrequencyCounter.ALPHABET_SIZE;
+
+	private final int[] symbols;
+	private final long[] codes;
+	private final int[] lengths;
+	private int maxSymbol = -1;
+	private int maxLength = 0;
+	private boolean canonical = false;
+
+	private HoffmanCodeBook( int[] symbols, long[] codes, int[] lengths) throws UserErrorException
+	{
+		this.symbols = symbols;
+		this.codes = codes;
+		this.lengths = lengths;
+		for ( int i=0; i<symbols.length; ++i)
+		{
+			if ( lengths[i] > MAX_CODE_LENGTH )
+				throw new UserErrorException( "Hoffman code of the symbol " + symbols[i] + " is " + lengths[i] + " bits long, more than the supported " + MAX_CODE_LENGTH + " bits.");
+			maxSymbol = Math.max( maxSymbol, symbols[i]);
+			maxLength = Math.max( maxLength, lengths[i]);
+		}
+	}
+
+	/**
+	 * Collect the codes of all the leaves of the tree. The tree is traversed with an explicit stack
+	 * so that deep trees can not overflow the call stack.
+	 *
+	 * @param root - the root of the Hoffman tree
+	 */
+	public static HoffmanCodeBook FromTree( HoffmanTree.Node root) throws UserErrorException
+	{
+		int count = 0;
+		int[] symbols = new int[16];
+		long[] codes = new long[16];
+		int[] lengths = new int[16];
+
+		HoffmanTree.Node[] stack = new HoffmanTree.Node[16];
+		long[] stackCodes = new long[16];
+		int[] stackLengths = new int[16];
+		int top = 0;
+		stack[top++] = root;
+		while ( top > 0 )
+		{
+			--top;
+			HoffmanTree.Node node = stack[top];
+			long code = stackCodes[top];
+			int length = stackLengths[top];
+			if ( node.childRight == null && node.childLeft == null )
+			{
+				if ( count == symbols.length )
+				{
+					symbols = Arrays.copyOf( symbols, count * 2);
+					codes = Arrays.copyOf( codes, count * 2);
+					lengths = Arrays.copyOf( lengths, count * 2);
+				}
+				symbols[count] = node.value.charAt( 0);
+				codes[count] = code;
+				lengths[count] = length;
+				++count;
+				continue;
+			}
+			if ( length >= MAX_CODE_LENGTH )
+				throw new UserErrorException( "Hoffman tree is deeper than the supported " + MAX_CODE_LENGTH + " levels.");
+			if ( top + 2 > stack.length )
+			{
+				stack = Arrays.copyOf( stack, stack.length * 2);
+				stackCodes = Arrays.copyOf( stackCodes, stack.length);
+				stackLengths = Arrays.copyOf( stackLengths, stack.length);
+			}
+			// push the left child first so that the right one is visited first like in Node.Serialize
+			if ( node.childLeft != null )
+			{
+				stack[top] = node.childLeft;
+				stackCodes[top] = (code << 1) | node.childLeft.code.getValue();
+				stackLengths[top++] = length + 1;
+			}
+			if ( node.childRight != null )
+			{
+				stack[top] = node.childRight;
+				stackCodes[top] = (code << 1) | node.childRight.code.getValue();
+				stackLengths[top++] = length + 1;
+			}
+		}
+		return new HoffmanCodeBook( Arrays.copyOf( symbols, count), Arrays.copyOf( codes, count), Arrays.copyOf( lengths, count));
+	}
+
+	/**
+	 * Collect the codes of all the leaves of the flat tree in the same order as FromTree does for the
+	 * nodes. Every parent is stored after its children, so one loop from the root gives all the codes.
+	 */
+	public static HoffmanCodeBook FromTree( HoffmanFlatTree tree) throws UserErrorException
+	{
+		int root = tree.root();
+		long[] nodeCodes = new long[tree.size()];
+		int[] nodeLengths = new int[tree.size()];
+		for ( int i=root; i>=0; --i)
+		{
+			if ( tree.isLeaf( i) )
+				continue;
+			if ( nodeLengths[i] >= MAX_CODE_LENGTH )
+				throw new UserErrorException( "Hoffman tree is deeper than the supported " + MAX_CODE_LENGTH + " levels.");
+			nodeCodes[tree.left( i)] = (nodeCodes[i] << 1) | HoffmanTree.ArcType.LEFT.getValue();
+			nodeLengths[tree.left( i)] = nodeLengths[i] + 1;
+			nodeCodes[tree.right( i)] = (nodeCodes[i] << 1) | HoffmanTree.ArcType.RIGHT.getValue();
+			nodeLengths[tree.right( i)] = nodeLengths[i] + 1;
+		}
+		// FromTree visits the right child first, which is the reversed order of the leaves from the left
+		int[] leaves = tree.LeavesInOrder();
+		int count = leaves.length;
+		int[] symbols = new int[count];
+		long[] codes = new long[count];
+		int[] lengths = new int[count];
+		for ( int i=0; i<count; ++i)
+		{
+			int leaf = leaves[count - 1 - i];
+			symbols[i] = tree.symbol( leaf);
+			codes[i] = nodeCodes[leaf];
+			lengths[i] = nodeLengths[leaf];
+		}
+		return new HoffmanCodeBook( symbols, codes, lengths);
+	}
+
+	/**
+	 * Create the canonical codes for the given code lengths: the symbols sorted by the code length and
+	 * then by their value get the consecutive codes, so the lengths are enough to rebuild the codes.
+	 *
+	 * @param lengths - the code length of every symbol, they have to fulfill the Kraft equality of a full tree
+	 */
+	public static HoffmanCodeBook Canonical( int[] symbols, int[] lengths) throws UserErrorException
+	{
+		int n = symbols.length;
+		long[] keys = new long[n];
+		for ( int i=0; i<n; ++i)
+		{
+			if ( lengths[i] < 0 || lengths[i] > MAX_CODE_LENGTH )
+				throw new UserErrorException( "Invalid Hoffman code length " + lengths[i] + " of the symbol " + symbols[i] + ".");
+			keys[i] = ((long)lengths[i] << 32) | (symbols[i] & 0xFFFFFFFFL);
+		}
+		Arrays.sort( keys);
+		int[] sortedSymbols = new int[n];
+		long[] codes = new long[n];
+		int[] sortedLengths = new int[n];
+		long code = 0;
+		int length = 0;
+		for ( int i=0; i<n; ++i)
+		{
+			int currLength = (int)(keys[i] >>> 32);
+			if ( i > 0 )
+				++code;
+			code <<= currLength - length;
+			length = currLength;
+			if ( length < 64 && code >>> length != 0 )
+				throw new UserErrorException( "The Hoffman code lengths do not describe a prefix code.");
+			sortedSymbols[i] = (int)keys[i];
+			codes[i] = code;
+			sortedLengths[i] = length;
+		}
+		HoffmanCodeBook res = new HoffmanCodeBook( sortedSymbols, codes, sortedLengths);
+		res.canonical = true;
+		return res;
+	}
+
+	/** the canonical code book having the same code lengths as this one */
+	public HoffmanCodeBook ToCanonical() throws UserErrorException
+	{
+		return canonical ? this : Canonical( symbols, lengths);
+	}
+
+	public boolean isCanonical()
+	{
+		return canonical;
+	}
+
+	/** write the canonical code lengths in the binary table format */
+	public void Write( DataOutputStream out) throws IOException
+	{
+		out.writeInt( CANONICAL_MAGIC);
+		out.writeByte( CANONICAL_VERSION);
+		WriteLengths( out);
+	}
+
+	/** write the canonical code lengths without the magic number and the version, e.g. as a part of another table */
+	void WriteLengths( DataOutputStream out) throws IOException
+	{
+		if ( ! canonical )
+			throw new IllegalStateException( "Only the canonical codes can be written as code lengths.");
+		int n = symbols.length;
+		long[] keys = new long[n];
+		for ( int i=0; i<n; ++i)
+			keys[i] = ((long)symbols[i] << 8) | lengths[i];
+		Arrays.sort( keys);
+		WriteVarInt( out, n);
+		int previous = -1;
+		for ( int i=0; i<n; ++i)
+		{
+			int symbol = (int)(keys[i] >>> 8);
+			WriteVarInt( out, symbol - previous - 1);
+			out.writeByte( (int)(keys[i] & 0xFF));
+			previous = symbol;
+		}
+	}
+
+	/** read the code lengths written by Write, the magic number is already read */
+	public static HoffmanCodeBook Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		int version = in.readByte();
+		if ( version != CANONICAL_VERSION )
+			throw new UserErrorException( "Unsupported Hoffman table version " + version + ".");
+		return ReadLengths( in);
+	}
+
+	/** read the code lengths written by WriteLengths */
+	static HoffmanCodeBook ReadLengths( DataInputStream in) throws IOException, UserErrorException
+	{
+		int n = ReadVarInt( in);
+		int[] symbols = new int[n];
+		int[] lengths = new int[n];
+		int previous = -1;
+		for ( int i=0; i<n; ++i)
+		{
+			symbols[i] = previous + 1 + ReadVarInt( in);
+			lengths[i] = in.readUnsignedByte();
+			previous = symbols[i];
+		}
+		return Canonical( symbols, lengths);
+	}
+
+	/** the CRC32 of the binary table, it identifies the table the data were encoded with */
+	public int Checksum()
+	{
+		CheckedOutputStream crc = new CheckedOutputStream( new OutputStream() {
+			@Override
+			public void write( int b)
+			{
+			}
+		}, new CRC32());
+		try {
+			Write( new DataOutputStream( crc));
+		} catch ( IOException ex)
+		{
+			throw new RuntimeException( "Writing into the checksum failed.", ex);
+		}
+		return (int)crc.getChecksum().getValue();
+	}
+
+	static void WriteVarInt( DataOutputStream out, int value) throws IOException
+	{
+		while ( (value & ~0x7F) != 0 )
+		{
+			out.writeByte( (value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte( value);
+	}
+
+	static int ReadVarInt( DataInputStream in) throws IOException
+	{
+		int value = 0;
+		for ( int shift=0; shift<32; shift+=7)
+		{
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ( (b & 0x80) == 0 )
+				return value;
+		}
+		throw new IOException( "Invalid variable length number.");
+	}
+
+	/** number of the symbols having a code */
+	public int size()
+	{
+		return symbols.length;
+	}
+
+	public int symbol( int i)
+	{
+		return symbols[i];
+	}
+
+	public long code( int i)
+	{
+		return codes[i];
+	}
+
+	public int length( int i)
+	{
+		return lengths[i];
+	}
+
+	/** the biggest symbol value having a code, or -1 for an empty code book */
+	public int maxSymbol()
+	{
+		return maxSymbol;
+	}
+
+	/** the length in bits of the longest code */
+	public int maxLength()
+	{
+		return maxLength;
+	}
+
+	/** the code of the symbol as a String of '0' and '1' characters, for the debug output */
+	public static String toBitString( long code, int length)
+	{
+		StringBuilder sb = new StringBuilder( length);
+		for ( int i=length-1; i>=0; --i)
+			sb.append( (code >>> i) & 1);
+		return sb.toString();
+	}
+}
@@ -0,0 +1,64 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the files written by HoffmanContextEncoder with the same order-1 tables.
+ */
+public class HoffmanContextDecoder implements EncodedFileDecoder {
+
+	private final DataInputStream data;
+	private final Charset charset;
+	private final long symbolCount;
+	private final HoffmanContextModel model;
+
+	/**
+	 * Read the header of the input.
+	 *
+	 * @param model - the tables the text was encoded with
+	 */
+	public HoffmanContextDecoder( InputStream in, HoffmanContextModel model) throws IOException
+	{
+		this.model = model;
+		data = new DataInputStream( in);
+		charset = FormatHeader.Read( data, HoffmanContextEncoder.MAGIC, HoffmanContextEncoder.VERSION, "an order-1 Hoffman file");
+		symbolCount = data.readLong();
+	}
+
+	public String format()
+	{
+		return "order-1";
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** the number of the encoded symbols */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/**
+	 * Decode all the symbols into the output.
+	 *
+	 * @return the number of the written symbols
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public long Decode( Writer out) throws IOException
+	{
+		HoffmanDecoder[] contexts = new HoffmanDecoder[FrequencyCounter.ALPHABET_SIZE];
+		for ( int context : model.Contexts())
+			contexts[context] = new HoffmanDecoder( model.codeBook( context));
+		HoffmanDecoder.DecodeWithContexts( contexts, HoffmanContextModel.START_CONTEXT, data, out, symbolCount);
+		return symbolCount;
+	}
+}
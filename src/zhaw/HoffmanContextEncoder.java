@@ -0,0 +1,87 @@
+package zhaw;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes a text with the order-1 tables of a HoffmanContextModel: every symbol is written with
+ * the codes of the symbol before it. The format of the .hencoded file:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		short  length of the charset name, followed by the name in ASCII
+ * 		long   number of the symbols
+ * 		the bit stream, the last byte is filled with zero bits only if it is not full
+ *
+ * The tables are stored in the .htable file next to it.
+ */
+public class HoffmanContextEncoder implements EncodedFileEncoder {
+
+	public static final int MAGIC = 0x48433031;   /// "HC01"
+	public static final byte VERSION = 1;
+
+	private static final int READ_SIZE = 1 << 16;
+
+	private final HoffmanContextModel model;
+
+	/** @param model - the model counted from the text, with the built tables */
+	public HoffmanContextEncoder( HoffmanContextModel model)
+	{
+		this.model = model;
+	}
+
+	public String format()
+	{
+		return "order-1";
+	}
+
+	/**
+	 * Encode the text the model was counted from.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, OutputStream out) throws IOException
+	{
+		HoffmanEncoder[] contexts = new HoffmanEncoder[FrequencyCounter.ALPHABET_SIZE];
+		HoffmanEncoder bits = null;
+		for ( int context : model.Contexts())
+		{
+			contexts[context] = new HoffmanEncoder( model.codeBook( context));
+			if ( bits == null )
+				bits = new HoffmanEncoder( contexts[context]);
+		}
+
+		DataOutputStream data = new DataOutputStream( out);
+		FormatHeader.Write( data, MAGIC, VERSION, charset);
+		data.writeLong( model.symbolCount());
+
+		char[] buffer = new char[READ_SIZE];
+		int context = HoffmanContextModel.START_CONTEXT;
+		long symbols = 0;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			if ( symbols + n > model.symbolCount() )
+				throw new IOException( "The text has changed since it was counted.");
+			for ( int i=0; i<n; ++i)
+			{
+				HoffmanEncoder codes = contexts[context];
+				if ( codes == null )
+					throw new RuntimeException( "Hoffman code was not found in the cache. The cache is invalid.");
+				bits.Write( codes, buffer[i], data);
+				context = buffer[i];
+			}
+			symbols += n;
+		}
+		if ( symbols != model.symbolCount() )
+			throw new IOException( "The text has changed since it was counted.");
+		if ( bits != null )
+			bits.FinishBlock( data);
+		data.flush();
+		return symbols;
+	}
+}
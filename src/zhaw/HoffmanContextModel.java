@@ -0,0 +1,231 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Order-1 model of a text: the symbols are counted separately for every preceding symbol (the context)
+ * and every context gets its own canonical Hoffman codes. The first symbol of the text has the START_CONTEXT.
+ *
+ * The counts of a context are kept in a primitive array covering only the symbols up to the biggest one
+ * seen in the context, so the contexts of a small alphabet stay small.
+ *
+ * The binary table format:
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		varint number of the contexts
+ * 		for every context in ascending order: varint difference to the previous context + 1,
+ * 		       the canonical code lengths of the context, see HoffmanCodeBook.WriteLengths
+ */
+public class HoffmanContextModel implements CountedModel {
+
+	public static final int MAGIC = 0x48435458;   /// "HCTX"
+	public static final byte VERSION = 1;
+	public static final int START_CONTEXT = 0;
+
+	private static final int READ_SIZE = 1 << 16;
+	/** the contexts built by one task */
+	private static final int CONTEXTS_PER_TASK = 16;
+
+	private final long[][] counts = new long[FrequencyCounter.ALPHABET_SIZE][];   /// null for the unused contexts
+	private long symbolCount = 0;
+	private final HoffmanCodeBook[] codeBooks = new HoffmanCodeBook[FrequencyCounter.ALPHABET_SIZE];
+
+	/** count the symbols of the text in their contexts */
+	public void Count( Reader in) throws IOException
+	{
+		char[] buffer = new char[READ_SIZE];
+		int context = START_CONTEXT;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			for ( int i=0; i<n; ++i)
+			{
+				int symbol = buffer[i];
+				long[] row = counts[context];
+				if ( row == null || symbol >= row.length )
+					row = counts[context] = Grow( row, symbol);
+				++row[symbol];
+				context = symbol;
+			}
+			symbolCount += n;
+		}
+	}
+
+	private static long[] Grow( long[] row, int symbol)
+	{
+		int length = Math.max( 256, Integer.highestOneBit( symbol) << 1);
+		return row == null ? new long[length] : Arrays.copyOf( row, length);
+	}
+
+	/** the number of the counted symbols */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/** the codes of the context, null if the context never occurred */
+	public HoffmanCodeBook codeBook( int context)
+	{
+		return codeBooks[context];
+	}
+
+	/** the contexts having codes in ascending order */
+	public int[] Contexts()
+	{
+		int n = 0;
+		int[] res = new int[codeBooks.length];
+		for ( int c=0; c<codeBooks.length; ++c)
+			if ( codeBooks[c] != null || counts[c] != null )
+				res[n++] = c;
+		return Arrays.copyOf( res, n);
+	}
+
+	/** build the canonical codes of all the contexts, the contexts are distributed over the tasks of the pool */
+	public void BuildTables( ForkJoinPool pool) throws UserErrorException
+	{
+		int[] contexts = Contexts();
+		BuildTask task = new BuildTask( contexts, 0, contexts.length);
+		pool.invoke( task);
+		if ( task.error != null )
+			throw task.error;
+	}
+
+	private class BuildTask extends RecursiveAction {
+		private static final long serialVersionUID = 1L;
+		private final int[] contexts;
+		private final int from;
+		private final int to;
+		UserErrorException error;
+
+		BuildTask( int[] contexts, int from, int to)
+		{
+			this.contexts = contexts;
+			this.from = from;
+			this.to = to;
+		}
+
+		@Override
+		protected void compute()
+		{
+			if ( to - from > CONTEXTS_PER_TASK )
+			{
+				int middle = (from + to) >>> 1;
+				BuildTask left = new BuildTask( contexts, from, middle);
+				BuildTask right = new BuildTask( contexts, middle, to);
+				invokeAll( left, right);
+				error = left.error != null ? left.error : right.error;
+				return;
+			}
+			try {
+				for ( int i=from; i<to; ++i)
+					codeBooks[contexts[i]] = BuildTable( counts[contexts[i]]);
+			} catch ( UserErrorException ex)
+			{
+				error = ex;
+			}
+		}
+	}
+
+	private static HoffmanCodeBook BuildTable( long[] row) throws UserErrorException
+	{
+		int n = 0;
+		for ( long count : row)
+			if ( count != 0 )
+				++n;
+		int[] symbols = new int[n];
+		long[] symbolCounts = new long[n];
+		n = 0;
+		for ( int s=0; s<row.length; ++s)
+			if ( row[s] != 0 )
+			{
+				symbols[n] = s;
+				symbolCounts[n++] = row[s];
+			}
+		return new HoffmanTreeBuilder( symbols, symbolCounts).CanonicalCodeBook();
+	}
+
+	/** the order-0 entropy of the counted symbols in bits per symbol */
+	public double Entropy()
+	{
+		long[] totals = new long[FrequencyCounter.ALPHABET_SIZE];
+		for ( long[] row : counts)
+			if ( row != null )
+				for ( int s=0; s<row.length; ++s)
+					totals[s] += row[s];
+		return EntropyEngine.Entropy( totals, symbolCount);
+	}
+
+	/** the entropy of the symbols given their preceding symbol in bits per symbol */
+	public double ConditionalEntropy()
+	{
+		double bits = 0;
+		for ( long[] row : counts)
+			if ( row != null )
+			{
+				long total = 0;
+				for ( long count : row)
+					total += count;
+				bits += EntropyEngine.Entropy( row, total) * total;
+			}
+		return symbolCount == 0 ? 0 : bits / symbolCount;
+	}
+
+	/** the average code length of the counted symbols with the built tables in bits per symbol */
+	public double CodedBitsPerSymbol()
+	{
+		double bits = 0;
+		for ( int c=0; c<counts.length; ++c)
+		{
+			long[] row = counts[c];
+			HoffmanCodeBook codeBook = codeBooks[c];
+			if ( row == null || codeBook == null )
+				continue;
+			for ( int i=0; i<codeBook.size(); ++i)
+				bits += (double)row[codeBook.symbol( i)] * codeBook.length( i);
+		}
+		return symbolCount == 0 ? 0 : bits / symbolCount;
+	}
+
+	/** write the code lengths of all the contexts, the tables have to be built */
+	public void Write( DataOutputStream out) throws IOException
+	{
+		int[] contexts = Contexts();
+		out.writeInt( MAGIC);
+		out.writeByte( VERSION);
+		HoffmanCodeBook.WriteVarInt( out, contexts.length);
+		int previous = -1;
+		for ( int context : contexts)
+		{
+			HoffmanCodeBook.WriteVarInt( out, context - previous - 1);
+			codeBooks[context].WriteLengths( out);
+			previous = context;
+		}
+	}
+
+	/** read the tables written by Write, the model has no counts then */
+	public static HoffmanContextModel Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		if ( in.readInt() != MAGIC )
+			throw new UserErrorException( "The file is not an order-1 Hoffman table.");
+		int version = in.readByte();
+		if ( version != VERSION )
+			throw new UserErrorException( "Unsupported order-1 Hoffman table version " + version + ".");
+		HoffmanContextModel res = new HoffmanContextModel();
+		int n = HoffmanCodeBook.ReadVarInt( in);
+		int context = -1;
+		for ( int i=0; i<n; ++i)
+		{
+			context += HoffmanCodeBook.ReadVarInt( in) + 1;
+			if ( context >= res.codeBooks.length )
+				throw new UserErrorException( "Invalid context " + context + " in the order-1 Hoffman table.");
+			res.codeBooks[context] = HoffmanCodeBook.ReadLengths( in);
+		}
+		return res;
+	}
+}
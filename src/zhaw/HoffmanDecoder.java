@@ -0,0 +1,443 @@
+package zhaw;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Table driven decoder of a Hoffman encoded bit stream.
+ *
+ * The input bits are kept in a primitive long accumulator. The next PRIMARY_BITS bits of the
+ * accumulator index a lookup table which gives the decoded symbol and the length of its code at once.
+ * Codes longer than PRIMARY_BITS continue in sub tables of SUB_BITS bits each, so the tables stay
+ * small even for the deep trees of skewed distributions.
+ */
+public class HoffmanDecoder {
+	public static final boolean LDEBUG = false;
+
+	private static final int PRIMARY_BITS = 11;
+	private static final int SUB_BITS = 4;
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/** The table entries:
+	 * 		>  0 : (symbol << 8) | number of the bits the code uses at this table level
+	 * 		<  0 : ~offset of the sub table for the next SUB_BITS bits
+	 * 		== 0 : there is no code with these bits
+	 * */
+	private int[] table;
+	private int tableSize;
+	private final int primaryBits;
+
+	public HoffmanDecoder( HoffmanCodeBook codeBook)
+	{
+		primaryBits = Math.max( 1, Math.min( PRIMARY_BITS, codeBook.maxLength()));
+		table = new int[(1 << primaryBits) + (1 << SUB_BITS)];
+		tableSize = 1 << primaryBits;
+		for ( int i=0; i<codeBook.size(); ++i)
+			Insert( codeBook.symbol( i), codeBook.code( i), codeBook.length( i));
+		if (LDEBUG) System.out.println( "   Decoding table entries: " + tableSize);
+	}
+
+	private void Insert( int symbol, long code, int length)
+	{
+		int offset = 0;
+		int width = primaryBits;
+		int remaining = length;
+		while ( remaining > width )
+		{
+			int index = offset + (int)((code >>> (remaining - width)) & ((1 << width) - 1));
+			if ( table[index] > 0 )
+				throw new IllegalArgumentException( "The codes of the code book are not prefix free.");
+			if ( table[index] == 0 )
+			{
+				int subTable = AllocateSubTable();   // it may grow the table array
+				table[index] = ~subTable;
+			}
+			offset = ~table[index];
+			remaining -= width;
+			width = SUB_BITS;
+		}
+		// all the entries starting with the remaining bits of the code decode to the symbol
+		int first = offset + ((int)(code & ((1L << remaining) - 1)) << (width - remaining));
+		Arrays.fill( table, first, first + (1 << (width - remaining)), (symbol << 8) | remaining);
+	}
+
+	private int AllocateSubTable()
+	{
+		if ( tableSize + (1 << SUB_BITS) > table.length )
+			table = Arrays.copyOf( table, table.length * 2);
+		int offset = tableSize;
+		tableSize += 1 << SUB_BITS;
+		return offset;
+	}
+
+	/**
+	 * Decode the symbols of the input stream into the output till the end of content symbol is found.
+	 *
+	 * @param in - the Hoffman encoded bit stream
+	 * @param out - receives the decoded symbols
+	 * @param eofSymbol - the symbol which marks the end of the content, it is not written into the output
+	 * @return the number of the symbols written into the output
+	 * @throws EOFException if the input ends before the end of content symbol
+	 */
+	public long Decode( InputStream in, Writer out, int eofSymbol) throws IOException
+	{
+		BitReader reader = new BitReader( in);
+		char[] chars = new char[BUFFER_SIZE];   /// the decoded symbols are written in blocks
+		int charCount = 0;
+		long decoded = 0;
+		try {
+			while (true)
+			{
+				int symbol = reader.Next( table, primaryBits) >>> 8;
+				if ( symbol == eofSymbol )
+				{
+					out.write( chars, 0, charCount);
+					return decoded;
+				}
+				chars[charCount++] = (char)symbol;
+				if ( charCount == chars.length )
+				{
+					out.write( chars, 0, charCount);
+					charCount = 0;
+				}
+				++decoded;
+			}
+		} catch ( EOFException ex)
+		{
+			out.write( chars, 0, charCount);
+			throw ex;
+		}
+	}
+
+	/**
+	 * Decode exactly the given number of symbols of a block into the output.
+	 *
+	 * @param in - the bits of the block, from its position to its limit
+	 * @param out - receives the decoded symbols from the index 0
+	 * @param count - the number of the symbols in the block
+	 * @throws EOFException if the block ends before all its symbols are decoded
+	 */
+	public void DecodeBlock( ByteBuffer in, char[] out, int count) throws IOException
+	{
+		DecodeBlock( in, out, count, -1);
+	}
+
+	/**
+	 * Decode exactly the given number of symbols of a block, where the escape symbol is followed
+	 * by the 16 bits of a symbol having no code.
+	 *
+	 * @param escapeSymbol - the symbol marking the escaped symbols, -1 if there is none
+	 */
+	public void DecodeBlock( ByteBuffer in, char[] out, int count, int escapeSymbol) throws IOException
+	{
+		final int[] table = this.table;
+		final int primaryBits = this.primaryBits;
+		final int primaryMask = (1 << primaryBits) - 1;
+		final int subMask = (1 << SUB_BITS) - 1;
+		long bits = 0;
+		int bitCount = 0;
+		int padding = 0;
+		for ( int i=0; i<count; ++i)
+		{
+			while ( bitCount <= 56 )
+			{
+				if ( in.hasRemaining() )
+					bits = (bits << 8) | (in.get() & 0xFF);
+				else
+				{
+					bits <<= 8;
+					padding += 8;
+				}
+				bitCount += 8;
+			}
+			int width = primaryBits;
+			int entry = table[(int)(bits >>> (bitCount - width)) & primaryMask];
+			while ( entry < 0 )
+			{
+				bitCount -= width;
+				width = SUB_BITS;
+				entry = table[~entry + ((int)(bits >>> (bitCount - width)) & subMask)];
+			}
+			if ( entry == 0 )
+				throw new IOException( "Invalid Hoffman code found in the input.");
+			bitCount -= entry & 0xFF;
+			int symbol = entry >>> 8;
+			if ( symbol == escapeSymbol )
+			{
+				while ( bitCount < 16 )
+				{
+					if ( in.hasRemaining() )
+						bits = (bits << 8) | (in.get() & 0xFF);
+					else
+					{
+						bits <<= 8;
+						padding += 8;
+					}
+					bitCount += 8;
+				}
+				bitCount -= 16;
+				symbol = (int)(bits >>> bitCount) & 0xFFFF;
+			}
+			if ( bitCount < padding )
+				throw new EOFException();
+			out[i] = (char)symbol;
+		}
+	}
+
+	/**
+	 * Decode the symbols of a block spread over four interleaved bit streams, the symbol i is in the
+	 * stream i % 4. The four streams are decoded in one loop: their table lookups do not depend on each
+	 * other, so the processor overlaps them instead of waiting for the length of every code in turn.
+	 *
+	 * While every stream has at least 16 bytes left, its next 64 bits are read at once without any
+	 * check, the last symbols of every stream are decoded with the checked reads.
+	 *
+	 * @param data - the bytes of the streams
+	 * @param bounds - the stream k is in the bytes from bounds[k] to bounds[k + 1]
+	 * @param out - receives the decoded symbols from the index 0
+	 * @param count - the number of the symbols in all the streams
+	 * @param escapeSymbol - the symbol marking the escaped symbols, -1 if there is none
+	 * @throws EOFException if a stream ends before all its symbols are decoded
+	 */
+	public void DecodeInterleaved( byte[] data, int[] bounds, char[] out, int count, int escapeSymbol) throws IOException
+	{
+		if ( bounds.length != 5 )
+			throw new IllegalArgumentException( "Four interleaved streams are required, not " + (bounds.length - 1) + ".");
+		final int[] table = this.table;
+		final int shift = 64 - primaryBits;
+		ByteBuffer in = ByteBuffer.wrap( data);
+		long p0 = bounds[0] * 8L, p1 = bounds[1] * 8L, p2 = bounds[2] * 8L, p3 = bounds[3] * 8L;   /// the bit positions
+		long l0 = (bounds[1] - 16) * 8L, l1 = (bounds[2] - 16) * 8L, l2 = (bounds[3] - 16) * 8L, l3 = (bounds[4] - 16) * 8L;
+		int i = 0;
+		while ( i + 4 <= count && p0 <= l0 && p1 <= l1 && p2 <= l2 && p3 <= l3 )
+		{
+			long w0 = in.getLong( (int)(p0 >>> 3)) << (p0 & 7);
+			long w1 = in.getLong( (int)(p1 >>> 3)) << (p1 & 7);
+			long w2 = in.getLong( (int)(p2 >>> 3)) << (p2 & 7);
+			long w3 = in.getLong( (int)(p3 >>> 3)) << (p3 & 7);
+			int e0 = table[(int)(w0 >>> shift)];
+			int e1 = table[(int)(w1 >>> shift)];
+			int e2 = table[(int)(w2 >>> shift)];
+			int e3 = table[(int)(w3 >>> shift)];
+			if ( (e0 | e1 | e2 | e3) < 0 )
+			{
+				e0 = SubEntry( e0, w0);
+				e1 = SubEntry( e1, w1);
+				e2 = SubEntry( e2, w2);
+				e3 = SubEntry( e3, w3);
+			}
+			if ( e0 == 0 || e1 == 0 || e2 == 0 || e3 == 0 )
+				throw new IOException( "Invalid Hoffman code found in the input.");
+			p0 += e0 & 0xFF;
+			p1 += e1 & 0xFF;
+			p2 += e2 & 0xFF;
+			p3 += e3 & 0xFF;
+			int s0 = e0 >>> 8, s1 = e1 >>> 8, s2 = e2 >>> 8, s3 = e3 >>> 8;
+			if ( s0 == escapeSymbol || s1 == escapeSymbol || s2 == escapeSymbol || s3 == escapeSymbol )
+			{
+				// the 16 bits of an escaped symbol follow its code, they are still in the bytes the loop may read
+				if ( s0 == escapeSymbol ) { s0 = (int)(in.getLong( (int)(p0 >>> 3)) << (p0 & 7) >>> 48); p0 += 16; }
+				if ( s1 == escapeSymbol ) { s1 = (int)(in.getLong( (int)(p1 >>> 3)) << (p1 & 7) >>> 48); p1 += 16; }
+				if ( s2 == escapeSymbol ) { s2 = (int)(in.getLong( (int)(p2 >>> 3)) << (p2 & 7) >>> 48); p2 += 16; }
+				if ( s3 == escapeSymbol ) { s3 = (int)(in.getLong( (int)(p3 >>> 3)) << (p3 & 7) >>> 48); p3 += 16; }
+			}
+			out[i] = (char)s0;
+			out[i + 1] = (char)s1;
+			out[i + 2] = (char)s2;
+			out[i + 3] = (char)s3;
+			i += 4;
+		}
+		DecodeStream( data, bounds[1], p0, out, i, count, escapeSymbol);
+		DecodeStream( data, bounds[2], p1, out, i + 1, count, escapeSymbol);
+		DecodeStream( data, bounds[3], p2, out, i + 2, count, escapeSymbol);
+		DecodeStream( data, bounds[4], p3, out, i + 3, count, escapeSymbol);
+	}
+
+	/** follow the sub tables of the entry for the bits of the window, the result has the whole length of the code */
+	private int SubEntry( int entry, long window)
+	{
+		int used = primaryBits;
+		while ( entry < 0 )
+		{
+			entry = table[~entry + (int)((window << used) >>> (64 - SUB_BITS))];
+			used += SUB_BITS;
+		}
+		if ( entry == 0 || used == primaryBits )
+			return entry;
+		return (entry & ~0xFF) | (used - SUB_BITS + (entry & 0xFF));
+	}
+
+	/** decode every fourth symbol from the index first of one interleaved stream ending at the byte end */
+	private void DecodeStream( byte[] data, int end, long position, char[] out, int first, int count, int escapeSymbol) throws IOException
+	{
+		final int shift = 64 - primaryBits;
+		for ( int i=first; i<count; i+=4)
+		{
+			long window = Peek( data, end, position);
+			int entry = SubEntry( table[(int)(window >>> shift)], window);
+			if ( entry == 0 )
+				throw new IOException( "Invalid Hoffman code found in the input.");
+			position += entry & 0xFF;
+			int symbol = entry >>> 8;
+			if ( symbol == escapeSymbol )
+			{
+				symbol = (int)(Peek( data, end, position) >>> 48);
+				position += 16;
+			}
+			if ( position > end * 8L )
+				throw new EOFException();
+			out[i] = (char)symbol;
+		}
+	}
+
+	/** the 64 bits from the bit position, the bits after the end are zero */
+	private static long Peek( byte[] data, int end, long position)
+	{
+		int index = (int)(position >>> 3);
+		long res = 0;
+		for ( int i=0; i<8; ++i)
+			res = (res << 8) | (index + i < end ? data[index + i] & 0xFF : 0);
+		return res << (position & 7);
+	}
+
+	/**
+	 * Decode the given number of symbols, every symbol with the table of its context, which is
+	 * the symbol before it.
+	 *
+	 * @param contexts - the decoder of every context, indexed by the context symbol
+	 * @param context - the context of the first symbol
+	 * @param count - the number of the symbols in the input
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public static void DecodeWithContexts( HoffmanDecoder[] contexts, int context, InputStream in, Writer out, long count) throws IOException
+	{
+		BitReader reader = new BitReader( in);
+		char[] chars = new char[BUFFER_SIZE];
+		int charCount = 0;
+		for ( long i=0; i<count; ++i)
+		{
+			HoffmanDecoder decoder = contexts[context];
+			if ( decoder == null )
+				throw new IOException( "There is no Hoffman table for the context " + context + ".");
+			context = reader.Next( decoder.table, decoder.primaryBits) >>> 8;
+			chars[charCount++] = (char)context;
+			if ( charCount == chars.length )
+			{
+				out.write( chars, 0, charCount);
+				charCount = 0;
+			}
+		}
+		out.write( chars, 0, charCount);
+	}
+
+	/**
+	 * Decode the extended symbols of the input and write the symbols every one of them stands for, e.g. the
+	 * symbols of an n-gram or the characters of a word. The symbol s stands for expansion[starts[s] .. starts[s + 1] - 1].
+	 *
+	 * @param count - the number of the symbols to write, the symbols of the last extended symbol beyond it are dropped
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public void DecodeExpanded( InputStream in, Writer out, char[] expansion, int[] starts, long count) throws IOException
+	{
+		BitReader reader = new BitReader( in);
+		char[] chars = new char[BUFFER_SIZE];
+		int charCount = 0;
+		for ( long written=0; written<count; )
+		{
+			int symbol = reader.Next( table, primaryBits) >>> 8;
+			int start = starts[symbol];
+			int length = (int)Math.min( starts[symbol + 1] - start, count - written);
+			written += length;
+			if ( charCount + length > chars.length )
+			{
+				out.write( chars, 0, charCount);
+				charCount = 0;
+				if ( length > chars.length )
+				{
+					out.write( expansion, start, length);
+					continue;
+				}
+			}
+			System.arraycopy( expansion, start, chars, charCount, length);
+			charCount += length;
+		}
+		out.write( chars, 0, charCount);
+	}
+
+	/**
+	 * The input bits of the stream decoders in a primitive long accumulator. The input is read in
+	 * blocks, the bits after its end are zero; a code reaching into them ends the input.
+	 */
+	private static final class BitReader {
+		private final InputStream in;
+		private final byte[] buffer = new byte[BUFFER_SIZE];
+		private int pos = 0, limit = 0;
+		private boolean exhausted = false;
+		private long bits = 0;
+		private int bitCount = 0;
+		private int padding = 0;   /// zero bits appended after the end of the input
+
+		BitReader( InputStream in)
+		{
+			this.in = in;
+		}
+
+		/** keep at least HoffmanCodeBook.MAX_CODE_LENGTH bits in the accumulator */
+		private void Fill() throws IOException
+		{
+			while ( bitCount <= 56 )
+			{
+				if ( pos == limit && ! Refill() )
+				{
+					bits <<= 8;
+					padding += 8;
+				}
+				else
+					bits = (bits << 8) | (buffer[pos++] & 0xFF);
+				bitCount += 8;
+			}
+		}
+
+		/** @return false if the input has ended */
+		private boolean Refill() throws IOException
+		{
+			if ( exhausted )
+				return false;
+			int n = in.read( buffer, 0, buffer.length);
+			pos = 0;
+			limit = Math.max( n, 0);
+			exhausted = n < 0;
+			return n > 0;
+		}
+
+		/**
+		 * Read the next code of the decoding table.
+		 *
+		 * @return the entry of the code in the table, (symbol << 8) | number of the bits
+		 * @throws EOFException if the code uses the bits after the end of the input
+		 */
+		int Next( int[] table, int primaryBits) throws IOException
+		{
+			if ( bitCount <= 56 )
+				Fill();
+			int width = primaryBits;
+			int entry = table[(int)(bits >>> (bitCount - width)) & ((1 << width) - 1)];
+			while ( entry < 0 )
+			{
+				bitCount -= width;
+				width = SUB_BITS;
+				entry = table[~entry + ((int)(bits >>> (bitCount - width)) & ((1 << SUB_BITS) - 1))];
+			}
+			if ( entry == 0 )
+				throw new IOException( "Invalid Hoffman code found in the input.");
+			bitCount -= entry & 0xFF;
+			if ( bitCount < padding )
+				throw new EOFException();
+			return entry;
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package zhaw;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.List;
+
+/**
+ * A code table trained once on a sample corpus and shared by many files, so the small files need
+ * neither the counting nor their own .htable. The table has a code for the HoffmanCodeBook.ESCAPE symbol,
+ * the characters not seen in the training are written as the escape code followed by their 16 bits.
+ * The dictionary file is the canonical binary table of HoffmanCodeBook.
+ */
+public class HoffmanDictionary {
+
+	public static final String FILE_EXTENTION = ".hdict";
+
+	/**
+	 * Count the characters of all the sample files and build the canonical codes of the summed up counts.
+	 *
+	 * @param charset - the charset of the sample files and of the files encoded with the dictionary
+	 */
+	public static HoffmanCodeBook Train( List<String> sampleFilePaths, Charset charset, boolean mappedInput) throws UserErrorException
+	{
+		long[] counts = new long[FrequencyCounter.ALPHABET_SIZE];
+		FrequencyCounter counter = new FrequencyCounter( charset, mappedInput);
+		for ( String path : sampleFilePaths)
+		{
+			try {
+				long[] histogram = counter.Count( path);
+				for ( int c=0; c<counts.length; ++c)
+					counts[c] += histogram[c];
+			} catch (FileNotFoundException ex)
+			{
+				throw new UserErrorException( "input file " + path + " does not exists.");
+			} catch (IOException e) {
+				throw new UserErrorException( "input file " + path + " reading failed.");
+			}
+		}
+		int distinct = 0;
+		for ( long count : counts)
+			if ( count != 0 )
+				++distinct;
+		int[] symbols = new int[distinct + 1];
+		long[] symbolCounts = new long[distinct + 1];
+		int n = 0;
+		for ( int c=0; c<counts.length; ++c)
+			if ( counts[c] != 0 )
+			{
+				symbols[n] = c;
+				symbolCounts[n++] = counts[c];
+			}
+		// the unseen characters are expected to be rare
+		symbols[n] = HoffmanCodeBook.ESCAPE;
+		symbolCounts[n] = 1;
+		return new HoffmanTreeBuilder( symbols, symbolCounts).CanonicalCodeBook();
+	}
+
+	public static void Save( HoffmanCodeBook dictionary, String dictionaryFilePath) throws UserErrorException
+	{
+		try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( dictionaryFilePath))) )
+		{
+			dictionary.Write( out);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "output file " + dictionaryFilePath + " can not be created.");
+		} catch (IOException e) {
+			throw new UserErrorException( "output file " + dictionaryFilePath + " writting failed.");
+		}
+	}
+
+	public static HoffmanCodeBook Load( String dictionaryFilePath) throws UserErrorException
+	{
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( dictionaryFilePath))) )
+		{
+			if ( in.readInt() != HoffmanCodeBook.CANONICAL_MAGIC )
+				throw new UserErrorException( "file " + dictionaryFilePath + " is not a Hoffman dictionary.");
+			HoffmanCodeBook res = HoffmanCodeBook.Read( in);
+			if ( res.maxSymbol() != HoffmanCodeBook.ESCAPE )
+				throw new UserErrorException( "file " + dictionaryFilePath + " is a Hoffman table without the escape code, not a dictionary.");
+			return res;
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + dictionaryFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + dictionaryFilePath + " reading failed.");
+		}
+	}
+}
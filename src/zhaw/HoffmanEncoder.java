@@ -0,0 +1,209 @@
+package zhaw;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Encoder writing the Hoffman codes of the input characters as a packed bit stream.
+ *
+ * The codes are precomputed as (bits, length) pairs in arrays indexed by the character, the bits
+ * are collected in a 64 bit buffer and flushed into a reusable byte block, so there is no
+ * allocation per character. The output is the same as the one of the original String based encoder:
+ * the most significant bit of a byte comes first, the end of content symbol follows the content
+ * and the last byte is filled with zero bits (a whole zero byte when the stream ends on a byte border).
+ */
+public class HoffmanEncoder {
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	private final int[] codeBits;        /// the lowest 32 bits of the code
+	private final int[] codeHighBits;    /// the bits above 32 of the long codes, null if there are none
+	private final byte[] codeLength;     /// 0 if the symbol has no code
+
+	private final byte[] block = new byte[BUFFER_SIZE];
+	private int blockPos = 0;
+	private long bitBuffer = 0;
+	private int bitCount = 0;   /// always less than 8 between the symbols
+	private long flushedBytes = 0;
+
+	public HoffmanEncoder( HoffmanCodeBook codeBook)
+	{
+		int size = codeBook.maxSymbol() + 1;
+		codeBits = new int[size];
+		codeLength = new byte[size];
+		codeHighBits = codeBook.maxLength() > 32 ? new int[size] : null;
+		for ( int i=0; i<codeBook.size(); ++i)
+		{
+			int symbol = codeBook.symbol( i);
+			codeBits[symbol] = (int)codeBook.code( i);
+			codeLength[symbol] = (byte)codeBook.length( i);
+			if ( codeHighBits != null )
+				codeHighBits[symbol] = (int)(codeBook.code( i) >>> 32);
+		}
+	}
+
+	/** an encoder with its own bit buffer sharing the code tables of the other one, e.g. for another thread */
+	public HoffmanEncoder( HoffmanEncoder codes)
+	{
+		codeBits = codes.codeBits;
+		codeHighBits = codes.codeHighBits;
+		codeLength = codes.codeLength;
+	}
+
+	/**
+	 * Encode all the characters of the input followed by the end of content symbol.
+	 *
+	 * @return the number of the encoded characters, without the end of content symbol
+	 */
+	public long Encode( Reader in, OutputStream out, int eofSymbol) throws IOException
+	{
+		char[] chars = new char[BUFFER_SIZE];
+		long count = 0;
+		int n;
+		while ((n = in.read( chars)) != -1)
+		{
+			for ( int i=0; i<n; ++i)
+				Write( chars[i], out);
+			count += n;
+		}
+		Write( eofSymbol, out);
+		Finish( out);
+		return count;
+	}
+
+	/**
+	 * Encode all the characters of the file, read through memory mapped windows, followed by the end of content symbol.
+	 * The ISO-8859-1 characters are taken directly from the bytes.
+	 *
+	 * @return the number of the encoded characters, without the end of content symbol
+	 */
+	public long Encode( FileChannel channel, Charset charset, OutputStream out, int eofSymbol) throws IOException
+	{
+		return Encode( new MappedReader( channel, charset), out, eofSymbol);
+	}
+
+	/**
+	 * Encode the symbols of the block without the end of content symbol. The last byte is filled
+	 * with zero bits only if the bits do not end on a byte border.
+	 *
+	 * @return the number of the written bits, without the filling ones
+	 */
+	public long EncodeBlock( char[] symbols, int from, int to, OutputStream out) throws IOException
+	{
+		return EncodeBlock( symbols, from, to, out, -1);
+	}
+
+	/**
+	 * Encode the symbols of the block, a symbol without a code is written as the code of the escape
+	 * symbol followed by the 16 bits of the symbol.
+	 *
+	 * @param escapeSymbol - the symbol having a code which marks the escaped symbols, -1 if there is none
+	 * @return the number of the written bits, without the filling ones
+	 */
+	public long EncodeBlock( char[] symbols, int from, int to, OutputStream out, int escapeSymbol) throws IOException
+	{
+		return EncodeBlock( symbols, from, to, 1, out, escapeSymbol);
+	}
+
+	/**
+	 * Encode every stride-th symbol of the block from the symbol at from, e.g. one of the interleaved streams.
+	 *
+	 * @return the number of the written bits, without the filling ones
+	 */
+	public long EncodeBlock( char[] symbols, int from, int to, int stride, OutputStream out, int escapeSymbol) throws IOException
+	{
+		flushedBytes = 0;
+		for ( int i=from; i<to; i+=stride)
+		{
+			int symbol = symbols[i];
+			if ( escapeSymbol < 0 || HasCode( symbol) )
+				Write( symbol, out);
+			else
+			{
+				Write( escapeSymbol, out);
+				WriteBits( symbol, 16, out);
+			}
+		}
+		return FinishBlock( out);
+	}
+
+	/**
+	 * Fill the last byte with zero bits only if the bits do not end on a byte border and write everything left.
+	 *
+	 * @return the number of the bits written since this encoder was created or finished the last block, without the filling ones
+	 */
+	public long FinishBlock( OutputStream out) throws IOException
+	{
+		long bits = (flushedBytes + blockPos) * 8L + bitCount;
+		if ( bitCount > 0 )
+			block[blockPos++] = (byte)(bitBuffer << (8 - bitCount));
+		bitBuffer = 0;
+		bitCount = 0;
+		FlushBlock( out);
+		flushedBytes = 0;
+		return bits;
+	}
+
+	public boolean HasCode( int symbol)
+	{
+		return symbol < codeLength.length && codeLength[symbol] != 0;
+	}
+
+	/** append the lowest bits of the value to the bit stream, at most 32 bits */
+	public void WriteBits( int value, int length, OutputStream out) throws IOException
+	{
+		bitBuffer = (bitBuffer << length) | (value & ((1L << length) - 1));
+		bitCount += length;
+		while ( bitCount >= 8 )
+		{
+			bitCount -= 8;
+			block[blockPos++] = (byte)(bitBuffer >>> bitCount);
+		}
+		if ( blockPos > block.length - 8 )
+			FlushBlock( out);
+	}
+
+	/** append the code of the symbol to the bit stream */
+	public void Write( int symbol, OutputStream out) throws IOException
+	{
+		Write( this, symbol, out);
+	}
+
+	/** append the code the other encoder has for the symbol, e.g. the one of the current context, to the bit stream of this one */
+	public void Write( HoffmanEncoder codes, int symbol, OutputStream out) throws IOException
+	{
+		if ( symbol >= codes.codeLength.length || codes.codeLength[symbol] == 0 )
+			throw new RuntimeException( "Hoffman code was not found in the cache. The cache is invalid.");
+		int length = codes.codeLength[symbol];
+		long code = codes.codeBits[symbol] & 0xFFFFFFFFL;
+		if ( length > 32 )
+			code |= (long)codes.codeHighBits[symbol] << 32;
+		bitBuffer = (bitBuffer << length) | code;
+		bitCount += length;
+		while ( bitCount >= 8 )
+		{
+			bitCount -= 8;
+			block[blockPos++] = (byte)(bitBuffer >>> bitCount);
+		}
+		if ( blockPos > block.length - 8 )
+			FlushBlock( out);
+	}
+
+	/** fill the last byte with zero bits and write everything left */
+	public void Finish( OutputStream out) throws IOException
+	{
+		block[blockPos++] = (byte)(bitBuffer << (8 - bitCount));
+		bitBuffer = 0;
+		bitCount = 0;
+		FlushBlock( out);
+	}
+
+	private void FlushBlock( OutputStream out) throws IOException
+	{
+		out.write( block, 0, blockPos);
+		flushedBytes += blockPos;
+		blockPos = 0;
+	}
+}
@@ -0,0 +1,216 @@
+package zhaw;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+
+import zhaw.HoffmanTree.ArcType;
+
+/**
+ * The Hoffman tree in parallel int arrays instead of the Node objects: the node i is a leaf having the
+ * symbol symbol(i) or a parent having the children left(i) and right(i). The children are always stored
+ * before their parent and the root is the last node, so the tree is walked with plain loops over the
+ * indexes and no recursion, whatever its depth is.
+ *
+ * No node keeps the concatenated values of its leaves, the textual table writes them from the leaves.
+ */
+public class HoffmanFlatTree {
+
+	private int[] symbol;   /// -1 for the parents
+	private int[] left;     /// -1 for the leaves
+	private int[] right;    /// -1 for the leaves
+	private int size = 0;
+
+	/** @param leaves - the expected number of the leaves, the tree grows if it gets more */
+	public HoffmanFlatTree( int leaves)
+	{
+		int capacity = Math.max( 1, 2 * leaves - 1);
+		symbol = new int[capacity];
+		left = new int[capacity];
+		right = new int[capacity];
+	}
+
+	/** @return the index of the new leaf */
+	public int AddLeaf( int leafSymbol)
+	{
+		if ( leafSymbol < 0 )
+			throw new IllegalArgumentException( "Invalid leaf symbol " + leafSymbol + ".");
+		return Add( leafSymbol, -1, -1);
+	}
+
+	/** @return the index of the new parent, the children have to be added before */
+	public int AddParent( int leftChild, int rightChild)
+	{
+		if ( leftChild < 0 || rightChild < 0 || leftChild >= size || rightChild >= size || leftChild == rightChild )
+			throw new IllegalArgumentException( "Invalid children " + leftChild + " and " + rightChild + " of the node " + size + ".");
+		return Add( -1, leftChild, rightChild);
+	}
+
+	private int Add( int leafSymbol, int leftChild, int rightChild)
+	{
+		if ( size == symbol.length )
+		{
+			symbol = Arrays.copyOf( symbol, size * 2);
+			left = Arrays.copyOf( left, size * 2);
+			right = Arrays.copyOf( right, size * 2);
+		}
+		symbol[size] = leafSymbol;
+		left[size] = leftChild;
+		right[size] = rightChild;
+		return size++;
+	}
+
+	/** the number of the nodes */
+	public int size()
+	{
+		return size;
+	}
+
+	/** the index of the root, -1 for an empty tree */
+	public int root()
+	{
+		return size - 1;
+	}
+
+	public boolean isLeaf( int node)
+	{
+		return left[node] < 0;
+	}
+
+	public int symbol( int node)
+	{
+		return symbol[node];
+	}
+
+	public int left( int node)
+	{
+		return left[node];
+	}
+
+	public int right( int node)
+	{
+		return right[node];
+	}
+
+	/** the leaves from the leftmost to the rightmost one, so the value of every node is a range of them */
+	public int[] LeavesInOrder()
+	{
+		int[] leafCounts = LeafCounts();
+		int[] start = new int[size];
+		int[] res = new int[leafCounts[root()]];
+		// the parents are stored after their children, so every parent gets its start before its children
+		for ( int i=root(); i>=0; --i)
+			if ( isLeaf( i) )
+				res[start[i]] = i;
+			else
+			{
+				start[left[i]] = start[i];
+				start[right[i]] = start[i] + leafCounts[left[i]];
+			}
+		return res;
+	}
+
+	/** the number of the leaves below every node */
+	private int[] LeafCounts()
+	{
+		int[] res = new int[size];
+		for ( int i=0; i<size; ++i)
+			res[i] = isLeaf( i) ? 1 : res[left[i]] + res[right[i]];
+		return res;
+	}
+
+	/**
+	 * Write the textual table like Node.Serialize does: every node in the order right subtree, left
+	 * subtree, node gets its value followed by its ArcType, the root gets only its value.
+	 */
+	public void Serialize( Writer out) throws IOException
+	{
+		int root = root();
+		int[] leafCounts = LeafCounts();
+		char[] text = new char[leafCounts[root]];   /// the symbols of the leaves from the leftmost one
+		int[] start = new int[size];
+		int[] arc = new int[size];
+		for ( int i=root; i>=0; --i)
+			if ( isLeaf( i) )
+				text[start[i]] = (char)symbol[i];
+			else
+			{
+				start[left[i]] = start[i];
+				start[right[i]] = start[i] + leafCounts[left[i]];
+				arc[left[i]] = ArcType.LEFT.getValue();
+				arc[right[i]] = ArcType.RIGHT.getValue();
+			}
+		// the order right subtree, left subtree, node is the reversed order node, left subtree, right subtree
+		int[] order = new int[size];
+		int[] stack = new int[size];
+		int top = 0;
+		int n = size;
+		stack[top++] = root;
+		while ( top > 0 )
+		{
+			int node = stack[--top];
+			order[--n] = node;
+			if ( ! isLeaf( node) )
+			{
+				stack[top++] = right[node];
+				stack[top++] = left[node];
+			}
+		}
+		for ( int node : order)
+		{
+			out.write( text, start[node], leafCounts[node]);
+			if ( node != root )
+				out.write( (char)arc[node]);
+		}
+	}
+
+	/**
+	 * Read the textual table written by Serialize. The subtrees are kept on a stack, a value of more than
+	 * one character joins the left subtree on the top of the stack with the right one below it.
+	 */
+	public static HoffmanFlatTree Read( Reader in) throws IOException, UserErrorException
+	{
+		HoffmanFlatTree res = new HoffmanFlatTree( 256);
+		int[] stack = new int[64];
+		int[] stackArc = new int[64];
+		int[] stackLeaves = new int[64];
+		int top = 0;
+		int length = 0;
+		int first = 0;
+		int c;
+		do {
+			c = in.read();
+			if ( c != -1 && c != ArcType.LEFT.getValue() && c != ArcType.RIGHT.getValue() )
+			{
+				if ( length++ == 0 )
+					first = c;
+				continue;
+			}
+			int node;
+			if ( length == 1 )
+				node = res.AddLeaf( first);
+			else
+			{
+				if ( top < 2 || stackArc[top - 1] != ArcType.LEFT.getValue() || stackArc[top - 2] != ArcType.RIGHT.getValue()
+						|| stackLeaves[top - 1] + stackLeaves[top - 2] != length )
+					throw new UserErrorException( "Invalid Hoffman table, the node " + res.size() + " does not join two subtrees.");
+				node = res.AddParent( stack[top - 1], stack[top - 2]);
+				top -= 2;
+			}
+			if ( top == stack.length )
+			{
+				stack = Arrays.copyOf( stack, top * 2);
+				stackArc = Arrays.copyOf( stackArc, top * 2);
+				stackLeaves = Arrays.copyOf( stackLeaves, top * 2);
+			}
+			stack[top] = node;
+			stackArc[top] = c;
+			stackLeaves[top++] = length;
+			length = 0;
+		} while ( c != -1 );
+		if ( top != 1 )
+			throw new UserErrorException( "Invalid Hoffman table, " + top + " subtrees are left without a root.");
+		return res;
+	}
+}
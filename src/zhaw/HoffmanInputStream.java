@@ -0,0 +1,140 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Input stream decompressing the frames written by HoffmanOutputStream. Only one frame is kept
+ * in memory at a time.
+ */
+public class HoffmanInputStream extends FilterInputStream {
+
+	private final DataInputStream data;
+	private final HoffmanDecoder decoder;
+	private byte[] encoded = new byte[0];
+	private char[] frame = new char[0];
+	private int frameSize = 0;
+	private int framePos = 0;
+	private boolean end = false;
+
+	/** read a stream with the embedded table */
+	public HoffmanInputStream( InputStream in) throws IOException
+	{
+		this( in, null);
+	}
+
+	/**
+	 * @param codeBook - the codes the stream was written with, if the stream has no embedded table
+	 */
+	public HoffmanInputStream( InputStream in, HoffmanCodeBook codeBook) throws IOException
+	{
+		super( in);
+		data = new DataInputStream( in);
+		if ( data.readInt() != HoffmanOutputStream.MAGIC )
+			throw new IOException( "The input is not a Hoffman stream.");
+		int version = data.readByte();
+		if ( version != HoffmanOutputStream.VERSION )
+			throw new IOException( "Unsupported Hoffman stream version " + version + ".");
+		int flags = data.readByte();
+		if ( (flags & HoffmanOutputStream.FLAG_EMBEDDED_TABLE) != 0 )
+		{
+			if ( data.readInt() != HoffmanCodeBook.CANONICAL_MAGIC )
+				throw new IOException( "The embedded Hoffman table is invalid.");
+			try {
+				codeBook = HoffmanCodeBook.Read( data);
+			} catch ( UserErrorException ex)
+			{
+				throw new IOException( ex.getMessage());
+			}
+		}
+		else if ( codeBook == null )
+			throw new IOException( "The Hoffman stream has no embedded table and no code book was given.");
+		decoder = new HoffmanDecoder( codeBook);
+	}
+
+	@Override
+	public int read() throws IOException
+	{
+		if ( framePos == frameSize && ! ReadFrame() )
+			return -1;
+		return frame[framePos++] & 0xFF;
+	}
+
+	@Override
+	public int read( byte[] b, int off, int len) throws IOException
+	{
+		if ( len == 0 )
+			return 0;
+		if ( framePos == frameSize && ! ReadFrame() )
+			return -1;
+		int n = Math.min( len, frameSize - framePos);
+		for ( int i=0; i<n; ++i)
+			b[off + i] = (byte)frame[framePos + i];
+		framePos += n;
+		return n;
+	}
+
+	@Override
+	public long skip( long n) throws IOException
+	{
+		long skipped = 0;
+		while ( skipped < n && (framePos < frameSize || ReadFrame()) )
+		{
+			int k = (int)Math.min( n - skipped, frameSize - framePos);
+			framePos += k;
+			skipped += k;
+		}
+		return skipped;
+	}
+
+	@Override
+	public int available()
+	{
+		return frameSize - framePos;
+	}
+
+	@Override
+	public boolean markSupported()
+	{
+		return false;
+	}
+
+	@Override
+	public void mark( int readlimit)
+	{
+	}
+
+	@Override
+	public void reset() throws IOException
+	{
+		throw new IOException( "mark/reset is not supported.");
+	}
+
+	/** decode the next frame, false at the end of the stream */
+	private boolean ReadFrame() throws IOException
+	{
+		if ( end )
+			return false;
+		int symbols = HoffmanCodeBook.ReadVarInt( data);
+		if ( symbols == 0 )
+		{
+			end = true;
+			return false;
+		}
+		int bytes = HoffmanCodeBook.ReadVarInt( data);
+		if ( symbols < 0 || symbols > HoffmanOutputStream.MAX_FRAME_SYMBOLS || bytes < 0 || bytes > 7L * symbols + 8 )
+			throw new IOException( "Invalid Hoffman stream frame of " + symbols + " symbols in " + bytes + " bytes.");
+		if ( encoded.length < bytes )
+			encoded = new byte[bytes];
+		if ( frame.length < symbols )
+			frame = new char[symbols];
+		data.readFully( encoded, 0, bytes);
+		decoder.DecodeBlock( ByteBuffer.wrap( encoded, 0, bytes), frame, symbols);
+		frameSize = symbols;
+		framePos = 0;
+		return true;
+	}
+}
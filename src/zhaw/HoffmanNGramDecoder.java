@@ -0,0 +1,58 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the files written by the HoffmanNGramEncoder: every decoded n-gram is expanded into its
+ * symbols with one table lookup.
+ */
+public class HoffmanNGramDecoder implements EncodedFileDecoder {
+
+	private final DataInputStream data;
+	private final Charset charset;
+	private final long symbolCount;
+	private final HoffmanNGramModel model;
+
+	/** read the header and the codes of the input */
+	public HoffmanNGramDecoder( InputStream in) throws IOException, UserErrorException
+	{
+		data = new DataInputStream( in);
+		charset = FormatHeader.Read( data, HoffmanNGramEncoder.MAGIC, HoffmanNGramEncoder.VERSION, "an n-gram Hoffman file");
+		symbolCount = data.readLong();
+		model = HoffmanNGramModel.Read( data);
+	}
+
+	public String format()
+	{
+		return "n-gram";
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** the number of the encoded symbols */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/**
+	 * Decode all the symbols into the output.
+	 *
+	 * @return the number of the written symbols
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public long Decode( Writer out) throws IOException
+	{
+		new HoffmanDecoder( model.codeBook()).DecodeExpanded( data, out, model.Expansion(), model.ExpansionStarts(), symbolCount);
+		return symbolCount;
+	}
+}
@@ -0,0 +1,87 @@
+package zhaw;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes a text with the codes of the n-grams of a HoffmanNGramModel. The format of the .hencoded file:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		short  length of the charset name, followed by the name in ASCII
+ * 		long   number of the symbols (not of the n-grams)
+ * 		the model, see HoffmanNGramModel.Write
+ * 		the bit stream, the last byte is filled with zero bits only if it is not full
+ *
+ * No .htable file is needed, the codes are stored in the header.
+ */
+public class HoffmanNGramEncoder implements EncodedFileEncoder {
+
+	public static final int MAGIC = 0x484E4752;   /// "HNGR"
+	public static final byte VERSION = 1;
+
+	private static final int READ_SIZE = 1 << 16;
+
+	private final HoffmanNGramModel model;
+
+	/** @param model - the model counted from the text, with the built codes */
+	public HoffmanNGramEncoder( HoffmanNGramModel model)
+	{
+		this.model = model;
+	}
+
+	public String format()
+	{
+		return model.k() + "-gram";
+	}
+
+	/**
+	 * Encode the text the model was counted from.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, OutputStream out) throws IOException
+	{
+		HoffmanEncoder codes = new HoffmanEncoder( model.codeBook());
+
+		DataOutputStream data = new DataOutputStream( out);
+		FormatHeader.Write( data, MAGIC, VERSION, charset);
+		data.writeLong( model.symbolCount());
+		model.Write( data);
+
+		char[] buffer = new char[READ_SIZE];
+		int k = model.k();
+		int base = model.alphabetSize();
+		int gram = 0;
+		int filled = 0;
+		long symbols = 0;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			if ( symbols + n > model.symbolCount() )
+				throw new IOException( "The text has changed since it was counted.");
+			for ( int i=0; i<n; ++i)
+			{
+				gram = gram * base + model.Digit( buffer[i]);
+				if ( ++filled == k )
+				{
+					codes.Write( gram, data);
+					gram = 0;
+					filled = 0;
+				}
+			}
+			symbols += n;
+		}
+		if ( symbols != model.symbolCount() )
+			throw new IOException( "The text has changed since it was counted.");
+		if ( filled > 0 )
+			codes.Write( model.Fill( gram, filled), data);
+		codes.FinishBlock( data);
+		data.flush();
+		return symbols;
+	}
+}
@@ -0,0 +1,295 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Extended alphabet of a text with a small alphabet: every k consecutive symbols form one n-gram and
+ * the n-grams get the Hoffman codes, so a code of 1 bit covers k symbols. The n-gram of the symbols
+ * s1..sk is the number having the digits index(s1)..index(sk) in the base of the alphabet size, the
+ * last n-gram of the text is filled up with the first symbol of the alphabet.
+ *
+ * The binary table format:
+ * 		byte   k
+ * 		varint number of the symbols of the alphabet, then for every one in ascending order:
+ * 		       varint difference to the previous symbol - 1
+ * 		the canonical code lengths of the n-grams, see HoffmanCodeBook.WriteLengths
+ */
+public class HoffmanNGramModel {
+
+	/** the most n-grams of a table, the decoding table keeps an n-gram in 23 bits */
+	public static final int MAX_TABLE_BUDGET = 1 << 20;
+	public static final int DEFAULT_TABLE_BUDGET = 1 << 16;
+	public static final int MAX_K = 16;
+
+	private static final int READ_SIZE = 1 << 16;
+	/** about the size of a code length in the table: the distance to the previous n-gram and the length */
+	private static final int TABLE_BITS_PER_GRAM = 16;
+
+	private final int[] alphabet;   /// in ascending order
+	private final int[] index;      /// the digit of every symbol, -1 if it is not in the alphabet
+	private final int k;
+	private final int grams;        /// alphabet.length ^ k
+	private long[] counts;          /// of every n-gram, null for a model which was read
+	private long[] symbolCounts;    /// of every symbol of the alphabet
+	private long symbolCount = 0;
+	private HoffmanCodeBook codeBook;
+
+	/**
+	 * @param alphabet - the symbols of the text in ascending order
+	 * @param k - the number of the symbols of an n-gram, alphabet.length ^ k must not exceed MAX_TABLE_BUDGET
+	 */
+	public HoffmanNGramModel( int[] alphabet, int k) throws UserErrorException
+	{
+		if ( alphabet.length == 0 )
+			throw new UserErrorException( "The n-grams need at least one symbol.");
+		if ( k < 1 || k > MAX_K || Math.pow( alphabet.length, k) > MAX_TABLE_BUDGET )
+			throw new UserErrorException( "Invalid length " + k + " of the n-grams of " + alphabet.length + " symbols.");
+		this.alphabet = alphabet;
+		this.k = k;
+		int g = 1;
+		for ( int i=0; i<k; ++i)
+			g *= alphabet.length;
+		grams = g;
+		index = new int[alphabet[alphabet.length - 1] + 1];
+		Arrays.fill( index, -1);
+		for ( int i=0; i<alphabet.length; ++i)
+		{
+			if ( alphabet[i] < 0 || alphabet[i] >= FrequencyCounter.ALPHABET_SIZE || (i > 0 && alphabet[i] <= alphabet[i - 1]) )
+				throw new UserErrorException( "Invalid symbol " + alphabet[i] + " of the n-gram alphabet.");
+			index[alphabet[i]] = i;
+		}
+	}
+
+	/** the longest n-grams whose number stays within the budget, at least 1 and at most MAX_K */
+	public static int ChooseK( int alphabetSize, int tableBudget)
+	{
+		int budget = Math.min( tableBudget, MAX_TABLE_BUDGET);
+		int k = 1;
+		long grams = alphabetSize;
+		while ( k < MAX_K && grams * alphabetSize <= budget )
+		{
+			grams *= alphabetSize;
+			++k;
+		}
+		return k;
+	}
+
+	/** count the n-grams of the text, the symbols have to be in the alphabet */
+	public void Count( Reader in) throws IOException
+	{
+		counts = new long[grams];
+		symbolCounts = new long[alphabet.length];
+		char[] buffer = new char[READ_SIZE];
+		int gram = 0;
+		int filled = 0;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			for ( int i=0; i<n; ++i)
+			{
+				int digit = Digit( buffer[i]);
+				++symbolCounts[digit];
+				gram = gram * alphabet.length + digit;
+				if ( ++filled == k )
+				{
+					++counts[gram];
+					gram = 0;
+					filled = 0;
+				}
+			}
+			symbolCount += n;
+		}
+		if ( filled > 0 )
+			++counts[Fill( gram, filled)];
+	}
+
+	/**
+	 * The length of the n-grams between 1 and k which costs the least bits for the counted text together
+	 * with its table. The counts of the shorter n-grams are estimated from the first symbols of the counted ones.
+	 */
+	public int BestK()
+	{
+		int best = k;
+		double bestBits = Double.MAX_VALUE;
+		int shorterGrams = 1;
+		for ( int j=1; j<=k; ++j)
+		{
+			shorterGrams *= alphabet.length;
+			int divisor = grams / shorterGrams;
+			long[] shorter = new long[shorterGrams];
+			for ( int g=0; g<grams; ++g)
+				shorter[g / divisor] += counts[g];
+			int n = 0;
+			for ( long count : shorter)
+				if ( count != 0 )
+					++n;
+			int[] symbols = new int[n];
+			long[] shorterCounts = new long[n];
+			n = 0;
+			for ( int g=0; g<shorterGrams; ++g)
+				if ( shorter[g] != 0 )
+				{
+					symbols[n] = g;
+					shorterCounts[n++] = shorter[g];
+				}
+			HoffmanTreeBuilder builder = new HoffmanTreeBuilder( symbols, shorterCounts);
+			double bits = builder.BitsPerSymbol( builder.CodeLengths()) * ((symbolCount + j - 1) / j) + (double)n * TABLE_BITS_PER_GRAM;
+			if ( bits < bestBits )
+			{
+				bestBits = bits;
+				best = j;
+			}
+		}
+		return best;
+	}
+
+	/** the index of the symbol in the alphabet */
+	int Digit( int symbol) throws IOException
+	{
+		if ( symbol >= index.length || index[symbol] < 0 )
+			throw new IOException( "The symbol " + symbol + " is not in the n-gram alphabet, the text has changed since it was counted.");
+		return index[symbol];
+	}
+
+	/** the n-gram of the first filled symbols followed by the first symbol of the alphabet */
+	int Fill( int gram, int filled)
+	{
+		for ( int i=filled; i<k; ++i)
+			gram *= alphabet.length;
+		return gram;
+	}
+
+	/** build the canonical codes of the counted n-grams */
+	public void BuildCodes() throws UserErrorException
+	{
+		int n = 0;
+		for ( long count : counts)
+			if ( count != 0 )
+				++n;
+		if ( n == 0 )
+			throw new UserErrorException( "There are no n-grams to build the codes of.");
+		int[] symbols = new int[n];
+		long[] gramCounts = new long[n];
+		n = 0;
+		for ( int g=0; g<grams; ++g)
+			if ( counts[g] != 0 )
+			{
+				symbols[n] = g;
+				gramCounts[n++] = counts[g];
+			}
+		codeBook = new HoffmanTreeBuilder( symbols, gramCounts).CanonicalCodeBook();
+	}
+
+	public int k()
+	{
+		return k;
+	}
+
+	/** the number of the possible n-grams, the size of the table */
+	public int grams()
+	{
+		return grams;
+	}
+
+	public int alphabetSize()
+	{
+		return alphabet.length;
+	}
+
+	/** the number of the counted symbols, not of the n-grams */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/** the codes of the n-grams, null before BuildCodes */
+	public HoffmanCodeBook codeBook()
+	{
+		return codeBook;
+	}
+
+	/** the start of every n-gram in the Expansion followed by its end, g * k for the n-gram g */
+	public int[] ExpansionStarts()
+	{
+		int[] res = new int[grams + 1];
+		for ( int g=0; g<=grams; ++g)
+			res[g] = g * k;
+		return res;
+	}
+
+	/** the symbols of every n-gram, the n-gram g has the symbols at g * k .. g * k + k - 1 */
+	public char[] Expansion()
+	{
+		char[] res = new char[grams * k];
+		for ( int g=0; g<grams; ++g)
+		{
+			int gram = g;
+			for ( int i=k-1; i>=0; --i)
+			{
+				res[g * k + i] = (char)alphabet[gram % alphabet.length];
+				gram /= alphabet.length;
+			}
+		}
+		return res;
+	}
+
+	/** the order-0 entropy of the counted symbols in bits per symbol */
+	public double Entropy()
+	{
+		return EntropyEngine.Entropy( symbolCounts, symbolCount);
+	}
+
+	/** the entropy of the counted n-grams in bits per original symbol */
+	public double NGramEntropy()
+	{
+		long total = 0;
+		for ( long count : counts)
+			total += count;
+		return symbolCount == 0 ? 0 : EntropyEngine.Entropy( counts, total) * total / symbolCount;
+	}
+
+	/** the average code length of the counted n-grams in bits per original symbol */
+	public double CodedBitsPerSymbol()
+	{
+		double bits = 0;
+		for ( int i=0; i<codeBook.size(); ++i)
+			bits += (double)counts[codeBook.symbol( i)] * codeBook.length( i);
+		return symbolCount == 0 ? 0 : bits / symbolCount;
+	}
+
+	/** write the alphabet and the code lengths, the codes have to be built */
+	public void Write( DataOutputStream out) throws IOException
+	{
+		out.writeByte( k);
+		HoffmanCodeBook.WriteVarInt( out, alphabet.length);
+		int previous = -1;
+		for ( int symbol : alphabet)
+		{
+			HoffmanCodeBook.WriteVarInt( out, symbol - previous - 1);
+			previous = symbol;
+		}
+		codeBook.WriteLengths( out);
+	}
+
+	/** read the model written by Write, it has no counts then */
+	public static HoffmanNGramModel Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		int k = in.readByte();
+		int n = HoffmanCodeBook.ReadVarInt( in);
+		if ( n <= 0 || n > FrequencyCounter.ALPHABET_SIZE )
+			throw new UserErrorException( "Invalid number " + n + " of the n-gram symbols.");
+		int[] alphabet = new int[n];
+		int previous = -1;
+		for ( int i=0; i<n; ++i)
+			previous = alphabet[i] = previous + 1 + HoffmanCodeBook.ReadVarInt( in);
+		HoffmanNGramModel res = new HoffmanNGramModel( alphabet, k);
+		res.codeBook = HoffmanCodeBook.ReadLengths( in);
+		if ( res.codeBook.maxSymbol() >= res.grams )
+			throw new UserErrorException( "Invalid n-gram " + res.codeBook.maxSymbol() + " in the n-gram Hoffman table.");
+		return res;
+	}
+}
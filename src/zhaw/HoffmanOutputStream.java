@@ -0,0 +1,153 @@
+package zhaw;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Output stream compressing the written bytes with the Hoffman codes of a tree built for the raw byte
+ * alphabet (ISO-8859-1). Nothing is staged on disk, the bytes are collected into frames of a bounded size
+ * and every frame is encoded and written on its own:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		byte   flags, FLAG_EMBEDDED_TABLE if the canonical code lengths follow
+ * 		       the canonical table written by HoffmanCodeBook.Write
+ * 		for every frame: varint number of the symbols, varint number of the bytes, the bytes of the bit stream
+ * 		varint 0 as the end of the stream
+ *
+ * The number of the symbols of every frame is known, so there is no end of content symbol and
+ * all the 256 byte values can be written.
+ */
+public class HoffmanOutputStream extends FilterOutputStream {
+
+	public static final int MAGIC = 0x48535452;   /// "HSTR"
+	public static final byte VERSION = 1;
+	public static final int FLAG_EMBEDDED_TABLE = 1;
+	public static final int DEFAULT_FRAME_SYMBOLS = 1 << 16;
+	/** the biggest frame a reader accepts, so a corrupted stream can not request any amount of memory */
+	static final int MAX_FRAME_SYMBOLS = 1 << 24;
+
+	private final DataOutputStream data;
+	private final HoffmanEncoder encoder;
+	private final char[] frame;
+	private int frameSize = 0;
+	private final ByteArrayOutputStream encoded = new ByteArrayOutputStream();
+	private boolean finished = false;
+
+	/**
+	 * @param codeBook - the codes of the bytes, e.g. of a tree built by Compute with the ISO-8859-1 charset
+	 * @param embedTable - write the canonical code lengths into the stream, so it can be decoded without the table;
+	 * 		the canonical codes are used for the encoding then
+	 */
+	public HoffmanOutputStream( OutputStream out, HoffmanCodeBook codeBook, boolean embedTable) throws IOException
+	{
+		this( out, codeBook, embedTable, DEFAULT_FRAME_SYMBOLS);
+	}
+
+	/**
+	 * @param frameSymbols - the number of the bytes collected before a frame is encoded and written
+	 */
+	public HoffmanOutputStream( OutputStream out, HoffmanCodeBook codeBook, boolean embedTable, int frameSymbols) throws IOException
+	{
+		super( out);
+		if ( frameSymbols <= 0 || frameSymbols > MAX_FRAME_SYMBOLS )
+			throw new IllegalArgumentException( "Invalid number of the symbols of a frame: " + frameSymbols);
+		try {
+			if ( embedTable )
+				codeBook = codeBook.ToCanonical();
+		} catch ( UserErrorException ex)
+		{
+			throw new IllegalArgumentException( ex.getMessage());
+		}
+		this.data = new DataOutputStream( out);
+		this.encoder = new HoffmanEncoder( codeBook);
+		this.frame = new char[frameSymbols];
+		data.writeInt( MAGIC);
+		data.writeByte( VERSION);
+		data.writeByte( embedTable ? FLAG_EMBEDDED_TABLE : 0);
+		if ( embedTable )
+			codeBook.Write( data);
+	}
+
+	/** @throws IOException if the table of the stream has no code for the byte, the byte is not written then */
+	@Override
+	public void write( int b) throws IOException
+	{
+		char symbol = Symbol( b);
+		if ( frameSize == frame.length )
+			WriteFrame();
+		frame[frameSize++] = symbol;
+	}
+
+	/** @throws IOException if the table of the stream has no code for a byte, the bytes before it may be written already */
+	@Override
+	public void write( byte[] b, int off, int len) throws IOException
+	{
+		while ( len > 0 )
+		{
+			if ( frameSize == frame.length )
+				WriteFrame();
+			int n = Math.min( len, frame.length - frameSize);
+			for ( int i=0; i<n; ++i)
+				frame[frameSize + i] = Symbol( b[off + i]);
+			frameSize += n;
+			off += n;
+			len -= n;
+		}
+	}
+
+	/** encode the collected bytes as a frame, so everything written till now can be decoded */
+	@Override
+	public void flush() throws IOException
+	{
+		WriteFrame();
+		data.flush();
+	}
+
+	/** write the end of the stream without closing the underlying stream */
+	public void Finish() throws IOException
+	{
+		if ( finished )
+			return;
+		WriteFrame();
+		HoffmanCodeBook.WriteVarInt( data, 0);
+		data.flush();
+		finished = true;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		try {
+			Finish();
+		} finally
+		{
+			out.close();
+		}
+	}
+
+	private char Symbol( int b) throws IOException
+	{
+		char symbol = (char)(b & 0xFF);
+		if ( ! encoder.HasCode( symbol) )
+			throw new IOException( "The byte " + (int)symbol + " has no Hoffman code in the table of the stream.");
+		return symbol;
+	}
+
+	private void WriteFrame() throws IOException
+	{
+		if ( frameSize == 0 )
+			return;
+		if ( finished )
+			throw new IOException( "The Hoffman stream is already finished.");
+		encoded.reset();
+		encoder.EncodeBlock( frame, 0, frameSize, encoded);
+		HoffmanCodeBook.WriteVarInt( data, frameSize);
+		HoffmanCodeBook.WriteVarInt( data, encoded.size());
+		encoded.writeTo( data);
+		frameSize = 0;
+	}
+}
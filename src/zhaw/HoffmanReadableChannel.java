@@ -0,0 +1,59 @@
+package zhaw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * Channel decompressing the stream format of HoffmanOutputStream.
+ */
+public class HoffmanReadableChannel implements ReadableByteChannel {
+
+	private final HoffmanInputStream in;
+	private final byte[] buffer = new byte[1 << 16];
+	private boolean open = true;
+
+	/** see HoffmanInputStream, the code book is needed only if the stream has no embedded table */
+	public HoffmanReadableChannel( ReadableByteChannel channel, HoffmanCodeBook codeBook) throws IOException
+	{
+		in = new HoffmanInputStream( Channels.newInputStream( channel), codeBook);
+	}
+
+	@Override
+	public int read( ByteBuffer dst) throws IOException
+	{
+		if ( ! open )
+			throw new ClosedChannelException();
+		if ( ! dst.hasRemaining() )
+			return 0;
+		int n;
+		if ( dst.hasArray() )
+		{
+			n = in.read( dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+			if ( n > 0 )
+				dst.position( dst.position() + n);
+			return n;
+		}
+		n = in.read( buffer, 0, Math.min( dst.remaining(), buffer.length));
+		if ( n > 0 )
+			dst.put( buffer, 0, n);
+		return n;
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	@Override
+	public void close() throws IOException
+	{
+		if ( ! open )
+			return;
+		open = false;
+		in.close();
+	}
+}
@@ -1,21 +1,28 @@
 package zhaw;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
 import java.io.DataInputStream;
 import java.io.DataOutputStream;
 import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
-import java.io.FileReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Reader;
+import java.io.Writer;
 import java.math.BigDecimal;
-import java.security.InvalidParameterException;
+import java.nio.charset.Charset;
 import java.util.Formatter;
-import java.util.HashMap;
-import java.util.Map.Entry;
-import java.io.FileWriter;
+import java.util.concurrent.ForkJoinPool;
 
 import sun.reflect.generics.reflectiveObjects.NotImplementedException;
 
@@ -23,8 +30,8 @@ public class HoffmanTree
 {
 	public static final boolean LDEBUG = false;
 
-	private static final String FILE_HOFFOMANTREE_EXTENTION = ".htable";
-	private static final String FILE_HOFFOMANENCODED_EXTENTION = ".hencoded";
+	static final String FILE_HOFFOMANTREE_EXTENTION = ".htable";
+	static final String FILE_HOFFOMANENCODED_EXTENTION = ".hencoded";
 	private static final String FILE_HOFFOMANDECODED_EXTENTION = ".hdecoded";
 	public static final int hoffmanContentEOFchar = 0x3;   ///ascii is end of text
 	
@@ -76,91 +83,58 @@ public class HoffmanTree
 				outBuffWritter.write( this.value);
 			else {
 				outBuffWritter.write( this.value + (char)this.code.getValue()); /** <node_value><is_it_left_or_right_child>*/
-				if (LDEBUG) System.out.println("   S: " + this.value + "(" + (int)this.code.getValue() + ")");
-			}
-		}
-	
-		/**
-		 * This function builds based on the current hoffman tree
-		 * the cache of <characters> -> <codes> for all the leaves of the tree.
-		 * 
-		 * @param hcc - code cache having as a key the character and as a value the hoffman code
-		 * @param currCode - the current code which was passed from the parent.
-		 */
-		public void BuildCodesCache( HashMap< Integer /*character*/, Code /*Hoffman code*/> hcc, Code currCode)
-		{
-			if ( currCode == null )
-				throw new InvalidParameterException("Code as a parameter has to be provided. ");
-			if ( this.childRight != null )
-					this.childRight.BuildCodesCache( hcc, new Code( currCode, this.childRight.code));  // create a right child code
-			if ( this.childLeft != null )
-					this.childLeft.BuildCodesCache( hcc, new Code( currCode, this.childLeft.code));  // create a left child code
-			// the current node is a leaf and we can put the code into the cache
-			if ( this.childRight == null && this.childLeft == null)
-			{
-				hcc.put( new Integer((char)this.value.charAt( 0)), currCode);
-				if (LDEBUG) System.out.println( "   CC:   " +  (char)this.value.charAt( 0) + "   ->   " + currCode.value);
+				if (LDEBUG) console.println("   S: " + this.value + "(" + (int)this.code.getValue() + ")");
 			}
 		}
 	}
 	
-	private class Code {    /// streams hoffman codes form character into the string with binary numbers
-		private String value;   /// it will always be taken the complete 8 bytes, e.g. 8 characters form the stream
-		public Code()
-		{
-			value = "";
-		}
+	/** The root of the tree of Node objects, null if the tree is flat or was deserialized from the canonical code lengths */
+	public Node root;
+	/** the tree in int arrays, null if the tree has Node objects */
+	private HoffmanFlatTree flat;
+	/** the codes of the leaves, built from the root when they are needed the first time */
+	private HoffmanCodeBook codeBook;
+	/** the codes are a shared dictionary having the escape code, see HoffmanDictionary */
+	private boolean dictionary = false;
+	/** receives the messages, System.out by default */
+	private PrintStream console = System.out;
 
-		/**
-		 *   Concatenate the current character hoffman code with the rest of the code left from the last
-		 * */
-		public Code( Code currCode, ArcType arcType) 
-		{
-			value = currCode.value + arcType.getValue();
-		}
-		public void add( Code code) 
-		{
-			value += code.value;
-		}
-		private boolean hasFullByte()
-		{
-			return value.length() >= 8;
-		}
-		public void writeInto( DataOutputStream out) throws IOException
-		{
-			// has information for writing in the file
-			while ( hasFullByte() )
-				out.writeByte( popFullByte());
-		}
-		public void flashAllLeftBites( DataOutputStream out) throws IOException
-		{
-			if (value.length() < 8)
-				value += "00000000".substring(0, 8 - value.length());
-			// has information for writing in the file
-			while ( hasFullByte() )
-				out.writeByte( popFullByte());
-		}
-		/**
-		 * Pop the first byte from the string (stream of concatenated hoffman codes) back as a result. 
-		 */
-		private byte popFullByte()
-		{
-			byte res = 0;
-			String str = value.substring( 0, 8);
-			value = value.substring( 8);
-			for ( int i=0; i<8; ++i)
-			{
-				char ch = str.charAt( 7 - i);
-				if (ch == '1')
-					res += 1 << i;
-			}
-			return res;
-		}
+	/** the tree of a dictionary, it has no nodes, only the codes */
+	public static HoffmanTree FromDictionary( HoffmanCodeBook dictionary)
+	{
+		HoffmanTree res = new HoffmanTree();
+		res.codeBook = dictionary;
+		res.dictionary = true;
+		return res;
+	}
+
+	/** the tree kept in the int arrays of the flat tree, without any Node object */
+	public static HoffmanTree FromFlatTree( HoffmanFlatTree flat)
+	{
+		HoffmanTree res = new HoffmanTree();
+		res.flat = flat;
+		return res;
+	}
+
+	/** print the messages of this tree into the stream */
+	public void setConsole( PrintStream console)
+	{
+		this.console = console;
+	}
+
+	/** the flat tree, null if the tree has Node objects or only the codes */
+	public HoffmanFlatTree flatTree()
+	{
+		return flat;
+	}
+
+	/** the tree having only the given codes, e.g. the length limited canonical ones */
+	public static HoffmanTree FromCodeBook( HoffmanCodeBook codeBook)
+	{
+		HoffmanTree res = new HoffmanTree();
+		res.codeBook = codeBook;
+		return res;
 	}
-	
-	/** The root of the tree */
-	public Node root;
-	private HashMap< Integer /*character*/, Code /*Hoffman code*/> hoffmanCodesCache;
 	
 	
 	public Node CreateParentForNodes( Node a, Node b) 
@@ -187,10 +161,36 @@ public class HoffmanTree
 	 * */
 	public void Serialize( String relativeTextFilePath) throws UserErrorException
 	{
-		System.out.println( "Serializing Hoffman tree into file...");
-		try ( BufferedWriter out = new BufferedWriter( new FileWriter( relativeTextFilePath + FILE_HOFFOMANTREE_EXTENTION)))
+		Serialize( relativeTextFilePath, Charset.defaultCharset());
+	}
+
+	/** serialize the tree with the node values written in the charset of the text file */
+	public void Serialize( String relativeTextFilePath, Charset charset) throws UserErrorException
+	{
+		Metrics.Timer timer = Metrics.Start( Metrics.SERIALIZE);
+		SerializeTable( relativeTextFilePath, charset);
+		timer.Stop( 0, new File( relativeTextFilePath + FILE_HOFFOMANTREE_EXTENTION).length(), CodeBook().size());
+	}
+
+	private void SerializeTable( String relativeTextFilePath, Charset charset) throws UserErrorException
+	{
+		if ( ! CodeBook().isCanonical() && HasUnwritableSymbols() )
+		{
+			console.println( "The text contains characters which the textual Hoffman table can not keep, switching to the canonical Hoffman codes.");
+			MakeCanonical();
+		}
+		console.println( "Serializing Hoffman tree into file...");
+		if ( CodeBook().isCanonical() )
+		{
+			SerializeCanonical( relativeTextFilePath + FILE_HOFFOMANTREE_EXTENTION);
+			return;
+		}
+		try ( BufferedWriter out = new BufferedWriter( new OutputStreamWriter( new FileOutputStream( relativeTextFilePath + FILE_HOFFOMANTREE_EXTENTION), charset)))
 		{
-			root.Serialize( out);
+			if ( flat != null )
+				flat.Serialize( out);
+			else
+				root.Serialize( out);
 		} catch (FileNotFoundException ex)
 		{
 			throw new UserErrorException( "output file " + relativeTextFilePath + FILE_HOFFOMANTREE_EXTENTION + " can not be created.");
@@ -199,72 +199,151 @@ public class HoffmanTree
 		}
 
 	}
+
+	/** write only the code length of every symbol, the size of the file grows linearly with the alphabet */
+	private void SerializeCanonical( String tableFilePath) throws UserErrorException
+	{
+		try ( DataOutputStream out = new DataOutputStream( new BufferedOutputStream( new FileOutputStream( tableFilePath))) )
+		{
+			codeBook.Write( out);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "output file " + tableFilePath + " can not be created.");
+		} catch (IOException e) {
+			throw new UserErrorException( "output file " + tableFilePath + " writting failed.");
+		}
+	}
+
+	/**
+	 * Replace the codes of the tree by the canonical codes having the same lengths. The encoding and the
+	 * serialization use them afterwards, the table file then keeps only the code lengths.
+	 */
+	public void MakeCanonical() throws UserErrorException
+	{
+		codeBook = CodeBook().ToCanonical();
+	}
+
+	/** the codes of the tree, the canonical ones after MakeCanonical or a canonical table was deserialized */
+	public HoffmanCodeBook CodeBook() throws UserErrorException
+	{
+		if ( codeBook == null )
+			codeBook = flat != null ? HoffmanCodeBook.FromTree( flat) : HoffmanCodeBook.FromTree( root);
+		return codeBook;
+	}
+
+	/**
+	 * Compress the bytes written into the stream with the codes of this tree, without any file.
+	 * The tree has to be built for the raw bytes, e.g. by Compute with the ISO-8859-1 charset.
+	 *
+	 * @param embedTable - write the canonical code lengths into the stream, so the reader does not need the tree
+	 */
+	public HoffmanOutputStream NewOutputStream( OutputStream out, boolean embedTable) throws UserErrorException, IOException
+	{
+		return new HoffmanOutputStream( out, CodeBook(), embedTable);
+	}
+
+	/** decompress a stream written by NewOutputStream, the codes of this tree are used if it has no embedded table */
+	public HoffmanInputStream NewInputStream( InputStream in) throws UserErrorException, IOException
+	{
+		return new HoffmanInputStream( in, CodeBook());
+	}
+
+	/** the 0x00 and 0x01 characters look like the arc markers and the halves of the surrogate pairs can not be written alone */
+	private boolean HasUnwritableSymbols() throws UserErrorException
+	{
+		HoffmanCodeBook codes = CodeBook();
+		for ( int i=0; i<codes.size(); ++i)
+			if ( codes.symbol( i) == 0 || codes.symbol( i) == 1 || Character.isSurrogate( (char)codes.symbol( i)) )
+				return true;
+		return false;
+	}
 	
 	public void Deserialize( String relativeTextFilePath) throws UserErrorException
+	{
+		Deserialize( relativeTextFilePath, Charset.defaultCharset());
+	}
+
+	/** deserialize the tree having the node values written in the given charset */
+	public void Deserialize( String relativeTextFilePath, Charset charset) throws UserErrorException
 	{
 		String filePath = "";
 		if ( relativeTextFilePath.endsWith(FILE_HOFFOMANENCODED_EXTENTION) )
 			filePath = relativeTextFilePath.substring( 0, relativeTextFilePath.length() - FILE_HOFFOMANENCODED_EXTENTION.length());
 		filePath += FILE_HOFFOMANTREE_EXTENTION;
-		try ( BufferedReader in = new BufferedReader(new FileReader( filePath)) )
-		{	    
-			int c;
-			String nodeValue = "";
-			// create a cache with the nodes by value
-			HashMap<String /*node value*/, Node> cacheLeft = new HashMap<>();
-			HashMap<String /*node value*/, Node> cacheRight = new HashMap<>();
-			while ((c = in.read()) != -1) 
-			{
-				if ( c != 0 && c != 1)
-				{
-					nodeValue += (char)c; 
-					continue;
-				}
-				Node childRight = null, childLeft = null;
-				// find the two pairs in case the current node is a composite node
-				if ( nodeValue.length() > 1 )
-				{
-					for (int i=0; i<nodeValue.length()-1; ++i)
-					{
-						String left = nodeValue.substring(0,i+1);
-						if ( ! cacheLeft.containsKey( left))
-							continue;
-						String right = nodeValue.substring(i+1);
-						if ( ! cacheRight.containsKey( right))
-							continue;
-						// we found it
-						childLeft = cacheLeft.get( left);
-						cacheLeft.remove( left);
-						childRight = cacheRight.get( right);
-						cacheRight.remove( right);
-					}
-				}
-				Node newNode = null;;
-				if ( c== 1 )
-					cacheLeft.put( nodeValue, newNode = new Node( nodeValue, ArcType.LEFT));
-				else
-					cacheRight.put( nodeValue, newNode = new Node( nodeValue, ArcType.RIGHT));
-				if ( childLeft != null )
-				{
-					newNode.childLeft = childLeft;
-					newNode.childRight = childRight;
-				}
-				nodeValue = ""; 
-			}
-			// the root node is the node with the value nodeValue
-			root = new Node( nodeValue, ArcType.NONE);
-			root.childLeft = cacheLeft.entrySet().iterator().next().getValue();
-			root.childRight = cacheRight.entrySet().iterator().next().getValue();
+		Metrics.Timer timer = Metrics.Start( Metrics.DESERIALIZE);
+		DeserializeTable( filePath, charset);
+		timer.Stop( new File( filePath).length(), 0, CodeBook().size());
+	}
+
+	private void DeserializeTable( String filePath, Charset charset) throws UserErrorException
+	{
+		if ( IsCanonicalTable( filePath) )
+		{
+			DeserializeCanonical( filePath);
+			return;
+		}
+		codeBook = null;
+		try ( BufferedReader in = new BufferedReader(new InputStreamReader( new FileInputStream( filePath), charset)) )
+		{
+			flat = HoffmanFlatTree.Read( in);
+			root = null;
 		} catch (FileNotFoundException ex)
 		{
 			throw new UserErrorException( "input file " + filePath + " can not be find.");
 		} catch (IOException e) {
 			throw new UserErrorException( "file related to " + filePath + " reading failed.");
 		}
-		
+	}
+
+	private static boolean IsCanonicalTable( String tableFilePath) throws UserErrorException
+	{
+		try ( DataInputStream in = new DataInputStream( new FileInputStream( tableFilePath)) )
+		{
+			return in.readInt() == HoffmanCodeBook.CANONICAL_MAGIC;
+		} catch ( EOFException ex)
+		{
+			return false;
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + tableFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + tableFilePath + " reading failed.");
+		}
+	}
+
+	/** read the code lengths, the codes and the decoding table are built from them without any tree */
+	private void DeserializeCanonical( String tableFilePath) throws UserErrorException
+	{
+		try ( DataInputStream in = new DataInputStream( new BufferedInputStream( new FileInputStream( tableFilePath))) )
+		{
+			in.readInt();   // magic
+			codeBook = HoffmanCodeBook.Read( in);
+			root = null;
+			flat = null;
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + tableFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + tableFilePath + " reading failed.");
+		}
 	}
 
 	public void Decode( String relativeTextFilePath) throws UserErrorException
+	{
+		Decode( relativeTextFilePath, Charset.defaultCharset());
+	}
+
+	/** decode the file and write the decoded characters in the given charset */
+	public void Decode( String relativeTextFilePath, Charset charset) throws UserErrorException
+	{
+		Decode( relativeTextFilePath, charset, false);
+	}
+
+	/**
+	 * @param mappedOutput - write the decoded file through a memory mapped buffer, if the encoded file
+	 * 		knows its number of symbols and the charset has one byte per character
+	 */
+	public void Decode( String relativeTextFilePath, Charset charset, boolean mappedOutput) throws UserErrorException
 	{
 		String decodedFilePath = "";
 		if ( relativeTextFilePath.endsWith(FILE_HOFFOMANENCODED_EXTENTION) )
@@ -274,63 +353,44 @@ public class HoffmanTree
 			decodedFilePath = relativeTextFilePath + FILE_HOFFOMANDECODED_EXTENTION;
 			relativeTextFilePath += FILE_HOFFOMANENCODED_EXTENTION;
 		}
-		// build the code cache and then reverse it.
-		BuildHoffmanCodesCache();
-		HashMap< String /*Hoffman code*/, Integer /*character*/> revHCCache = new HashMap<>();
-		if (LDEBUG) System.out.println("Reverse character->code cache table:");
-		for ( Entry<Integer, Code> e : this.hoffmanCodesCache.entrySet())
-		{
-			revHCCache.put( e.getValue().value ,e.getKey());
-			if (LDEBUG) 
+		int magic = Magic( relativeTextFilePath);
+		if ( ! NeedsTree( magic) )
+		{
+			DecodeWithoutTree( magic, relativeTextFilePath, decodedFilePath, mappedOutput);
+			return;
+		}
+		HoffmanCodeBook codeBook = CodeBook();
+		if (LDEBUG)
+		{
+			console.println("Reverse character->code cache table:");
+			for ( int i=0; i<codeBook.size(); ++i)
 				try (Formatter ft = new Formatter())
-				{   System.out.println( ft.format("%1$12s -> %2$s", e.getValue().value, (char)(int)e.getKey()));   }
+				{   console.println( ft.format("%1$12s -> %2$s", HoffmanCodeBook.toBitString( codeBook.code( i), codeBook.length( i)), (char)codeBook.symbol( i)));   }
+		}
+		if ( magic == HoffmanBlockEncoder.MAGIC )
+		{
+			DecodeBlocks( relativeTextFilePath, decodedFilePath, codeBook, mappedOutput);
+			return;
 		}
+		HoffmanDecoder decoder = new HoffmanDecoder( codeBook);
 
 		// read the encoded file and generate the decoded file
-		try ( 	DataInputStream in = new DataInputStream(new FileInputStream(relativeTextFilePath));
-				BufferedWriter out = new BufferedWriter(new FileWriter( decodedFilePath))
+		try ( 	InputStream in = new FileInputStream(relativeTextFilePath);
+				Writer out = DecodedSink.Open( decodedFilePath, charset, -1, false)
 				)
 		{	 
-			System.out.println( "Decoding file " + relativeTextFilePath + "...");
-			if (LDEBUG) System.out.println("Found tokens during reading (Ts):");
-			byte c;
-			String currStr = "";
-			reading:
-			while (true) 
-			{
-				c = in.readByte();
-				// concatenate the input to the current string
-				for ( int i=7; i>=0; --i)
-				{
-					if ( (c & (1 << i)) > 0 )
-					   currStr += "1";
-					else
-						currStr += "0";
-				}
-				if (LDEBUG) System.out.println( "read() and current string is jet: " + currStr);
-				// try to find as much as possible encoded letters
-				for ( int i=1; i<=currStr.length(); ++i)
-				{
-					String token = currStr.substring(0, i);
-					if ( ! revHCCache.containsKey( token))
-						continue;
-					// we found a hoffman code in the input stream 
-					if (LDEBUG) System.out.println( "\t  T: " + token);
-					// check for end of file
-					if ( hoffmanContentEOFchar == revHCCache.get(token))
-					{
-						System.out.println("Decoding successfully finished.");
-						break reading;
-					}
-					out.write( revHCCache.get(token));
-					currStr = currStr.substring(i);
-					i=0;
-				}
-			}
+			console.println( "Decoding file " + relativeTextFilePath + "...");
+			long startTime = System.nanoTime();
+			Metrics.Timer timer = Metrics.Start( Metrics.DECODE);
+			long symbols = decoder.Decode( in, out, hoffmanContentEOFchar);
+			out.flush();
+			PrintThroughput( console, "Decoded", symbols, new File( relativeTextFilePath).length(), System.nanoTime() - startTime);
+			timer.Stop( new File( relativeTextFilePath).length(), new File( decodedFilePath).length(), symbols);
+			console.println("Decoding successfully finished.");
 		} catch ( EOFException ex)
 		{
 			/** hoffmanContentEOFchar is the mark token for end of content and you forgot to encode it at the end. */
-			System.out.println("Reading readed end of file. Decoding probably is unsuccessfull!");
+			console.println("Reading readed end of file. Decoding probably is unsuccessfull!");
 		} catch (FileNotFoundException ex)
 		{
 			throw new UserErrorException( "input file " + relativeTextFilePath + " can not be find.");
@@ -340,6 +400,142 @@ public class HoffmanTree
 
 	}
 	
+	/** the magic number the encoded file starts with, 0 if it is shorter; the single bit stream of the tree has none */
+	private static int Magic( String encodedFilePath) throws UserErrorException
+	{
+		try ( DataInputStream in = new DataInputStream( new FileInputStream( encodedFilePath)) )
+		{
+			return in.readInt();
+		} catch ( EOFException ex)
+		{
+			return 0;
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + encodedFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + encodedFilePath + " reading failed.");
+		}
+	}
+
+	/** check if the decoding of the file needs the deserialized tree */
+	public static boolean NeedsTree( String relativeTextFilePath) throws UserErrorException
+	{
+		String encodedFilePath = relativeTextFilePath;
+		if ( ! encodedFilePath.endsWith(FILE_HOFFOMANENCODED_EXTENTION) )
+			encodedFilePath += FILE_HOFFOMANENCODED_EXTENTION;
+		return NeedsTree( Magic( encodedFilePath));
+	}
+
+	/** the formats keeping their codes in the encoded file or in a .htable which is not a tree */
+	private static boolean NeedsTree( int magic)
+	{
+		switch ( magic)
+		{
+		case HoffmanAdaptiveEncoder.MAGIC:
+		case HoffmanContextEncoder.MAGIC:
+		case RansEncoder.MAGIC:
+		case HoffmanNGramEncoder.MAGIC:
+		case HoffmanWordEncoder.MAGIC:
+			return false;
+		default:
+			return true;
+		}
+	}
+
+	/** the decoder of the format without a tree, it reads the header from the input and the model of the .htable file if there is one */
+	private static EncodedFileDecoder OpenDecoder( int magic, InputStream in, String encodedFilePath) throws IOException, UserErrorException
+	{
+		String tableFilePath = encodedFilePath.substring( 0, encodedFilePath.length() - FILE_HOFFOMANENCODED_EXTENTION.length()) + FILE_HOFFOMANTREE_EXTENTION;
+		switch ( magic)
+		{
+		case HoffmanAdaptiveEncoder.MAGIC:
+			return new HoffmanAdaptiveDecoder( in);
+		case RansEncoder.MAGIC:
+			return new RansDecoder( in);
+		case HoffmanNGramEncoder.MAGIC:
+			return new HoffmanNGramDecoder( in);
+		case HoffmanContextEncoder.MAGIC:
+			try ( DataInputStream table = new DataInputStream( new BufferedInputStream( new FileInputStream( tableFilePath))) )
+			{
+				Metrics.Timer timer = Metrics.Start( Metrics.DESERIALIZE);
+				HoffmanContextModel model = HoffmanContextModel.Read( table);
+				timer.Stop( new File( tableFilePath).length(), 0, model.Contexts().length);
+				return new HoffmanContextDecoder( in, model);
+			}
+		case HoffmanWordEncoder.MAGIC:
+			try ( DataInputStream table = new DataInputStream( new BufferedInputStream( new FileInputStream( tableFilePath))) )
+			{
+				Metrics.Timer timer = Metrics.Start( Metrics.DESERIALIZE);
+				HoffmanWordModel model = HoffmanWordModel.Read( table);
+				timer.Stop( new File( tableFilePath).length(), 0, model.size());
+				return new HoffmanWordDecoder( in, model);
+			}
+		default:
+			throw new IllegalArgumentException( "The format " + Integer.toHexString( magic) + " needs the Hoffman tree.");
+		}
+	}
+
+	/** decode the file of a format without a tree, the decoded text is written in the charset stored in the file */
+	private void DecodeWithoutTree( int magic, String encodedFilePath, String decodedFilePath, boolean mappedOutput) throws UserErrorException
+	{
+		try ( InputStream in = new BufferedInputStream( new FileInputStream( encodedFilePath)) )
+		{
+			EncodedFileDecoder decoder = OpenDecoder( magic, in, encodedFilePath);
+			console.println( "Decoding " + decoder.format() + " file " + encodedFilePath + "...");
+			try ( Writer out = DecodedSink.Open( decodedFilePath, decoder.charset(), decoder.symbolCount(), mappedOutput) )
+			{
+				long startTime = System.nanoTime();
+				Metrics.Timer timer = Metrics.Start( Metrics.DECODE);
+				long symbols = decoder.Decode( out);
+				out.flush();
+				PrintThroughput( console, "Decoded", symbols, new File( encodedFilePath).length(), System.nanoTime() - startTime);
+				timer.Stop( new File( encodedFilePath).length(), new File( decodedFilePath).length(), symbols);
+			}
+			console.println("Decoding successfully finished.");
+		} catch ( EOFException ex)
+		{
+			console.println("Reading readed end of file. Decoding probably is unsuccessfull!");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + encodedFilePath + " reading failed: " + e.getMessage());
+		}
+	}
+
+	/** decode the blocks of the block container in parallel, the decoded text is written in the charset stored in the file */
+	private void DecodeBlocks( String encodedFilePath, String decodedFilePath, HoffmanCodeBook codeBook, boolean mappedOutput) throws UserErrorException
+	{
+		try ( HoffmanBlockDecoder in = new HoffmanBlockDecoder( encodedFilePath, codeBook) )
+		{
+			console.println( "Decoding " + in.blockCount() + " blocks of file " + encodedFilePath + "...");
+			try ( Writer out = DecodedSink.Open( decodedFilePath, in.charset(), in.symbolCount(), mappedOutput) )
+			{
+				long startTime = System.nanoTime();
+				Metrics.Timer timer = Metrics.Start( Metrics.DECODE);
+				ForkJoinPool pool = ForkJoinPool.commonPool();
+				long symbols = in.DecodeAll( out, pool, pool.getParallelism());
+				out.flush();
+				PrintThroughput( console, "Decoded", symbols, new File( encodedFilePath).length(), System.nanoTime() - startTime);
+				timer.Stop( new File( encodedFilePath).length(), new File( decodedFilePath).length(), symbols);
+			}
+			console.println("Decoding successfully finished.");
+		} catch ( EOFException ex)
+		{
+			console.println("Reading readed end of a block. Decoding probably is unsuccessfull!");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + encodedFilePath + " reading failed: " + e.getMessage());
+		}
+	}
+
+	/** Print how fast the symbols and the bytes of the encoded file were processed. */
+	static void PrintThroughput( PrintStream console, String action, long symbols, long encodedBytes, long nanoSeconds)
+	{
+		double seconds = Math.max( nanoSeconds, 1) / 1e9;
+		try (Formatter ft = new Formatter())
+		{
+			console.println( ft.format("%1$s %2$d symbols (%3$d encoded bytes) in %4$.3f s: %5$.2f MB/s encoded, %6$.2f M symbols/s",
+					action, symbols, encodedBytes, seconds, encodedBytes / seconds / (1024 * 1024), symbols / seconds / 1e6));
+		}
+	}
+	
 	/** get the text file name, open it, read it and encode it to a new binary file basing the encoding of the current Hoffman tree. 
 	 *  => <text_file_name.txt> => <binary_text_encoded>.hencoded 
 	 *  Example: "oringes.txt" => "oringes.txt.hencoded"
@@ -347,15 +543,61 @@ public class HoffmanTree
 	 * */
 	public void Encode( String relativeTextFilePath) throws UserErrorException 
 	{
-		try ( 	BufferedReader in = new BufferedReader( new FileReader( relativeTextFilePath));
-				DataOutputStream out = new DataOutputStream(new FileOutputStream(relativeTextFilePath + FILE_HOFFOMANENCODED_EXTENTION))
+		Encode( relativeTextFilePath, Charset.defaultCharset(), false);
+	}
+
+	/** 
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 */
+	public void Encode( String relativeTextFilePath, Charset charset, boolean mappedInput) throws UserErrorException 
+	{
+		Encode( relativeTextFilePath, charset, mappedInput, 0);
+	}
+
+	/** 
+	 * @param charset - the charset of the text file, ISO-8859-1 encodes the bytes as they are
+	 * @param mappedInput - read the text file through a memory mapped buffer instead of a Reader
+	 * @param blockSymbols - if greater than 0, write the block container with blocks of so many symbols
+	 * 		encoded in parallel, instead of one bit stream ending with the hoffmanContentEOFchar;
+	 * 		a dictionary always writes the block container
+	 */
+	public void Encode( String relativeTextFilePath, Charset charset, boolean mappedInput, int blockSymbols) throws UserErrorException 
+	{
+		Encode( relativeTextFilePath, charset, mappedInput, blockSymbols, false);
+	}
+
+	/** 
+	 * @param interleaved - split every block into HoffmanBlockEncoder.STREAMS interleaved bit streams, which
+	 * 		are decoded in one loop; the blocks are written with the default size if blockSymbols is not given
+	 */
+	public void Encode( String relativeTextFilePath, Charset charset, boolean mappedInput, int blockSymbols, boolean interleaved) throws UserErrorException 
+	{
+		if ( (dictionary || interleaved) && blockSymbols <= 0 )
+			blockSymbols = HoffmanBlockEncoder.DEFAULT_BLOCK_SYMBOLS;
+		if ( blockSymbols > 0 )
+		{
+			EncodeBlocks( relativeTextFilePath, charset, mappedInput, blockSymbols, interleaved);
+			return;
+		}
+		String encodedFilePath = relativeTextFilePath + FILE_HOFFOMANENCODED_EXTENTION;
+		try ( 	FileInputStream in = new FileInputStream( relativeTextFilePath);
+				OutputStream out = new FileOutputStream( encodedFilePath)
 				)
 		{	    
-			if ( LDEBUG ) System.out.println("Building Hoffman cache");
-			BuildHoffmanCodesCache();
+			if ( LDEBUG ) console.println("Building Hoffman code book");
+			HoffmanEncoder encoder = new HoffmanEncoder( CodeBook());
 
-			if ( LDEBUG ) System.out.println("Starting encoding " + relativeTextFilePath + "...");
-			Encode( in, out);
+			if ( LDEBUG ) console.println("Starting encoding " + relativeTextFilePath + "...");
+			long startTime = System.nanoTime();
+			Metrics.Timer timer = Metrics.Start( Metrics.ENCODE);
+			long symbols;
+			if ( mappedInput )
+				symbols = encoder.Encode( in.getChannel(), charset, out, hoffmanContentEOFchar);
+			else
+				symbols = encoder.Encode( new InputStreamReader( in, charset), out, hoffmanContentEOFchar);
+			PrintThroughput( console, "Encoded", symbols, new File( encodedFilePath).length(), System.nanoTime() - startTime);
+			timer.Stop( new File( relativeTextFilePath).length(), new File( encodedFilePath).length(), symbols);
 		} catch (FileNotFoundException ex)
 		{
 			throw new UserErrorException( "input file " + relativeTextFilePath + " can not be find.");
@@ -364,51 +606,26 @@ public class HoffmanTree
 		}
 
 	}
-	
-	private void Encode( BufferedReader in, DataOutputStream out) throws IOException 
-	{
-		/**    ToDo: [10] Please fill after the commented lines with todo 10.1 and 10.2 the necessary code in
-		 *           order after you run the  the program with parameters for serializing and encoding: -t deutsch.txt -p -h
-		 *           to get the two files which with running second time the program with parameters: -d deutsch.txt.hencoded
-		 *           you will get the decoded text file. Then you need to compare the original with the decoded with file hash sum
-		 *           or some tool telling the difference between files.
-		 *           If you implemented successfully the task 10 then you have to have no differences.
-		 * */
-		if ( hoffmanCodesCache == null )
-			throw new RuntimeException( "Hoffman code cache is a prerequisite for this method. Do build it before.");
-		int c;
-		Code codeLeftForWritting = new Code();
-		while ((c = in.read()) != -1)   //   reads a single character from the input file
-		{
-			if ( ! hoffmanCodesCache.containsKey(c) )
-				throw new RuntimeException( "Hoffman code was not found in the cache. The cache is invalid.");
-			/** [10.1] - needs 2 lines of code using the instance "codeLeftForWritting" 
-			* */
-			codeLeftForWritting.add(hoffmanCodesCache.get(c));
-			codeLeftForWritting.writeInto(out);
-			// throw new NotImplementedException();
-
-			
-			
-
-			if (LDEBUG) System.out.println(" W: " + (char)c + " = " + hoffmanCodesCache.get( c).value);
-			}
-			/** [10.3] - needs 3 lines of code using the instance "codeLeftForWritting" 
-			* */
-			codeLeftForWritting.add(hoffmanCodesCache.get(hoffmanContentEOFchar));
-			codeLeftForWritting.writeInto(out);
-			codeLeftForWritting.flashAllLeftBites(out);
-			// throw new NotImplementedException();
-	}
 
-	private void BuildHoffmanCodesCache()
+	private void EncodeBlocks( String relativeTextFilePath, Charset charset, boolean mappedInput, int blockSymbols, boolean interleaved) throws UserErrorException
 	{
-		if ( hoffmanCodesCache != null )
-			return;
-		hoffmanCodesCache = new HashMap<>();
-
-		// traverse the Hoffman tree and create the cache with character as a key
-		root.BuildCodesCache( hoffmanCodesCache, new Code());
+		String encodedFilePath = relativeTextFilePath + FILE_HOFFOMANENCODED_EXTENTION;
+		try ( FileInputStream in = new FileInputStream( relativeTextFilePath) )
+		{
+			ForkJoinPool pool = ForkJoinPool.commonPool();
+			HoffmanBlockEncoder encoder = new HoffmanBlockEncoder( CodeBook(), blockSymbols, pool, pool.getParallelism(), dictionary, interleaved);
+			long startTime = System.nanoTime();
+			Metrics.Timer timer = Metrics.Start( Metrics.ENCODE);
+			Reader reader = mappedInput ? new MappedReader( in.getChannel(), charset) : new InputStreamReader( in, charset);
+			long symbols = encoder.Encode( reader, charset, encodedFilePath);
+			PrintThroughput( console, interleaved ? "Encoded in interleaved blocks" : "Encoded in blocks", symbols, new File( encodedFilePath).length(), System.nanoTime() - startTime);
+			timer.Stop( new File( relativeTextFilePath).length(), new File( encodedFilePath).length(), symbols);
+		} catch (FileNotFoundException ex)
+		{
+			throw new UserErrorException( "input file " + relativeTextFilePath + " can not be find.");
+		} catch (IOException e) {
+			throw new UserErrorException( "file related to " + relativeTextFilePath + " writting failed.");
+		}
 	}
 	
 }
@@ -0,0 +1,232 @@
+package zhaw;
+
+import java.util.Arrays;
+
+/**
+ * Builds the Hoffman tree from the integer occurrence counts of the symbols with the linear
+ * two-queue method: the leaves are sorted once by their count, the parents are created in
+ * non-decreasing order of their count, so the two lowest nodes are always at the head of one of the queues.
+ *
+ * The ties are broken like the probability ordered CacheTreeMap does it: nodes having the same count
+ * are taken in the order they were added, the leaves (in the order of the given symbols) before the parents.
+ * The first taken node becomes the ArcType.RIGHT child, the second one the ArcType.LEFT child.
+ */
+public class HoffmanTreeBuilder {
+
+	private final int leaves;
+	private final int[] symbols;
+	private final long[] counts;   /// the counts of the leaves followed by the counts of the parents
+	private final int[] left;      /// -1 for the leaves
+	private final int[] right;     /// -1 for the leaves
+	private int root = -1;
+
+	private int[] leafQueue;   /// the leaves ordered by their count
+	private int leafHead;
+	private int parentHead;    /// the parents are their own queue, they are created in order of their count
+	private int created;
+
+	/**
+	 * @param symbols - the symbols in the order they have to be taken in case of equal counts
+	 * @param counts - the occurrence count of every symbol
+	 */
+	public HoffmanTreeBuilder( int[] symbols, long[] counts)
+	{
+		if ( symbols.length != counts.length || symbols.length == 0 )
+			throw new IllegalArgumentException( "Every symbol needs a count and at least one symbol is required.");
+		leaves = symbols.length;
+		this.symbols = symbols;
+		this.counts = Arrays.copyOf( counts, 2 * leaves - 1);
+		left = new int[2 * leaves - 1];
+		right = new int[2 * leaves - 1];
+		Arrays.fill( left, -1);
+		Arrays.fill( right, -1);
+	}
+
+	/** Join the nodes till only the root is left. */
+	public void Build()
+	{
+		leafQueue = SortedLeaves();
+		leafHead = 0;
+		parentHead = leaves;
+		created = leaves;
+		while ( created < counts.length )
+		{
+			int a = PopLowest();
+			int b = PopLowest();
+			right[created] = a;
+			left[created] = b;
+			counts[created] = counts[a] + counts[b];
+			++created;
+		}
+		root = counts.length - 1;
+	}
+
+	/** take the node with the lowest count from the head of the leaves or of the parents */
+	private int PopLowest()
+	{
+		if ( leafHead < leaves && (parentHead == created || counts[leafQueue[leafHead]] <= counts[parentHead]) )
+			return leafQueue[leafHead++];
+		return parentHead++;
+	}
+
+	/** the indexes of the leaves ordered by their count, the equal counts stay in the order of the symbols */
+	private int[] SortedLeaves()
+	{
+		int indexBits = 32 - Integer.numberOfLeadingZeros( leaves);
+		long maxCount = 0;
+		for ( int i=0; i<leaves; ++i)
+			maxCount = Math.max( maxCount, counts[i]);
+		if ( maxCount >= (1L << (63 - indexBits)) )
+			throw new IllegalArgumentException( "The symbol count " + maxCount + " is too big.");
+		// sort the counts together with the index in one primitive long
+		long[] keys = new long[leaves];
+		for ( int i=0; i<leaves; ++i)
+			keys[i] = (counts[i] << indexBits) | i;
+		Arrays.sort( keys);
+		int[] res = new int[leaves];
+		for ( int i=0; i<leaves; ++i)
+			res[i] = (int)(keys[i] & ((1L << indexBits) - 1));
+		return res;
+	}
+
+	/** the summed up count of all the symbols, which is the count of the root */
+	public long rootCount()
+	{
+		return counts[root];
+	}
+
+	/** the depth of every leaf in the order of the symbols, a single leaf gets the length 1 */
+	public int[] CodeLengths()
+	{
+		if ( root < 0 )
+			Build();
+		int[] depth = new int[counts.length];
+		// the parents are created after their children, so every parent is visited before its children
+		for ( int i=root; i>=leaves; --i)
+		{
+			depth[left[i]] = depth[i] + 1;
+			depth[right[i]] = depth[i] + 1;
+		}
+		int[] res = Arrays.copyOf( depth, leaves);
+		if ( leaves == 1 )
+			res[0] = 1;
+		return res;
+	}
+
+	/**
+	 * The code lengths limited to maxLength bits with the package-merge method, in the order of the symbols.
+	 * The lengths of the tree are returned unchanged if it is not deeper than maxLength, otherwise the
+	 * lengths have the lowest summed up code length of all the limited prefix codes.
+	 *
+	 * Every level of the limit gets a list of the leaves merged with the packages (pairs) of the list
+	 * of the level below, the first 2 * leaves - 2 items of the top list decide the lengths: every selected
+	 * leaf gets one bit more, every selected package selects its two items of the level below.
+	 */
+	public int[] LimitedCodeLengths( int maxLength) throws UserErrorException
+	{
+		int[] res = CodeLengths();
+		int depth = 0;
+		for ( int length : res)
+			depth = Math.max( depth, length);
+		if ( depth <= maxLength )
+			return res;
+		if ( maxLength < 1 || maxLength < 32 - Integer.numberOfLeadingZeros( leaves - 1) )
+			throw new UserErrorException( leaves + " symbols can not have codes of at most " + maxLength + " bits.");
+		int[] order = SortedLeaves();
+		long[] leafCounts = new long[leaves];
+		for ( int i=0; i<leaves; ++i)
+			leafCounts[i] = counts[order[i]];
+		// the item lists from the longest codes (the last level) to the shortest ones (level 0)
+		boolean[][] isPackage = new boolean[maxLength][];
+		long[] items = leafCounts;
+		isPackage[maxLength - 1] = new boolean[leaves];
+		for ( int level=maxLength - 2; level>=0; --level)
+		{
+			int packages = items.length / 2;
+			long[] merged = new long[leaves + packages];
+			boolean[] kinds = new boolean[merged.length];
+			int l = 0;
+			int p = 0;
+			for ( int i=0; i<merged.length; ++i)
+			{
+				long packageCount = p < packages ? items[2 * p] + items[2 * p + 1] : Long.MAX_VALUE;
+				if ( l < leaves && leafCounts[l] <= packageCount )
+					merged[i] = leafCounts[l++];
+				else
+				{
+					merged[i] = packageCount;
+					kinds[i] = true;
+					++p;
+				}
+			}
+			isPackage[level] = kinds;
+			items = merged;
+		}
+		int[] sortedLengths = new int[leaves];
+		int selected = 2 * leaves - 2;
+		for ( int level=0; level<maxLength && selected > 0; ++level)
+		{
+			int selectedLeaves = 0;
+			int selectedPackages = 0;
+			for ( int i=0; i<selected; ++i)
+				if ( isPackage[level][i] )
+					++selectedPackages;
+				else
+					++selectedLeaves;
+			// the leaves are merged in the order of their count, so the selected ones are the first ones
+			for ( int i=0; i<selectedLeaves; ++i)
+				++sortedLengths[i];
+			selected = 2 * selectedPackages;
+		}
+		for ( int i=0; i<leaves; ++i)
+			res[order[i]] = sortedLengths[i];
+		return res;
+	}
+
+	/** the canonical codes having the code lengths of the built tree, without creating the node objects */
+	public HoffmanCodeBook CanonicalCodeBook() throws UserErrorException
+	{
+		return HoffmanCodeBook.Canonical( symbols, CodeLengths());
+	}
+
+	/** the canonical codes having the code lengths limited to maxLength bits, see LimitedCodeLengths */
+	public HoffmanCodeBook LimitedCanonicalCodeBook( int maxLength) throws UserErrorException
+	{
+		return HoffmanCodeBook.Canonical( symbols, LimitedCodeLengths( maxLength));
+	}
+
+	/** the average code length in bits per symbol of the given code lengths in the order of the symbols */
+	public double BitsPerSymbol( int[] lengths)
+	{
+		long bits = 0;
+		long total = 0;
+		for ( int i=0; i<leaves; ++i)
+		{
+			bits += counts[i] * lengths[i];
+			total += counts[i];
+		}
+		return total == 0 ? 0 : (double)bits / total;
+	}
+
+	/**
+	 * Create the flat tree of the built tree: the leaves in the order of the symbols followed by the
+	 * parents in the order they were created, so the indexes of the builder are kept.
+	 */
+	public HoffmanFlatTree CreateFlatTree()
+	{
+		if ( root < 0 )
+			Build();
+		HoffmanFlatTree res = new HoffmanFlatTree( leaves);
+		for ( int i=0; i<leaves; ++i)
+			res.AddLeaf( symbols[i]);
+		for ( int i=leaves; i<counts.length; ++i)
+			res.AddParent( left[i], right[i]);
+		return res;
+	}
+
+	/** the tree kept in the int arrays of the flat tree, see CreateFlatTree */
+	public HoffmanTree CreateHoffmanTree()
+	{
+		return HoffmanTree.FromFlatTree( CreateFlatTree());
+	}
+}
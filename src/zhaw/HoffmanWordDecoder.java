@@ -0,0 +1,62 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the files written by the HoffmanWordEncoder: every decoded symbol is copied as the characters
+ * of its word or separator from the dictionary.
+ */
+public class HoffmanWordDecoder implements EncodedFileDecoder {
+
+	private final DataInputStream data;
+	private final Charset charset;
+	private final long symbolCount;
+	private final HoffmanWordModel model;
+
+	/**
+	 * Read the header of the input.
+	 *
+	 * @param model - the dictionary the text was encoded with
+	 */
+	public HoffmanWordDecoder( InputStream in, HoffmanWordModel model) throws IOException
+	{
+		this.model = model;
+		data = new DataInputStream( in);
+		charset = FormatHeader.Read( data, HoffmanWordEncoder.MAGIC, HoffmanWordEncoder.VERSION, "a word Hoffman file");
+		symbolCount = data.readLong();
+	}
+
+	public String format()
+	{
+		return "word";
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** the number of the encoded symbols */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/**
+	 * Decode all the symbols into the output.
+	 *
+	 * @return the number of the written symbols
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public long Decode( Writer out) throws IOException
+	{
+		new HoffmanDecoder( model.codeBook()).DecodeExpanded( data, out, model.Expansion(), model.ExpansionStarts(), symbolCount);
+		return symbolCount;
+	}
+}
@@ -0,0 +1,95 @@
+package zhaw;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/**
+ * Encodes a text with the codes of the words and separators of a HoffmanWordModel. The format of the .hencoded file:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		short  length of the charset name, followed by the name in ASCII
+ * 		long   number of the symbols (the characters, not the tokens)
+ * 		the bit stream, the last byte is filled with zero bits only if it is not full
+ *
+ * The front coded dictionary is stored in the .htable file next to it.
+ */
+public class HoffmanWordEncoder implements EncodedFileEncoder {
+
+	public static final int MAGIC = 0x48575244;   /// "HWRD"
+	public static final byte VERSION = 1;
+
+	private static final int READ_SIZE = 1 << 16;
+
+	private final HoffmanWordModel model;
+	private char[] token = new char[64];
+	private int tokenLength = 0;
+
+	/** @param model - the model counted from the text, with the built codes */
+	public HoffmanWordEncoder( HoffmanWordModel model)
+	{
+		this.model = model;
+	}
+
+	public String format()
+	{
+		return "word";
+	}
+
+	/**
+	 * Encode the text the model was counted from.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, OutputStream out) throws IOException
+	{
+		HoffmanEncoder codes = new HoffmanEncoder( model.codeBook());
+
+		DataOutputStream data = new DataOutputStream( out);
+		FormatHeader.Write( data, MAGIC, VERSION, charset);
+		data.writeLong( model.symbolCount());
+
+		char[] buffer = new char[READ_SIZE];
+		boolean word = false;
+		long symbols = 0;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			if ( symbols + n > model.symbolCount() )
+				throw new IOException( "The text has changed since it was counted.");
+			for ( int i=0; i<n; ++i)
+			{
+				char c = buffer[i];
+				boolean isWord = HoffmanWordModel.IsWordChar( c);
+				if ( isWord != word && tokenLength > 0 )
+					WriteToken( codes, data);
+				word = isWord;
+				if ( tokenLength == token.length )
+					token = Arrays.copyOf( token, tokenLength * 2);
+				token[tokenLength++] = c;
+			}
+			symbols += n;
+		}
+		if ( symbols != model.symbolCount() )
+			throw new IOException( "The text has changed since it was counted.");
+		if ( tokenLength > 0 )
+			WriteToken( codes, data);
+		codes.FinishBlock( data);
+		data.flush();
+		return symbols;
+	}
+
+	private void WriteToken( HoffmanEncoder codes, OutputStream out) throws IOException
+	{
+		int symbol = model.Symbol( token, tokenLength);
+		if ( symbol < 0 )
+			throw new IOException( "The word \"" + new String( token, 0, tokenLength) + "\" was not counted, the text has changed since it was counted.");
+		codes.Write( symbol, out);
+		tokenLength = 0;
+	}
+}
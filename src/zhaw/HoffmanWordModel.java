@@ -0,0 +1,394 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Word model of a natural language text: the text is split into tokens, the words (runs of letters and
+ * digits) and the separators between them (runs of all the other characters), and every distinct token
+ * gets one Hoffman code. The tokens are counted in an open addressing hash table over one char array
+ * holding the characters of all the distinct tokens, so millions of tokens need no String objects.
+ *
+ * The tokens are sorted for the dictionary, the symbol of a token is its index in the dictionary.
+ * The binary table format:
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		varint number of the tokens, then for every one in ascending order (front coded):
+ * 		       varint length of the prefix shared with the previous token, varint number of the other characters,
+ * 		       every other character as varint
+ * 		byte   code length of every token in the same order
+ */
+public class HoffmanWordModel implements CountedModel {
+
+	public static final int MAGIC = 0x48574454;   /// "HWDT"
+	public static final byte VERSION = 1;
+	/** the most distinct tokens, the decoding table keeps a symbol in 23 bits */
+	public static final int MAX_TOKENS = 1 << 23;
+
+	private static final int READ_SIZE = 1 << 16;
+	private static final int MIN_CAPACITY = 1 << 12;
+	private static final int MAX_INITIAL_CAPACITY = 1 << 22;
+
+	private char[] text;        /// the characters of the distinct tokens one after another
+	private int textLength = 0;
+	private int[] starts;       /// the start of every token in the text followed by the end of the last one
+	private int[] hashes;       /// of every token
+	private long[] counts;      /// of every token
+	private int size = 0;
+	private int[] slots;        /// token + 1 or 0 for an empty slot
+	private long symbolCount = 0;
+	private long tokenCount = 0;
+	private char[] token = new char[64];   /// the token being read
+	private int tokenLength = 0;
+
+	private HoffmanCodeBook codeBook;
+
+	/** @param expectedSymbols - about the number of the characters of the text, it sizes the hash table */
+	public HoffmanWordModel( long expectedSymbols)
+	{
+		int capacity = (int)Math.max( MIN_CAPACITY, Math.min( MAX_INITIAL_CAPACITY, expectedSymbols / 16));
+		capacity = Integer.highestOneBit( capacity - 1) << 1;
+		slots = new int[capacity];
+		starts = new int[capacity / 2 + 1];
+		hashes = new int[capacity / 2];
+		counts = new long[capacity / 2];
+		text = new char[capacity * 4];
+	}
+
+	/** the word characters, every other character belongs to a separator */
+	public static boolean IsWordChar( char c)
+	{
+		return Character.isLetterOrDigit( c);
+	}
+
+	/** count the tokens of the text */
+	public void Count( Reader in) throws IOException, UserErrorException
+	{
+		char[] buffer = new char[READ_SIZE];
+		boolean word = false;
+		int n;
+		while ((n = in.read( buffer)) != -1)
+		{
+			for ( int i=0; i<n; ++i)
+			{
+				char c = buffer[i];
+				boolean isWord = IsWordChar( c);
+				if ( isWord != word && tokenLength > 0 )
+					CountToken();
+				word = isWord;
+				Append( c);
+			}
+			symbolCount += n;
+		}
+		if ( tokenLength > 0 )
+			CountToken();
+	}
+
+	/** Add may grow the counts, so they are indexed after it */
+	private void CountToken() throws UserErrorException
+	{
+		int t = Add();
+		++counts[t];
+		++tokenCount;
+	}
+
+	private void Append( char c)
+	{
+		if ( tokenLength == token.length )
+			token = Arrays.copyOf( token, tokenLength * 2);
+		token[tokenLength++] = c;
+	}
+
+	/** add the read token if it is new, @return its index */
+	private int Add() throws UserErrorException
+	{
+		int hash = Hash( token, 0, tokenLength);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		while ( slots[slot] != 0 )
+		{
+			int t = slots[slot] - 1;
+			if ( hashes[t] == hash && Equals( t, token, tokenLength) )
+			{
+				tokenLength = 0;
+				return t;
+			}
+			slot = (slot + 1) & mask;
+		}
+		if ( size == MAX_TOKENS )
+			throw new UserErrorException( "The text has more than " + MAX_TOKENS + " distinct words and separators.");
+		if ( size == hashes.length )
+		{
+			hashes = Arrays.copyOf( hashes, size * 2);
+			counts = Arrays.copyOf( counts, size * 2);
+			starts = Arrays.copyOf( starts, size * 2 + 1);
+		}
+		if ( textLength + tokenLength > text.length )
+			text = Arrays.copyOf( text, Math.max( text.length * 2, textLength + tokenLength));
+		System.arraycopy( token, 0, text, textLength, tokenLength);
+		starts[size] = textLength;
+		textLength += tokenLength;
+		starts[size + 1] = textLength;
+		hashes[size] = hash;
+		slots[slot] = size + 1;
+		tokenLength = 0;
+		if ( ++size * 2 > slots.length )
+			Rehash( slots.length * 2);
+		return size - 1;
+	}
+
+	private void Rehash( int capacity)
+	{
+		int[] res = new int[capacity];
+		int mask = res.length - 1;
+		for ( int t=0; t<size; ++t)
+		{
+			int slot = hashes[t] & mask;
+			while ( res[slot] != 0 )
+				slot = (slot + 1) & mask;
+			res[slot] = t + 1;
+		}
+		slots = res;
+	}
+
+	/**
+	 * The symbol of the token, its index in the dictionary once the codes are built.
+	 *
+	 * @return -1 if the token was not counted
+	 */
+	public int Symbol( char[] chars, int length)
+	{
+		int hash = Hash( chars, 0, length);
+		int mask = slots.length - 1;
+		for ( int slot = hash & mask; slots[slot] != 0; slot = (slot + 1) & mask)
+		{
+			int t = slots[slot] - 1;
+			if ( hashes[t] == hash && Equals( t, chars, length) )
+				return t;
+		}
+		return -1;
+	}
+
+	private static int Hash( char[] chars, int from, int to)
+	{
+		int h = 0;
+		for ( int i=from; i<to; ++i)
+			h = 31 * h + chars[i];
+		// spread the bits, the slot is taken from the lowest ones
+		h ^= h >>> 16;
+		h *= 0x85EBCA6B;
+		h ^= h >>> 13;
+		return h;
+	}
+
+	private boolean Equals( int t, char[] chars, int length)
+	{
+		int start = starts[t];
+		if ( starts[t + 1] - start != length )
+			return false;
+		for ( int i=0; i<length; ++i)
+			if ( text[start + i] != chars[i] )
+				return false;
+		return true;
+	}
+
+	/** sort the tokens for the dictionary and build their canonical codes */
+	public void BuildCodes() throws UserErrorException
+	{
+		if ( size == 0 )
+			throw new UserErrorException( "There are no words to build the codes of.");
+		int[] order = SortedTokens();
+		// keep the tokens in the order of the dictionary, the symbol of a token is its index then
+		char[] sortedText = new char[textLength];
+		int[] sortedStarts = new int[size + 1];
+		int[] sortedHashes = new int[size];
+		long[] sortedCounts = new long[size];
+		int pos = 0;
+		for ( int i=0; i<size; ++i)
+		{
+			int t = order[i];
+			int length = starts[t + 1] - starts[t];
+			System.arraycopy( text, starts[t], sortedText, pos, length);
+			sortedStarts[i] = pos;
+			pos += length;
+			sortedHashes[i] = hashes[t];
+			sortedCounts[i] = counts[t];
+		}
+		sortedStarts[size] = pos;
+		text = sortedText;
+		starts = sortedStarts;
+		hashes = sortedHashes;
+		counts = sortedCounts;
+		Rehash( slots.length);
+		int[] sortedSymbols = new int[size];
+		for ( int i=0; i<size; ++i)
+			sortedSymbols[i] = i;
+		codeBook = new HoffmanTreeBuilder( sortedSymbols, counts).CanonicalCodeBook();
+	}
+
+	/** the indexes of the tokens in the order of their characters, merge sorted without boxing */
+	private int[] SortedTokens()
+	{
+		int[] res = new int[size];
+		for ( int i=0; i<size; ++i)
+			res[i] = i;
+		int[] buffer = new int[size];
+		for ( int width=1; width<size; width*=2)
+		{
+			for ( int from=0; from<size; from+=2*width)
+			{
+				int middle = Math.min( from + width, size);
+				int to = Math.min( from + 2 * width, size);
+				int a = from, b = middle, k = from;
+				while ( a < middle && b < to )
+					buffer[k++] = Compare( res[b], res[a]) < 0 ? res[b++] : res[a++];
+				while ( a < middle )
+					buffer[k++] = res[a++];
+				while ( b < to )
+					buffer[k++] = res[b++];
+			}
+			int[] swap = res;
+			res = buffer;
+			buffer = swap;
+		}
+		return res;
+	}
+
+	private int Compare( int a, int b)
+	{
+		int startA = starts[a], lengthA = starts[a + 1] - startA;
+		int startB = starts[b], lengthB = starts[b + 1] - startB;
+		int length = Math.min( lengthA, lengthB);
+		for ( int i=0; i<length; ++i)
+			if ( text[startA + i] != text[startB + i] )
+				return text[startA + i] - text[startB + i];
+		return lengthA - lengthB;
+	}
+
+	/** the number of the counted characters */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/** the number of the counted tokens */
+	public long tokenCount()
+	{
+		return tokenCount;
+	}
+
+	/** the number of the distinct tokens */
+	public int size()
+	{
+		return size;
+	}
+
+	/** the codes of the tokens, null before BuildCodes */
+	public HoffmanCodeBook codeBook()
+	{
+		return codeBook;
+	}
+
+	/** the characters of all the tokens in the order of their symbols */
+	public char[] Expansion()
+	{
+		return text;
+	}
+
+	/** the start of every token in the Expansion followed by the end of the last one */
+	public int[] ExpansionStarts()
+	{
+		return starts;
+	}
+
+	/** the entropy of the counted tokens in bits per character */
+	public double Entropy()
+	{
+		return symbolCount == 0 ? 0 : EntropyEngine.Entropy( Arrays.copyOf( counts, size), tokenCount) * tokenCount / symbolCount;
+	}
+
+	/** the average code length of the counted tokens in bits per character */
+	public double CodedBitsPerSymbol()
+	{
+		double bits = 0;
+		for ( int i=0; i<codeBook.size(); ++i)
+			bits += (double)counts[codeBook.symbol( i)] * codeBook.length( i);
+		return symbolCount == 0 ? 0 : bits / symbolCount;
+	}
+
+	/** write the front coded dictionary and the code lengths, the codes have to be built */
+	public void Write( DataOutputStream out) throws IOException
+	{
+		int[] lengths = new int[size];
+		for ( int i=0; i<codeBook.size(); ++i)
+			lengths[codeBook.symbol( i)] = codeBook.length( i);
+		out.writeInt( MAGIC);
+		out.writeByte( VERSION);
+		HoffmanCodeBook.WriteVarInt( out, size);
+		for ( int t=0; t<size; ++t)
+		{
+			int start = starts[t];
+			int length = starts[t + 1] - start;
+			int shared = 0;
+			if ( t > 0 )
+			{
+				int previous = starts[t - 1];
+				int max = Math.min( length, start - previous);
+				while ( shared < max && text[previous + shared] == text[start + shared] )
+					++shared;
+			}
+			HoffmanCodeBook.WriteVarInt( out, shared);
+			HoffmanCodeBook.WriteVarInt( out, length - shared);
+			for ( int i=shared; i<length; ++i)
+				HoffmanCodeBook.WriteVarInt( out, text[start + i]);
+		}
+		for ( int t=0; t<size; ++t)
+			out.writeByte( lengths[t]);
+	}
+
+	/** read the dictionary written by Write, the model has no counts then */
+	public static HoffmanWordModel Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		if ( in.readInt() != MAGIC )
+			throw new UserErrorException( "The file is not a word Hoffman table.");
+		int version = in.readByte();
+		if ( version != VERSION )
+			throw new UserErrorException( "Unsupported word Hoffman table version " + version + ".");
+		int n = HoffmanCodeBook.ReadVarInt( in);
+		if ( n <= 0 || n > MAX_TOKENS )
+			throw new UserErrorException( "Invalid number " + n + " of the words in the word Hoffman table.");
+		HoffmanWordModel res = new HoffmanWordModel( 0);
+		res.starts = new int[n + 1];
+		int pos = 0;
+		for ( int t=0; t<n; ++t)
+		{
+			int shared = HoffmanCodeBook.ReadVarInt( in);
+			int length = shared + HoffmanCodeBook.ReadVarInt( in);
+			if ( shared < 0 || length <= 0 || (t == 0 ? shared > 0 : shared > pos - res.starts[t - 1]) )
+				throw new UserErrorException( "Invalid word " + t + " in the word Hoffman table.");
+			if ( pos + length > res.text.length )
+				res.text = Arrays.copyOf( res.text, Math.max( res.text.length * 2, pos + length));
+			if ( shared > 0 )
+				System.arraycopy( res.text, res.starts[t - 1], res.text, pos, shared);
+			for ( int i=shared; i<length; ++i)
+				res.text[pos + i] = (char)HoffmanCodeBook.ReadVarInt( in);
+			res.starts[t] = pos;
+			pos += length;
+		}
+		res.starts[n] = pos;
+		res.textLength = pos;
+		res.size = n;
+		int[] symbols = new int[n];
+		int[] lengths = new int[n];
+		for ( int t=0; t<n; ++t)
+		{
+			symbols[t] = t;
+			lengths[t] = in.readUnsignedByte();
+		}
+		res.codeBook = HoffmanCodeBook.Canonical( symbols, lengths);
+		return res;
+	}
+}
@@ -0,0 +1,66 @@
+package zhaw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * Channel compressing the written bytes into the stream format of HoffmanOutputStream.
+ */
+public class HoffmanWritableChannel implements WritableByteChannel {
+
+	private final HoffmanOutputStream out;
+	private final byte[] buffer = new byte[1 << 16];
+	private boolean open = true;
+
+	/** see HoffmanOutputStream */
+	public HoffmanWritableChannel( WritableByteChannel channel, HoffmanCodeBook codeBook, boolean embedTable) throws IOException
+	{
+		out = new HoffmanOutputStream( Channels.newOutputStream( channel), codeBook, embedTable);
+	}
+
+	@Override
+	public int write( ByteBuffer src) throws IOException
+	{
+		if ( ! open )
+			throw new ClosedChannelException();
+		int written = src.remaining();
+		if ( src.hasArray() )
+		{
+			out.write( src.array(), src.arrayOffset() + src.position(), written);
+			src.position( src.limit());
+			return written;
+		}
+		while ( src.hasRemaining() )
+		{
+			int n = Math.min( src.remaining(), buffer.length);
+			src.get( buffer, 0, n);
+			out.write( buffer, 0, n);
+		}
+		return written;
+	}
+
+	/** encode the bytes written till now as a frame */
+	public void Flush() throws IOException
+	{
+		out.flush();
+	}
+
+	@Override
+	public boolean isOpen()
+	{
+		return open;
+	}
+
+	/** write the end of the stream and close the underlying channel */
+	@Override
+	public void close() throws IOException
+	{
+		if ( ! open )
+			return;
+		open = false;
+		out.close();
+	}
+}
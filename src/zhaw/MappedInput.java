@@ -0,0 +1,119 @@
+package zhaw;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Helpers for reading an input file through memory mapped windows of a FileChannel,
+ * so the file content does not have to be copied into the heap.
+ *
+ * A file is cut into windows only at character borders, which can be found from the bytes
+ * for the single byte charsets and for UTF-8.
+ */
+public class MappedInput {
+
+	/** the biggest range which is mapped at once */
+	public static final long MAX_WINDOW = 1L << 30;
+
+	/** ISO-8859-1 maps every byte to the char with the same value, so the bytes do not need any decoding */
+	public static boolean IsRawBytes( Charset charset)
+	{
+		return StandardCharsets.ISO_8859_1.equals( charset);
+	}
+
+	/** the decoder which replaces the malformed input like the Readers do, null for the raw bytes */
+	public static CharsetDecoder NewDecoder( Charset charset)
+	{
+		if ( IsRawBytes( charset) )
+			return null;
+		return charset.newDecoder()
+				.onMalformedInput( CodingErrorAction.REPLACE)
+				.onUnmappableCharacter( CodingErrorAction.REPLACE);
+	}
+
+	/** the files in this charset can be cut at any character border */
+	public static boolean CanSplit( Charset charset)
+	{
+		if ( StandardCharsets.UTF_8.equals( charset) )
+			return true;
+		try {
+			return charset.newEncoder().maxBytesPerChar() == 1.0f;
+		} catch ( UnsupportedOperationException ex)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Cut the file into ranges of about the given size.
+	 *
+	 * @return the positions where the ranges start followed by the file size;
+	 * 		only one range if the charset can not be split
+	 */
+	public static long[] Ranges( FileChannel channel, Charset charset, long rangeSize) throws IOException
+	{
+		return Ranges( channel, charset, 0, channel.size(), rangeSize);
+	}
+
+	/** cut the part of the file from the position to the end position (exclusive) into ranges of about the given size */
+	public static long[] Ranges( FileChannel channel, Charset charset, long from, long to, long rangeSize) throws IOException
+	{
+		if ( ! CanSplit( charset) )
+			return new long[] { from, to };
+		int count = (int)Math.max( 1, (to - from + rangeSize - 1) / rangeSize);
+		long[] bounds = new long[count + 1];
+		bounds[0] = from;
+		for ( int i=1; i<count; ++i)
+			bounds[i] = CharBorder( channel, from + (long)i * rangeSize, charset);
+		bounds[count] = to;
+		return bounds;
+	}
+
+	/**
+	 * The end of the last complete character at the end position or before it, e.g. of a file which is
+	 * being appended: a UTF-8 character whose bytes are not all written yet is left out.
+	 */
+	public static long CompleteEnd( FileChannel channel, long end, Charset charset) throws IOException
+	{
+		if ( ! StandardCharsets.UTF_8.equals( charset) || end == 0 )
+			return end;
+		int n = (int)Math.min( 4, end);
+		ByteBuffer probe = ByteBuffer.allocate( n);
+		channel.read( probe, end - n);
+		// find the lead byte of the last character
+		int lead = n - 1;
+		while ( lead > 0 && (probe.get( lead) & 0xC0) == 0x80 )
+			--lead;
+		int b = probe.get( lead) & 0xFF;
+		int length = b < 0x80 ? 1 : b >= 0xF0 ? 4 : b >= 0xE0 ? 3 : b >= 0xC0 ? 2 : 1;
+		return lead + length > n ? end - n + lead : end;
+	}
+
+	/** the first character border at the position or after it */
+	static long CharBorder( FileChannel channel, long pos, Charset charset) throws IOException
+	{
+		if ( ! StandardCharsets.UTF_8.equals( charset) )
+			return pos;
+		// move the border behind the continuation bytes (10xxxxxx) of a multi byte character
+		ByteBuffer probe = ByteBuffer.allocate( 4);
+		channel.read( probe, pos);
+		int skip = 0;
+		while ( skip < probe.position() && (probe.get( skip) & 0xC0) == 0x80 )
+			++skip;
+		return pos + skip;
+	}
+
+	/** map the range of the file for reading, it can not be longer than MAX_WINDOW */
+	public static MappedByteBuffer Map( FileChannel channel, long from, long to) throws IOException
+	{
+		if ( to - from > MAX_WINDOW )
+			throw new IOException( "The range of " + (to - from) + " bytes is too big to be mapped at once.");
+		return channel.map( FileChannel.MapMode.READ_ONLY, from, to - from);
+	}
+}
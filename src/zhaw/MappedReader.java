@@ -0,0 +1,72 @@
+package zhaw;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+
+/**
+ * Reader decoding the characters of a file directly from its memory mapped windows.
+ * The ISO-8859-1 characters are taken from the bytes without any decoding.
+ */
+public class MappedReader extends Reader {
+
+	private final FileChannel channel;
+	private final long[] windows;
+	private final CharsetDecoder decoder;   /// null for the raw bytes
+	private int window = -1;
+	private ByteBuffer bytes = null;
+	private boolean flushed = false;
+
+	/** the channel stays open when the reader is closed */
+	public MappedReader( FileChannel channel, Charset charset) throws IOException
+	{
+		this.channel = channel;
+		this.windows = MappedInput.Ranges( channel, charset, MappedInput.MAX_WINDOW);
+		this.decoder = MappedInput.NewDecoder( charset);
+	}
+
+	@Override
+	public int read( char[] cbuf, int off, int len) throws IOException
+	{
+		if ( len == 0 )
+			return 0;
+		while (true)
+		{
+			boolean last = window == windows.length - 2;
+			if ( bytes != null && ! flushed )
+			{
+				int n;
+				if ( decoder == null )
+				{
+					n = Math.min( len, bytes.remaining());
+					for ( int i=0; i<n; ++i)
+						cbuf[off + i] = (char)(bytes.get() & 0xFF);
+				}
+				else
+				{
+					CharBuffer out = CharBuffer.wrap( cbuf, off, len);
+					decoder.decode( bytes, out, last);
+					if ( last && ! bytes.hasRemaining() && ! flushed )
+						flushed = decoder.flush( out).isUnderflow();
+					n = out.position() - off;
+				}
+				if ( n > 0 )
+					return n;
+			}
+			// the current window is used up (the windows end at character borders)
+			if ( last )
+				return -1;
+			++window;
+			bytes = MappedInput.Map( channel, windows[window], windows[window + 1]);
+		}
+	}
+
+	@Override
+	public void close()
+	{
+	}
+}
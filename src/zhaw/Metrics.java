@@ -0,0 +1,235 @@
+package zhaw;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Collects the wall time, the CPU time, the allocated bytes, the bytes in and out and the symbols
+ * of every phase of a run (count, probabilities, tree, serialize, encode, deserialize, decode).
+ * The runs of a phase are summed up, e.g. over the files of a batch.
+ *
+ * The CPU time and the allocated bytes are summed up over all the live threads of the JVM, so they
+ * include the work of the pool threads (the blocks encoded or decoded in parallel, the parallel counting).
+ * The phases running at the same time, e.g. the files of a batch, count the work of each other too.
+ * The metrics are available as the MXBean OBJECT_NAME and as a JSON summary.
+ */
+public class Metrics implements MetricsMXBean {
+
+	public static final String COUNT = "count";
+	public static final String PROBABILITIES = "probabilities";
+	public static final String TREE = "tree";
+	public static final String SERIALIZE = "serialize";
+	public static final String ENCODE = "encode";
+	public static final String DESERIALIZE = "deserialize";
+	public static final String DECODE = "decode";
+	public static final String OBJECT_NAME = "zhaw:type=Metrics";
+
+	private static final Metrics instance = new Metrics();
+	private static boolean registered = false;
+
+	private final ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+	private final Map<String, PhaseMetrics> phases = new LinkedHashMap<>();   /// in the order the phases were first run
+
+	/** the summed up metrics of one phase */
+	public static class PhaseMetrics {
+		private final String name;
+		private long runs;
+		private long wallNanos;
+		private long cpuNanos;
+		private long allocatedBytes;
+		private long bytesIn;
+		private long bytesOut;
+		private long symbols;
+
+		PhaseMetrics( String name)
+		{
+			this.name = name;
+		}
+
+		public String getName()              { return name; }
+		public long getRuns()                { return runs; }
+		public long getWallNanos()           { return wallNanos; }
+		/** -1 if the JVM does not measure the CPU time of the threads */
+		public long getCpuNanos()            { return cpuNanos; }
+		/** -1 if the JVM does not measure the allocations of the threads */
+		public long getAllocatedBytes()      { return allocatedBytes; }
+		public long getBytesIn()             { return bytesIn; }
+		public long getBytesOut()            { return bytesOut; }
+		public long getSymbols()             { return symbols; }
+
+		public double getBytesPerSecond()
+		{
+			return bytesIn / (Math.max( wallNanos, 1) / 1e9);
+		}
+
+		public double getSymbolsPerSecond()
+		{
+			return symbols / (Math.max( wallNanos, 1) / 1e9);
+		}
+
+		/** the output bytes per input byte, 0 if the phase has no input bytes */
+		public double getCompressionRatio()
+		{
+			return bytesIn == 0 ? 0 : (double)bytesOut / bytesIn;
+		}
+
+		PhaseMetrics Copy()
+		{
+			PhaseMetrics res = new PhaseMetrics( name);
+			res.runs = runs;
+			res.wallNanos = wallNanos;
+			res.cpuNanos = cpuNanos;
+			res.allocatedBytes = allocatedBytes;
+			res.bytesIn = bytesIn;
+			res.bytesOut = bytesOut;
+			res.symbols = symbols;
+			return res;
+		}
+	}
+
+	/** one run of a phase, started by Metrics.Start */
+	public static class Timer {
+		private final String phase;
+		private final long wallStart;
+		private final long cpuStart;
+		private final long allocatedStart;
+
+		private Timer( String phase)
+		{
+			this.phase = phase;
+			this.cpuStart = instance.CpuNanos();
+			this.allocatedStart = instance.AllocatedBytes();
+			this.wallStart = System.nanoTime();
+		}
+
+		/**
+		 * Record the run, a run which is not stopped (e.g. because of an error) is not recorded.
+		 *
+		 * @param bytesIn - the bytes read by the phase
+		 * @param bytesOut - the bytes written by the phase
+		 * @param symbols - the symbols processed by the phase
+		 */
+		public void Stop( long bytesIn, long bytesOut, long symbols)
+		{
+			long wall = System.nanoTime() - wallStart;
+			// the threads ended during the run take their counts with them
+			long cpu = cpuStart < 0 ? -1 : Math.max( 0, instance.CpuNanos() - cpuStart);
+			long allocated = allocatedStart < 0 ? -1 : Math.max( 0, instance.AllocatedBytes() - allocatedStart);
+			instance.Add( phase, wall, cpu, allocated, bytesIn, bytesOut, symbols);
+		}
+	}
+
+	private Metrics()
+	{
+	}
+
+	/** the metrics of this JVM */
+	public static Metrics get()
+	{
+		return instance;
+	}
+
+	/** start a run of the phase */
+	public static Timer Start( String phase)
+	{
+		return new Timer( phase);
+	}
+
+	/** register the metrics as the MXBean OBJECT_NAME of the platform MBean server, only the first call registers it */
+	public static synchronized void Register() throws UserErrorException
+	{
+		if ( registered )
+			return;
+		try {
+			ManagementFactory.getPlatformMBeanServer().registerMBean( instance, new ObjectName( OBJECT_NAME));
+			registered = true;
+		} catch ( JMException ex)
+		{
+			throw new UserErrorException( "metrics MBean registration failed: " + ex.getMessage());
+		}
+	}
+
+	/** the CPU time of all the live threads, or -1 if it is not measured */
+	private long CpuNanos()
+	{
+		if ( ! threads.isThreadCpuTimeSupported() || ! threads.isThreadCpuTimeEnabled() )
+			return -1;
+		long sum = 0;
+		for ( long id : threads.getAllThreadIds())
+			sum += Math.max( 0, threads.getThreadCpuTime( id));   // -1 for the ended threads
+		return sum;
+	}
+
+	/** the bytes allocated by all the live threads, or -1 if they are not measured */
+	private long AllocatedBytes()
+	{
+		if ( ! (threads instanceof com.sun.management.ThreadMXBean) )
+			return -1;
+		com.sun.management.ThreadMXBean allocations = (com.sun.management.ThreadMXBean)threads;
+		if ( ! allocations.isThreadAllocatedMemorySupported() || ! allocations.isThreadAllocatedMemoryEnabled() )
+			return -1;
+		long sum = 0;
+		for ( long bytes : allocations.getThreadAllocatedBytes( threads.getAllThreadIds()))
+			sum += Math.max( 0, bytes);
+		return sum;
+	}
+
+	private synchronized void Add( String phase, long wall, long cpu, long allocated, long bytesIn, long bytesOut, long symbols)
+	{
+		PhaseMetrics m = phases.get( phase);
+		if ( m == null )
+			phases.put( phase, m = new PhaseMetrics( phase));
+		++m.runs;
+		m.wallNanos += wall;
+		m.cpuNanos = cpu < 0 || m.cpuNanos < 0 ? -1 : m.cpuNanos + cpu;
+		m.allocatedBytes = allocated < 0 || m.allocatedBytes < 0 ? -1 : m.allocatedBytes + allocated;
+		m.bytesIn += bytesIn;
+		m.bytesOut += bytesOut;
+		m.symbols += symbols;
+	}
+
+	@Override
+	public synchronized List<PhaseMetrics> getPhases()
+	{
+		List<PhaseMetrics> res = new ArrayList<>();
+		for ( PhaseMetrics m : phases.values())
+			res.add( m.Copy());
+		return res;
+	}
+
+	@Override
+	public String getSummaryJson()
+	{
+		StringBuilder res = new StringBuilder( "{\"phases\":[");
+		List<PhaseMetrics> all = getPhases();
+		long wallNanos = 0;
+		for ( int i=0; i<all.size(); ++i)
+		{
+			PhaseMetrics m = all.get( i);
+			wallNanos += m.wallNanos;
+			if ( i > 0 )
+				res.append( ',');
+			res.append( String.format( Locale.ROOT,
+					"{\"name\":\"%s\",\"runs\":%d,\"wallNanos\":%d,\"cpuNanos\":%d,\"allocatedBytes\":%d,\"bytesIn\":%d,\"bytesOut\":%d,\"symbols\":%d,"
+					+ "\"bytesPerSecond\":%.1f,\"symbolsPerSecond\":%.1f,\"compressionRatio\":%.6f}",
+					m.name, m.runs, m.wallNanos, m.cpuNanos, m.allocatedBytes, m.bytesIn, m.bytesOut, m.symbols,
+					m.getBytesPerSecond(), m.getSymbolsPerSecond(), m.getCompressionRatio()));
+		}
+		res.append( "],\"wallNanos\":").append( wallNanos).append( '}');
+		return res.toString();
+	}
+
+	@Override
+	public synchronized void Reset()
+	{
+		phases.clear();
+	}
+}
@@ -0,0 +1,18 @@
+package zhaw;
+
+import java.util.List;
+
+/**
+ * The management interface of the Metrics, registered as Metrics.OBJECT_NAME.
+ */
+public interface MetricsMXBean {
+
+	/** the summed up metrics of every phase in the order the phases were first run */
+	List<Metrics.PhaseMetrics> getPhases();
+
+	/** the metrics of all the phases as one JSON object */
+	String getSummaryJson();
+
+	/** forget the recorded runs */
+	void Reset();
+}
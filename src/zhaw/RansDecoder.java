@@ -0,0 +1,132 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+/**
+ * Decodes the files written by the RansEncoder. Every symbol costs one lookup in the slot table of the
+ * model, a multiplication and the renormalization; the two states are independent, so their lookups
+ * run interleaved.
+ */
+public class RansDecoder implements EncodedFileDecoder {
+
+	private final DataInputStream data;
+	private final Charset charset;
+	private final long symbolCount;
+	private final RansModel model;
+
+	/** read the header and the model of the input */
+	public RansDecoder( InputStream in) throws IOException, UserErrorException
+	{
+		data = new DataInputStream( in);
+		charset = FormatHeader.Read( data, RansEncoder.MAGIC, RansEncoder.VERSION, "a rANS file");
+		symbolCount = data.readLong();
+		model = RansModel.Read( data);
+	}
+
+	public String format()
+	{
+		return "rANS";
+	}
+
+	/** the charset of the encoded text */
+	public Charset charset()
+	{
+		return charset;
+	}
+
+	/** the number of the encoded symbols */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	public RansModel model()
+	{
+		return model;
+	}
+
+	/**
+	 * Decode all the symbols into the output.
+	 *
+	 * @return the number of the written symbols
+	 * @throws EOFException if the input ends before all the symbols are decoded
+	 */
+	public long Decode( Writer out) throws IOException
+	{
+		char[] chunk = new char[(int)Math.max( 1, Math.min( RansEncoder.CHUNK_SYMBOLS, symbolCount))];
+		byte[] bytes = new byte[2 * chunk.length + 8];
+		long symbols = 0;
+		while ( symbols < symbolCount )
+		{
+			int n = data.readInt();
+			int length = data.readInt();
+			if ( n <= 0 || n > chunk.length || n > symbolCount - symbols || length < 8 || length > bytes.length )
+				throw new IOException( "Invalid rANS chunk of " + n + " symbols in " + length + " bytes.");
+			data.readFully( bytes, 0, length);
+			DecodeChunk( bytes, length, chunk, n);
+			out.write( chunk, 0, n);
+			symbols += n;
+		}
+		return symbols;
+	}
+
+	private void DecodeChunk( byte[] bytes, int length, char[] out, int count) throws IOException
+	{
+		long[] slots = model.Slots();
+		int probBits = model.probBits();
+		int mask = (1 << probBits) - 1;
+		int x0 = ReadInt( bytes, 0);
+		int x1 = ReadInt( bytes, 4);
+		int pos = 8;
+		int i = 0;
+		for ( ; i + 1 < count; i += 2)
+		{
+			long slot0 = slots[x0 & mask];
+			long slot1 = slots[x1 & mask];
+			out[i] = (char)slot0;
+			out[i + 1] = (char)slot1;
+			x0 = (int)(slot0 >>> 16 & 0x1FFFF) * (x0 >>> probBits) + (int)(slot0 >>> 33);
+			x1 = (int)(slot1 >>> 16 & 0x1FFFF) * (x1 >>> probBits) + (int)(slot1 >>> 33);
+			if ( pos + 4 <= length )
+			{
+				// at most two bytes per state, no bound checks needed
+				while ( x0 < RansEncoder.L )
+					x0 = (x0 << 8) | (bytes[pos++] & 0xFF);
+				while ( x1 < RansEncoder.L )
+					x1 = (x1 << 8) | (bytes[pos++] & 0xFF);
+				continue;
+			}
+			while ( x0 < RansEncoder.L )
+				x0 = (x0 << 8) | NextByte( bytes, pos++, length);
+			while ( x1 < RansEncoder.L )
+				x1 = (x1 << 8) | NextByte( bytes, pos++, length);
+		}
+		if ( i < count )
+		{
+			long slot0 = slots[x0 & mask];
+			out[i] = (char)slot0;
+			x0 = (int)(slot0 >>> 16 & 0x1FFFF) * (x0 >>> probBits) + (int)(slot0 >>> 33);
+			while ( x0 < RansEncoder.L )
+				x0 = (x0 << 8) | NextByte( bytes, pos++, length);
+		}
+		if ( pos != length || x0 != RansEncoder.L || x1 != RansEncoder.L )
+			throw new IOException( "The rANS chunk is corrupted.");
+	}
+
+	private static int NextByte( byte[] bytes, int pos, int length) throws EOFException
+	{
+		if ( pos >= length )
+			throw new EOFException( "The rANS chunk ends before all its symbols are decoded.");
+		return bytes[pos] & 0xFF;
+	}
+
+	private static int ReadInt( byte[] bytes, int pos)
+	{
+		return (bytes[pos] & 0xFF) << 24 | (bytes[pos + 1] & 0xFF) << 16 | (bytes[pos + 2] & 0xFF) << 8 | (bytes[pos + 3] & 0xFF);
+	}
+}
@@ -0,0 +1,125 @@
+package zhaw;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.Charset;
+
+/**
+ * Encodes a text with the byte-wise rANS coder and the frequencies of a RansModel. The rANS coder
+ * writes the symbols in the reversed order, so the text is encoded in chunks which are each encoded
+ * backwards. Two states take turns with the symbols, so the decoder can work on two at once.
+ * The format of the .hencoded file:
+ *
+ * 		int    MAGIC
+ * 		byte   VERSION
+ * 		short  length of the charset name, followed by the name in ASCII
+ * 		long   number of the symbols
+ * 		the model, see RansModel.Write
+ * 		the chunks, every one:
+ * 		int    number of the symbols
+ * 		int    number of the bytes, followed by the bytes: the two final states, then the renormalized bytes
+ *
+ * No .htable file is needed, the model is stored in the header.
+ */
+public class RansEncoder implements EncodedFileEncoder {
+
+	public static final int MAGIC = 0x48524E53;   /// "HRNS"
+	public static final byte VERSION = 1;
+
+	/** the lower bound of the states, they are kept in [L, 2^31) */
+	static final int L = 1 << 23;
+	static final int CHUNK_SYMBOLS = 1 << 20;
+
+	private final RansModel model;
+
+	/** @param model - the model counted from the text */
+	public RansEncoder( RansModel model)
+	{
+		this.model = model;
+	}
+
+	public String format()
+	{
+		return "rANS";
+	}
+
+	/**
+	 * Encode the text the model was counted from.
+	 *
+	 * @param charset - the charset of the text, it is stored for the decoding
+	 * @return the number of the encoded symbols
+	 */
+	public long Encode( Reader in, Charset charset, OutputStream out) throws IOException
+	{
+		long symbolCount = model.symbolCount();
+		DataOutputStream data = new DataOutputStream( out);
+		FormatHeader.Write( data, MAGIC, VERSION, charset);
+		data.writeLong( symbolCount);
+		model.Write( data);
+
+		char[] chunk = new char[(int)Math.max( 1, Math.min( CHUNK_SYMBOLS, symbolCount))];
+		// a symbol takes at most probBits bits, so 2 bytes per symbol and the two states always fit
+		byte[] buffer = new byte[2 * chunk.length + 8];
+		long symbols = 0;
+		int n;
+		while ((n = ReadChunk( in, chunk)) > 0)
+		{
+			if ( symbols + n > symbolCount )
+				throw new IOException( "The text has changed since it was counted.");
+			int start = EncodeChunk( chunk, n, buffer);
+			data.writeInt( n);
+			data.writeInt( buffer.length - start);
+			data.write( buffer, start, buffer.length - start);
+			symbols += n;
+		}
+		if ( symbols != symbolCount )
+			throw new IOException( "The text has changed since it was counted.");
+		data.flush();
+		return symbols;
+	}
+
+	private static int ReadChunk( Reader in, char[] chunk) throws IOException
+	{
+		int n = 0;
+		int read;
+		while ( n < chunk.length && (read = in.read( chunk, n, chunk.length - n)) != -1)
+			n += read;
+		return n;
+	}
+
+	/**
+	 * Encode the symbols from the last one into the end of the buffer, the symbol i with the state i % 2.
+	 *
+	 * @return the index of the first written byte
+	 */
+	private int EncodeChunk( char[] chunk, int n, byte[] buffer) throws IOException
+	{
+		int[] frequencies = model.SymbolFrequencies();
+		int[] starts = model.SymbolStarts();
+		int probBits = model.probBits();
+		long[] states = { L, L };
+		int pos = buffer.length;
+		for ( int i=n-1; i>=0; --i)
+		{
+			char symbol = chunk[i];
+			int frequency = symbol < frequencies.length ? frequencies[symbol] : 0;
+			if ( frequency == 0 )
+				throw new IOException( "The symbol " + (int)symbol + " has no rANS frequency, the text has changed since it was counted.");
+			long x = states[i & 1];
+			long max = ((long)(L >>> probBits) << 8) * frequency;
+			while ( x >= max )
+			{
+				buffer[--pos] = (byte)x;
+				x >>>= 8;
+			}
+			states[i & 1] = ((x / frequency) << probBits) + (x % frequency) + starts[symbol];
+		}
+		// the decoder reads the state 0 first
+		for ( int s=1; s>=0; --s)
+			for ( int k=0; k<4; ++k)
+				buffer[--pos] = (byte)(states[s] >>> (8 * k));
+		return pos;
+	}
+}
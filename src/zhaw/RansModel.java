@@ -0,0 +1,230 @@
+package zhaw;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * The symbol frequencies of the rANS coder, scaled from the occurrence counts to sum up to 2^probBits.
+ * Unlike the Hoffman codes a symbol costs probBits - log2(frequency) bits, not a whole number of bits,
+ * so the coded size comes close to the entropy also for the very skewed distributions.
+ *
+ * The decoder looks up the slot (the lowest probBits bits of its state) in one table giving the
+ * symbol, its frequency and the distance of the slot from the start of the symbol at once.
+ */
+public class RansModel {
+
+	public static final int MIN_PROB_BITS = 12;
+	public static final int MAX_PROB_BITS = 16;
+
+	private final int probBits;
+	private final int[] symbols;      /// in ascending order
+	private final int[] frequencies;
+	private long symbolCount = -1;                  /// the sum of the counts the model was scaled from
+	private double entropy = Double.NaN;
+	private double codedBitsPerSymbol = Double.NaN;
+
+	private int[] symbolFrequency;   /// indexed by the symbol, 0 if the symbol has none
+	private int[] symbolStart;
+	private long[] slots;            /// (slot - start) << 33 | frequency << 16 | symbol
+
+	private RansModel( int probBits, int[] symbols, int[] frequencies) throws UserErrorException
+	{
+		this.probBits = probBits;
+		this.symbols = symbols;
+		this.frequencies = frequencies;
+		long sum = 0;
+		for ( int i=0; i<symbols.length; ++i)
+		{
+			if ( frequencies[i] <= 0 || symbols[i] < 0 || symbols[i] >= FrequencyCounter.ALPHABET_SIZE || (i > 0 && symbols[i] <= symbols[i - 1]) )
+				throw new UserErrorException( "Invalid rANS frequency " + frequencies[i] + " of the symbol " + symbols[i] + ".");
+			sum += frequencies[i];
+		}
+		if ( symbols.length > 0 && sum != 1L << probBits )
+			throw new UserErrorException( "The rANS frequencies sum up to " + sum + " instead of " + (1L << probBits) + ".");
+	}
+
+	/**
+	 * Scale the counts to the frequencies, every counted symbol keeps at least the frequency 1.
+	 *
+	 * @param symbols - the symbols in ascending order
+	 * @param counts - the occurrence count of every symbol, 0 for the symbols which do not occur
+	 */
+	public static RansModel FromCounts( int[] symbols, long[] counts) throws UserErrorException
+	{
+		int n = 0;
+		long total = 0;
+		for ( long count : counts)
+			if ( count > 0 )
+			{
+				++n;
+				total += count;
+			}
+		int[] used = new int[n];
+		int[] frequencies = new int[n];
+		long[] usedCounts = new long[n];
+		n = 0;
+		for ( int i=0; i<symbols.length; ++i)
+			if ( counts[i] > 0 )
+			{
+				used[n] = symbols[i];
+				usedCounts[n++] = counts[i];
+			}
+		// a few bits more than the symbols need, so the rare symbols are not rounded up too much
+		int probBits = Math.max( MIN_PROB_BITS, Math.min( MAX_PROB_BITS, 32 - Integer.numberOfLeadingZeros( Math.max( 1, n - 1)) + 4));
+		int range = 1 << probBits;
+		long sum = 0;
+		for ( int i=0; i<n; ++i)
+		{
+			frequencies[i] = (int)Math.max( 1, Math.round( usedCounts[i] * (double)range / total));
+			sum += frequencies[i];
+		}
+		if ( n > 0 )
+			FixSum( frequencies, range - sum);
+		RansModel res = new RansModel( probBits, used, frequencies);
+		res.symbolCount = total;
+		res.entropy = EntropyEngine.Entropy( usedCounts, total);
+		double bits = 0;
+		for ( int i=0; i<n; ++i)
+			bits += usedCounts[i] * (probBits - EntropyEngine.Log2( frequencies[i]));
+		res.codedBitsPerSymbol = total == 0 ? 0 : bits / total;
+		return res;
+	}
+
+	/** add the rounding difference to the biggest frequencies, where it costs the least */
+	private static void FixSum( int[] frequencies, long difference)
+	{
+		int indexBits = 32 - Integer.numberOfLeadingZeros( frequencies.length);
+		long[] keys = new long[frequencies.length];
+		for ( int i=0; i<frequencies.length; ++i)
+			keys[i] = ((long)frequencies[i] << indexBits) | i;
+		Arrays.sort( keys);
+		while ( difference != 0 )
+			for ( int k=keys.length - 1; k>=0 && difference != 0; --k)
+			{
+				int i = (int)(keys[k] & ((1L << indexBits) - 1));
+				if ( difference > 0 )
+				{
+					++frequencies[i];
+					--difference;
+				}
+				else if ( frequencies[i] > 1 )
+				{
+					--frequencies[i];
+					++difference;
+				}
+			}
+	}
+
+	public int probBits()
+	{
+		return probBits;
+	}
+
+	/** the number of the symbols having a frequency */
+	public int size()
+	{
+		return symbols.length;
+	}
+
+	/** the number of the counted symbols, -1 for a model which was read */
+	public long symbolCount()
+	{
+		return symbolCount;
+	}
+
+	/** the entropy of the counts the model was scaled from, NaN for a model which was read */
+	public double entropy()
+	{
+		return entropy;
+	}
+
+	/** the bits per symbol the scaled frequencies cost for the counts, NaN for a model which was read */
+	public double codedBitsPerSymbol()
+	{
+		return codedBitsPerSymbol;
+	}
+
+	/** the frequencies and the starts indexed by the symbol, for the encoder */
+	int[] SymbolFrequencies()
+	{
+		BuildSymbolTables();
+		return symbolFrequency;
+	}
+
+	int[] SymbolStarts()
+	{
+		BuildSymbolTables();
+		return symbolStart;
+	}
+
+	private void BuildSymbolTables()
+	{
+		if ( symbolFrequency != null )
+			return;
+		int size = symbols.length == 0 ? 0 : symbols[symbols.length - 1] + 1;
+		int[] frequency = new int[size];
+		int[] start = new int[size];
+		int cumulative = 0;
+		for ( int i=0; i<symbols.length; ++i)
+		{
+			frequency[symbols[i]] = frequencies[i];
+			start[symbols[i]] = cumulative;
+			cumulative += frequencies[i];
+		}
+		symbolStart = start;
+		symbolFrequency = frequency;
+	}
+
+	/** the decoding table of the 2^probBits slots, for the decoder */
+	long[] Slots()
+	{
+		if ( slots != null )
+			return slots;
+		long[] res = new long[1 << probBits];
+		int slot = 0;
+		for ( int i=0; i<symbols.length; ++i)
+			for ( int k=0; k<frequencies[i]; ++k)
+				res[slot++] = ((long)k << 33) | ((long)frequencies[i] << 16) | symbols[i];
+		return slots = res;
+	}
+
+	/**
+	 * 		byte   probBits
+	 * 		varint number of the symbols, then for every one in ascending order:
+	 * 		       varint difference to the previous symbol - 1, varint frequency
+	 */
+	public void Write( DataOutputStream out) throws IOException
+	{
+		out.writeByte( probBits);
+		HoffmanCodeBook.WriteVarInt( out, symbols.length);
+		int previous = -1;
+		for ( int i=0; i<symbols.length; ++i)
+		{
+			HoffmanCodeBook.WriteVarInt( out, symbols[i] - previous - 1);
+			HoffmanCodeBook.WriteVarInt( out, frequencies[i]);
+			previous = symbols[i];
+		}
+	}
+
+	public static RansModel Read( DataInputStream in) throws IOException, UserErrorException
+	{
+		int probBits = in.readByte();
+		if ( probBits < MIN_PROB_BITS || probBits > MAX_PROB_BITS )
+			throw new UserErrorException( "Unsupported rANS precision of " + probBits + " bits.");
+		int n = HoffmanCodeBook.ReadVarInt( in);
+		if ( n < 0 || n > FrequencyCounter.ALPHABET_SIZE )
+			throw new UserErrorException( "Invalid number " + n + " of the rANS symbols.");
+		int[] symbols = new int[n];
+		int[] frequencies = new int[n];
+		int previous = -1;
+		for ( int i=0; i<n; ++i)
+		{
+			symbols[i] = previous + 1 + HoffmanCodeBook.ReadVarInt( in);
+			frequencies[i] = HoffmanCodeBook.ReadVarInt( in);
+			previous = symbols[i];
+		}
+		return new RansModel( probBits, symbols, frequencies);
+	}
+}
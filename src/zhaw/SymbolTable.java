@@ -0,0 +1,62 @@
+package zhaw;
+
+import java.util.Arrays;
+
+/**
+ * Maps the char symbols to their values without boxing the symbols, they are direct indexed in an
+ * array of FrequencyCounter.ALPHABET_SIZE values. The symbols are iterated in ascending order.
+ */
+public class SymbolTable<V> {
+
+	private final Object[] dense = new Object[FrequencyCounter.ALPHABET_SIZE];
+	private int[] symbols = new int[16];
+	private int size = 0;
+	private boolean sorted = true;
+
+	@SuppressWarnings("unchecked")
+	public V get( int symbol)
+	{
+		return symbol >= 0 && symbol < dense.length ? (V)dense[symbol] : null;
+	}
+
+	public boolean containsKey( int symbol)
+	{
+		return get( symbol) != null;
+	}
+
+	/** @param value - not null, a symbol is only removed with the whole table */
+	public void put( int symbol, V value)
+	{
+		if ( value == null )
+			throw new IllegalArgumentException( "The symbol " + symbol + " needs a value in the SymbolTable.");
+		if ( symbol < 0 || symbol >= dense.length )
+			throw new IllegalArgumentException( "The symbol " + symbol + " is out of the char range of the SymbolTable.");
+		boolean added = dense[symbol] == null;
+		dense[symbol] = value;
+		if ( ! added )
+			return;
+		if ( size == symbols.length )
+			symbols = Arrays.copyOf( symbols, Math.max( 16, size * 2));
+		if ( size > 0 && symbols[size - 1] > symbol )
+			sorted = false;
+		symbols[size++] = symbol;
+	}
+
+	public int size()
+	{
+		return size;
+	}
+
+	/** the symbols in ascending order, the array must not be changed */
+	public int[] symbols()
+	{
+		if ( symbols.length != size )
+			symbols = Arrays.copyOf( symbols, size);
+		if ( ! sorted )
+		{
+			Arrays.sort( symbols);
+			sorted = true;
+		}
+		return symbols;
+	}
+}
@@ -0,0 +1,35 @@
+package zhaw;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * The waiting for the tasks submitted to an executor, e.g. the blocks of the block coders or the
+ * files of the batch.
+ */
+final class Tasks {
+
+	private Tasks()
+	{
+	}
+
+	/** wait for the result of the task, its exceptions are thrown as IOException */
+	static <T> T Get( Future<T> future) throws IOException
+	{
+		try {
+			return future.get();
+		} catch ( InterruptedException ex)
+		{
+			Thread.currentThread().interrupt();
+			throw new IOException( "Interrupted while waiting for a task.", ex);
+		} catch ( ExecutionException ex)
+		{
+			if ( ex.getCause() instanceof IOException )
+				throw (IOException)ex.getCause();
+			if ( ex.getCause() instanceof RuntimeException )
+				throw (RuntimeException)ex.getCause();
+			throw new IOException( ex.getCause());
+		}
+	}
+}